@@ -43,6 +43,7 @@ import org.wso2.apimgt.gateway.cli.model.config.ContainerConfig;
 import org.wso2.apimgt.gateway.cli.model.config.Token;
 import org.wso2.apimgt.gateway.cli.model.config.TokenBuilder;
 import org.wso2.apimgt.gateway.cli.model.rest.ext.ExtendedAPI;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.oauth.OAuthService;
@@ -290,19 +291,21 @@ public class SetupCmd implements GatewayLauncherCmd {
         }
         List<ApplicationThrottlePolicyDTO> applicationPolicies = service.getApplicationPolicies(accessToken);
         List<SubscriptionThrottlePolicyDTO> subscriptionPolicies = service.getSubscriptionPolicies(accessToken);
+        List<AdvancedThrottlePolicyDTO> advancedPolicies = service.getAdvancedPolicies(accessToken);
 
         ThrottlePolicyGenerator policyGenerator = new ThrottlePolicyGenerator();
         CodeGenerator codeGenerator = new CodeGenerator();
         boolean changesDetected;
         try {
             policyGenerator.generate(GatewayCmdUtils.getProjectSrcDirectoryPath(projectName) + File.separator
-                    + GatewayCliConstants.POLICY_DIR, applicationPolicies, subscriptionPolicies);
+                    + GatewayCliConstants.POLICY_DIR, applicationPolicies, subscriptionPolicies, advancedPolicies);
             codeGenerator.generate(projectName, apis, true);
             //Initializing the ballerina project and creating .bal folder.
             InitHandler.initialize(Paths.get(GatewayCmdUtils.getProjectDirectoryPath(projectName)), null,
                     new ArrayList<>(), null);
             try {
-                changesDetected = HashUtils.detectChanges(apis, subscriptionPolicies, applicationPolicies, projectName);
+                changesDetected = HashUtils.detectChanges(apis, subscriptionPolicies, applicationPolicies,
+                        advancedPolicies, projectName);
             } catch (HashingException e) {
                 logger.error("Error while checking for changes of resources. Skipping no-change detection..");
                 throw new CLIInternalException(
@@ -24,12 +24,15 @@ import com.github.jknack.handlebars.context.JavaBeanValueResolver;
 import com.github.jknack.handlebars.context.MapValueResolver;
 import org.wso2.apimgt.gateway.cli.constants.GeneratorConstants;
 import org.wso2.apimgt.gateway.cli.exception.BallerinaServiceGenException;
+import org.wso2.apimgt.gateway.cli.model.config.Config;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.template.GenSrcFile;
-import org.wso2.apimgt.gateway.cli.model.template.policy.ThrottlePolicy;
 import org.wso2.apimgt.gateway.cli.model.template.policy.ThrottlePolicyInitializer;
+import org.wso2.apimgt.gateway.cli.model.template.policy.ThrottlePolicySet;
 import org.wso2.apimgt.gateway.cli.utils.CodegenUtils;
+import org.wso2.apimgt.gateway.cli.utils.GatewayCmdUtils;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -43,61 +46,48 @@ import java.util.List;
 public class ThrottlePolicyGenerator {
 
     /**
-     * Generate ballerina and stream source for a given app and subs policies
+     * Generate ballerina and stream source for a given app, subs and advanced policies
      *
      * @param outPath              Destination file path to save generated source files. If not provided
      *                             {@code definitionPath} will be used as the default destination path
      * @param applicationPolicies  list of app policies
      * @param subscriptionPolicies list of subs policies
+     * @param advancedPolicies     list of advanced policies, attached to APIs and resources
      * @throws IOException                  when file operations fail
      * @throws BallerinaServiceGenException when code generator fails
      */
     public void generate(String outPath, List<ApplicationThrottlePolicyDTO> applicationPolicies,
-            List<SubscriptionThrottlePolicyDTO> subscriptionPolicies) throws IOException, BallerinaServiceGenException {
-        List<GenSrcFile> genFiles = generateApplicationPolicies(applicationPolicies);
-
-        List<GenSrcFile> genSubsFiles = generateSubscriptionPolicies(subscriptionPolicies);
-        genFiles.addAll(genSubsFiles);
+            List<SubscriptionThrottlePolicyDTO> subscriptionPolicies, List<AdvancedThrottlePolicyDTO> advancedPolicies)
+            throws IOException, BallerinaServiceGenException {
+        List<GenSrcFile> genFiles = new ArrayList<>();
+        genFiles.add(generatePolicies(applicationPolicies, subscriptionPolicies, advancedPolicies));
 
-        GenSrcFile initGenFile = generateInitBal(applicationPolicies, subscriptionPolicies);
+        GenSrcFile initGenFile = generateInitBal(applicationPolicies, subscriptionPolicies, advancedPolicies);
         genFiles.add(initGenFile);
         CodegenUtils.writeGeneratedSources(genFiles, Paths.get(outPath), true);
     }
 
     /**
-     * Generate application policies source
+     * Generate the source which evaluates all application, subscription and advanced policies in a single query
      *
-     * @param applicationPolicies list of application policies
-     * @return list of {@code GenSrcFile}
+     * @param applicationPolicies  list of application policies
+     * @param subscriptionPolicies list of subscription policies
+     * @param advancedPolicies     list of advanced policies
+     * @return {@code GenSrcFile}
      * @throws IOException when file operations fail
      */
-    private List<GenSrcFile> generateApplicationPolicies(List<ApplicationThrottlePolicyDTO> applicationPolicies)
+    private GenSrcFile generatePolicies(List<ApplicationThrottlePolicyDTO> applicationPolicies,
+            List<SubscriptionThrottlePolicyDTO> subscriptionPolicies, List<AdvancedThrottlePolicyDTO> advancedPolicies)
             throws IOException {
-        ThrottlePolicy policyContext;
-        List<GenSrcFile> sourceFiles = new ArrayList<>();
-        for (ApplicationThrottlePolicyDTO applicationPolicy : applicationPolicies) {
-            policyContext = new ThrottlePolicy().buildContext(applicationPolicy);
-            sourceFiles.add(generatePolicy(policyContext));
-        }
-        return sourceFiles;
-    }
+        Config config = GatewayCmdUtils.getConfig();
+        ThrottlePolicySet policySet = new ThrottlePolicySet().buildAppContext(applicationPolicies)
+                .buildSubsContext(subscriptionPolicies).buildAdvancedContext(advancedPolicies)
+                .algorithms(config == null ? null : config.getThrottling());
+        String srcFile = GeneratorConstants.THROTTLE_POLICIES_FILE + GeneratorConstants.BALLERINA_EXTENSION;
 
-    /**
-     * Generate application policies source
-     *
-     * @param subscriptionPolicies list of subscription policies
-     * @return list of {@code GenSrcFile}
-     * @throws IOException when file operations fail
-     */
-    private List<GenSrcFile> generateSubscriptionPolicies(List<SubscriptionThrottlePolicyDTO> subscriptionPolicies)
-            throws IOException, BallerinaServiceGenException {
-        ThrottlePolicy policyContext;
-        List<GenSrcFile> sourceFiles = new ArrayList<>();
-        for (SubscriptionThrottlePolicyDTO subscriptionPolicy : subscriptionPolicies) {
-            policyContext = new ThrottlePolicy().buildContext(subscriptionPolicy);
-            sourceFiles.add(generatePolicy(policyContext));
-        }
-        return sourceFiles;
+        String mainContent = getContent(policySet, GeneratorConstants.DEFAULT_TEMPLATE_DIR,
+                GeneratorConstants.THROTTLE_POLICY_TEMPLATE_NAME);
+        return new GenSrcFile(GenSrcFile.GenFileType.GEN_SRC, srcFile, mainContent);
     }
 
     /**
@@ -105,14 +95,18 @@ public class ThrottlePolicyGenerator {
      *
      * @param applicationPolicies  list of application policies
      * @param subscriptionPolicies list of subscription policies
+     * @param advancedPolicies     list of advanced policies
      * @return GenSrcFile
      * @throws IOException                  when file operations fail
      * @throws IOException when code generator fails
      */
     private GenSrcFile generateInitBal(List<ApplicationThrottlePolicyDTO> applicationPolicies,
-            List<SubscriptionThrottlePolicyDTO> subscriptionPolicies) throws IOException {
+            List<SubscriptionThrottlePolicyDTO> subscriptionPolicies, List<AdvancedThrottlePolicyDTO> advancedPolicies)
+            throws IOException {
+        Config config = GatewayCmdUtils.getConfig();
         ThrottlePolicyInitializer context = new ThrottlePolicyInitializer().buildAppContext(applicationPolicies)
-                .buildSubsContext(subscriptionPolicies);
+                .buildSubsContext(subscriptionPolicies).buildAdvancedContext(advancedPolicies)
+                .algorithms(config == null ? null : config.getThrottling());
         return generateInitBalFile(context);
     }
 
@@ -146,22 +140,6 @@ public class ThrottlePolicyGenerator {
         }
     }
 
-    /**
-     * Generate code for throttle policy
-     *
-     * @param context model context to be used by the templates
-     * @return generated source files as a list of {@link GenSrcFile}
-     * @throws IOException when code generation with specified templates fails
-     */
-    private GenSrcFile generatePolicy(ThrottlePolicy context) throws IOException {
-        String concatTitle = context.getPolicyType() + "_" + context.getName();
-        String srcFile = concatTitle + ".bal";
-
-        String mainContent = getContent(context, GeneratorConstants.DEFAULT_TEMPLATE_DIR,
-                GeneratorConstants.THROTTLE_POLICY_TEMPLATE_NAME);
-        return new GenSrcFile(GenSrcFile.GenFileType.GEN_SRC, srcFile, mainContent);
-    }
-
     private GenSrcFile generateInitBalFile(ThrottlePolicyInitializer context) throws IOException {
         String concatTitle = GeneratorConstants.THROTTLE_POLICY_INITIALIZER;
         String srcFile = concatTitle + GeneratorConstants.BALLERINA_EXTENSION;
@@ -180,7 +158,7 @@ public class ThrottlePolicyGenerator {
      * @return String with populated template
      * @throws IOException when template population fails
      */
-    private String getContent(ThrottlePolicy object, String templateDir, String templateName) throws IOException {
+    private String getContent(ThrottlePolicySet object, String templateDir, String templateName) throws IOException {
         Template template = CodegenUtils.compileTemplate(templateDir, templateName);
         Context context = Context.newBuilder(object)
                 .resolver(MapValueResolver.INSTANCE, JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE)
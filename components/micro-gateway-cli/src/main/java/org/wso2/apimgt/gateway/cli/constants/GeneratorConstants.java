@@ -35,14 +35,29 @@ public class GeneratorConstants {
 
     public static final String APPLICATION_POLICY_TYPE = "application";
     public static final String SUBSCRIPTION_POLICY_TYPE = "subscription";
+    public static final String ADVANCED_POLICY_TYPE = "advanced";
     public static final String APPLICATION_INIT_FUNC_PREFIX = "initApplication";
     public static final String SUBSCRIPTION_INIT_FUNC_PREFIX = "initSubscription";
+    public static final String ADVANCED_INIT_FUNC_PREFIX = "initAdvanced";
     public static final String APPLICATION_KEY = "appKey";
     public static final String SUBSCRIPTION_KEY = "subscriptionKey";
+    public static final String CUSTOM_KEY = "customKey";
+    public static final String API_KEY = "apiKey";
+    public static final String RESOURCE_KEY = "resourceKey";
     public static final String APPLICATION_TIER_TYPE = "appTier";
     public static final String SUBSCRIPTION_TIER_TYPE = "subscriptionTier";
+    public static final String API_TIER_TYPE = "apiTier";
+    public static final String RESOURCE_TIER_TYPE = "resourceTier";
     public static final String INIT_FUNC_SUFFIX = "Policy";
+    public static final String POLICY_EVALUATOR_INIT_FUNC = "initThrottlePolicyEvaluator";
+    public static final String THROTTLE_POLICIES_FILE = "throttle_policies";
     public static final String THROTTLE_POLICY_INITIALIZER = "throttle_policy_initializer";
+    public static final String WINDOW_ALGORITHM = "window";
+    public static final String TOKEN_BUCKET_ALGORITHM_PREFIX = "tokenBucket:";
+    public static final String SKETCH_ALGORITHM_PREFIX = "sketch:";
+    public static final String KEY_HEADER_ATTRIBUTE = "keyHeader";
+    public static final String KEY_QUERY_PARAM_ATTRIBUTE = "keyQueryParam";
+    public static final String KEY_CLAIM_ATTRIBUTE = "keyClaim";
     public static final String UTF_8 = "UTF-8";
 
 }
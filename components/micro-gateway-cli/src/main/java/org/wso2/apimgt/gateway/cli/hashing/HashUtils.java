@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import org.wso2.apimgt.gateway.cli.constants.HashingConstants;
 import org.wso2.apimgt.gateway.cli.exception.HashingException;
 import org.wso2.apimgt.gateway.cli.model.rest.ext.ExtendedAPI;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ThrottlePolicyDTO;
@@ -50,33 +51,38 @@ public class HashUtils {
     private static final Logger logger = LoggerFactory.getLogger(HashUtils.class);
 
     /**
-     * Generate hashes for the specified apis, subscription and application policies, then compare with the previously
-     *  generated hashes and detect if there are changes with them.
+     * Generate hashes for the specified apis, subscription, application and advanced policies, then compare with the
+     *  previously generated hashes and detect if there are changes with them.
      * 
      * @param apis APIs list
      * @param subscriptionPolicies Subscription Policies list
      * @param appPolicies Application policies list
+     * @param advancedPolicies Advanced policies list
      * @param projectName Name of the project
      * @return true if there are changes detected vs the previous check
      * @throws HashingException error while change detection
      */
     public static boolean detectChanges(List<ExtendedAPI> apis,
             List<SubscriptionThrottlePolicyDTO> subscriptionPolicies,
-            List<ApplicationThrottlePolicyDTO> appPolicies, String projectName) throws HashingException {
+            List<ApplicationThrottlePolicyDTO> appPolicies, List<AdvancedThrottlePolicyDTO> advancedPolicies,
+            String projectName) throws HashingException {
         
         boolean hasChanges = true;
         Map<String, String> allHashesMap = new HashMap<>();
         Map<String, String> apiHashesMap = getMapOfHashes(apis);
         Map<String, String> appPolicyHashesMap = getMapOfHashes(appPolicies);
         Map<String, String> subsPolicyHashesMap = getMapOfHashes(subscriptionPolicies);
+        Map<String, String> advancedPolicyHashesMap = getMapOfHashes(advancedPolicies);
 
         logger.debug("API calculated hashes {}", apiHashesMap);
         logger.debug("App policy calculated hashes {}", appPolicyHashesMap);
         logger.debug("Subscription policy calculated hashes {}", subsPolicyHashesMap);
+        logger.debug("Advanced policy calculated hashes {}", advancedPolicyHashesMap);
 
         allHashesMap.putAll(apiHashesMap);
         allHashesMap.putAll(appPolicyHashesMap);
         allHashesMap.putAll(subsPolicyHashesMap);
+        allHashesMap.putAll(advancedPolicyHashesMap);
 
         try {
             Map<String, String> storedHashes = loadStoredResourceHashes(projectName);
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  WSO2 Inc. licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except
+ *  in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.wso2.apimgt.gateway.cli.model.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throttling options of the toolkit, used when generating the throttle policies of a project.
+ */
+public class Throttling {
+    private List<String> tokenBucketPolicies = new ArrayList<>();
+    private double tokenBucketBurstRatio = 0.1;
+    private List<String> sketchPolicies = new ArrayList<>();
+    private int sketchWidth = 65536;
+
+    /**
+     * Names of the policies which are enforced with a token bucket instead of a fixed window.
+     */
+    public List<String> getTokenBucketPolicies() {
+        return tokenBucketPolicies;
+    }
+
+    public void setTokenBucketPolicies(List<String> tokenBucketPolicies) {
+        this.tokenBucketPolicies = tokenBucketPolicies;
+    }
+
+    /**
+     * Burst allowed by a token bucket policy, as a fraction of the request count of the policy.
+     */
+    public double getTokenBucketBurstRatio() {
+        return tokenBucketBurstRatio;
+    }
+
+    public void setTokenBucketBurstRatio(double tokenBucketBurstRatio) {
+        this.tokenBucketBurstRatio = tokenBucketBurstRatio;
+    }
+
+    /**
+     * Names of the policies whose keys are counted approximately in a count-min sketch, e.g. Unauthenticated, so that
+     * the memory of the policy does not grow with the number of distinct client addresses.
+     */
+    public List<String> getSketchPolicies() {
+        return sketchPolicies;
+    }
+
+    public void setSketchPolicies(List<String> sketchPolicies) {
+        this.sketchPolicies = sketchPolicies;
+    }
+
+    /**
+     * Number of counters per row of the sketch of a sketch policy.
+     */
+    public int getSketchWidth() {
+        return sketchWidth;
+    }
+
+    public void setSketchWidth(int sketchWidth) {
+        this.sketchWidth = sketchWidth;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.wso2.apimgt.gateway.cli.model.rest.policy;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.wso2.apimgt.gateway.cli.hashing.Hash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Advanced throttle policy, which is attached to an API or to a resource of an API.
+ */
+public class AdvancedThrottlePolicyDTO extends ThrottlePolicyDTO {
+
+    private ThrottleLimitDTO defaultLimit = null;
+    private List<Object> conditionalGroups = new ArrayList<>();
+
+    @Hash
+    @JsonProperty("defaultLimit")
+    public ThrottleLimitDTO getDefaultLimit() {
+        return defaultLimit;
+    }
+
+    public void setDefaultLimit(ThrottleLimitDTO defaultLimit) {
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * Conditional limits of the policy. The gateway enforces only the default limit of a policy.
+     **/
+    @JsonProperty("conditionalGroups")
+    public List<Object> getConditionalGroups() {
+        return conditionalGroups;
+    }
+
+    public void setConditionalGroups(List<Object> conditionalGroups) {
+        this.conditionalGroups = conditionalGroups;
+    }
+
+}
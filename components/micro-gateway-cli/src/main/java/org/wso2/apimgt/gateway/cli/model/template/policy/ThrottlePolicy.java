@@ -18,10 +18,17 @@
 package org.wso2.apimgt.gateway.cli.model.template.policy;
 
 import org.wso2.apimgt.gateway.cli.constants.GeneratorConstants;
+import org.wso2.apimgt.gateway.cli.model.config.Throttling;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.BandwidthLimitDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.CustomAttributeDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.RequestCountLimitDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.ThrottleLimitDTO;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class ThrottlePolicy {
@@ -34,9 +41,20 @@ public class ThrottlePolicy {
     private String srcPackage;
     private String modelPackage;
     private String funcName;
+    //request count, or number of bytes for bandwidth policies
     private long count;
+    private boolean bandwidthLimit;
     private String tierType;
     private boolean stopOnQuotaReach;
+    //unit time and time unit as defined in the policy, used by calendar aligned windows
+    private int unitCount;
+    private String timeUnit;
+    //algorithm used by the evaluator, either window, tokenBucket:burst or sketch:width
+    private String algorithm = GeneratorConstants.WINDOW_ALGORITHM;
+    //headers, query parameters and JWT claims the policy counts the requests of a subscription per
+    private List<String> keyHeaders;
+    private List<String> keyQueryParams;
+    private List<String> keyClaims;
 
     public String getPolicyType() {
         return policyType;
@@ -70,6 +88,14 @@ public class ThrottlePolicy {
         this.count = count;
     }
 
+    public boolean isBandwidthLimit() {
+        return bandwidthLimit;
+    }
+
+    public void setBandwidthLimit(boolean bandwidthLimit) {
+        this.bandwidthLimit = bandwidthLimit;
+    }
+
     public String getSrcPackage() {
         return srcPackage;
     }
@@ -118,12 +144,58 @@ public class ThrottlePolicy {
         this.stopOnQuotaReach = stopOnQuotaReach;
     }
 
+    public int getUnitCount() {
+        return unitCount;
+    }
+
+    public void setUnitCount(int unitCount) {
+        this.unitCount = unitCount;
+    }
+
+    public String getTimeUnit() {
+        return timeUnit;
+    }
+
+    public void setTimeUnit(String timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public List<String> getKeyHeaders() {
+        return keyHeaders;
+    }
+
+    public void setKeyHeaders(List<String> keyHeaders) {
+        this.keyHeaders = keyHeaders;
+    }
+
+    public List<String> getKeyQueryParams() {
+        return keyQueryParams;
+    }
+
+    public void setKeyQueryParams(List<String> keyQueryParams) {
+        this.keyQueryParams = keyQueryParams;
+    }
+
+    public List<String> getKeyClaims() {
+        return keyClaims;
+    }
+
+    public void setKeyClaims(List<String> keyClaims) {
+        this.keyClaims = keyClaims;
+    }
+
     public ThrottlePolicy buildContext(ApplicationThrottlePolicyDTO applicationPolicy) {
         this.policyType = GeneratorConstants.APPLICATION_POLICY_TYPE;
         this.name = applicationPolicy.getPolicyName();
-        RequestCountLimitDTO requestCountLimitDTO = (RequestCountLimitDTO) applicationPolicy.getDefaultLimit();
-        this.count = requestCountLimitDTO.getRequestCount();
-        this.unitTime = getTimeInMilliSeconds(requestCountLimitDTO.getUnitTime(), requestCountLimitDTO.getTimeUnit());
+        setLimit(applicationPolicy.getDefaultLimit());
         this.funcName = GeneratorConstants.APPLICATION_INIT_FUNC_PREFIX + applicationPolicy.getPolicyName()
                 + GeneratorConstants.INIT_FUNC_SUFFIX;
         this.policyKey = GeneratorConstants.APPLICATION_KEY;
@@ -135,17 +207,77 @@ public class ThrottlePolicy {
     public ThrottlePolicy buildContext(SubscriptionThrottlePolicyDTO applicationPolicy) {
         this.policyType = GeneratorConstants.SUBSCRIPTION_POLICY_TYPE;
         this.name = applicationPolicy.getPolicyName();
-        RequestCountLimitDTO requestCountLimitDTO = (RequestCountLimitDTO) applicationPolicy.getDefaultLimit();
-        this.count = requestCountLimitDTO.getRequestCount();
-        this.unitTime = getTimeInMilliSeconds(requestCountLimitDTO.getUnitTime(), requestCountLimitDTO.getTimeUnit());
+        setLimit(applicationPolicy.getDefaultLimit());
         this.funcName = GeneratorConstants.SUBSCRIPTION_INIT_FUNC_PREFIX + applicationPolicy.getPolicyName()
                 + GeneratorConstants.INIT_FUNC_SUFFIX;
         this.policyKey = GeneratorConstants.SUBSCRIPTION_KEY;
         this.tierType = GeneratorConstants.SUBSCRIPTION_TIER_TYPE;
         this.stopOnQuotaReach = applicationPolicy.getStopOnQuotaReach();
+        List<CustomAttributeDTO> customAttributes = applicationPolicy.getCustomAttributes();
+        this.keyHeaders = getKeyAttributes(customAttributes, GeneratorConstants.KEY_HEADER_ATTRIBUTE);
+        this.keyQueryParams = getKeyAttributes(customAttributes, GeneratorConstants.KEY_QUERY_PARAM_ATTRIBUTE);
+        this.keyClaims = getKeyAttributes(customAttributes, GeneratorConstants.KEY_CLAIM_ATTRIBUTE);
         return this;
     }
 
+    /**
+     * Builds the context of an advanced policy evaluated at the given level, i.e. on the API or on the resource key of
+     * the request. Only the default limit of the policy is enforced and requests are always rejected on quota reach.
+     *
+     * @param advancedPolicy advanced policy
+     * @param tierType       tier attribute of the level, either apiTier or resourceTier
+     * @param policyKey      throttle key attribute of the level, either apiKey or resourceKey
+     */
+    public ThrottlePolicy buildContext(AdvancedThrottlePolicyDTO advancedPolicy, String tierType, String policyKey) {
+        this.policyType = GeneratorConstants.ADVANCED_POLICY_TYPE;
+        this.name = advancedPolicy.getPolicyName();
+        setLimit(advancedPolicy.getDefaultLimit());
+        this.funcName = GeneratorConstants.ADVANCED_INIT_FUNC_PREFIX + advancedPolicy.getPolicyName()
+                + GeneratorConstants.INIT_FUNC_SUFFIX;
+        this.policyKey = policyKey;
+        this.tierType = tierType;
+        this.stopOnQuotaReach = true;
+        return this;
+    }
+
+    /**
+     * Returns whether the policy counts the requests of a subscription per header, query parameter or JWT claim.
+     */
+    public boolean hasKeyAttributes() {
+        return keyHeaders != null || keyQueryParams != null || keyClaims != null;
+    }
+
+    /**
+     * Moves the policy to the custom key level, on which the requests of a subscription are counted per value of the
+     * key attributes of the policy.
+     */
+    public ThrottlePolicy customKeyLevel() {
+        this.policyKey = GeneratorConstants.CUSTOM_KEY;
+        return this;
+    }
+
+    /**
+     * Returns the values of the custom attributes with the given name, e.g. the headers given as keyHeader attributes.
+     * The gateway appends the values of these request attributes to the subscription key to build the custom key, so
+     * that the requests of a subscription are counted per header, query parameter or JWT claim value in addition to
+     * the requests of the subscription as a whole.
+     *
+     * @return the values, or null if the policy has no such attribute
+     */
+    private static List<String> getKeyAttributes(List<CustomAttributeDTO> customAttributes, String attributeName) {
+        if (customAttributes == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        for (CustomAttributeDTO customAttribute : customAttributes) {
+            if (attributeName.equals(customAttribute.getName()) && customAttribute.getValue() != null
+                    && !customAttribute.getValue().trim().isEmpty()) {
+                values.add(customAttribute.getValue().trim());
+            }
+        }
+        return values.isEmpty() ? null : values;
+    }
+
     public ThrottlePolicy srcPackage(String srcPackage) {
         if (srcPackage != null) {
             this.srcPackage = srcPackage.replaceFirst("\\.", "/");
@@ -160,6 +292,42 @@ public class ThrottlePolicy {
         return this;
     }
 
+    /**
+     * Enforces the policy with a token bucket when it is listed in the throttling configuration of the toolkit. The
+     * bucket admits the request count spread evenly over the unit time, with bursts of the configured ratio. Policies
+     * listed as sketch policies instead count their keys approximately in a count-min sketch of the configured width.
+     */
+    public ThrottlePolicy algorithm(Throttling throttling) {
+        if (throttling == null) {
+            return this;
+        }
+        if (!bandwidthLimit && throttling.getTokenBucketPolicies() != null
+                && throttling.getTokenBucketPolicies().contains(name)) {
+            long burst = Math.max(1, (long) Math.ceil(count * throttling.getTokenBucketBurstRatio()));
+            this.algorithm = GeneratorConstants.TOKEN_BUCKET_ALGORITHM_PREFIX + burst;
+        } else if (throttling.getSketchPolicies() != null && throttling.getSketchPolicies().contains(name)) {
+            this.algorithm = GeneratorConstants.SKETCH_ALGORITHM_PREFIX + throttling.getSketchWidth();
+        }
+        return this;
+    }
+
+    private void setLimit(ThrottleLimitDTO limit) {
+        if (limit instanceof BandwidthLimitDTO) {
+            BandwidthLimitDTO bandwidthLimitDTO = (BandwidthLimitDTO) limit;
+            this.bandwidthLimit = true;
+            this.count = getDataInBytes(bandwidthLimitDTO.getDataAmount(), bandwidthLimitDTO.getDataUnit());
+        } else {
+            this.count = ((RequestCountLimitDTO) limit).getRequestCount();
+        }
+        this.unitTime = getTimeInMilliSeconds(limit.getUnitTime(), limit.getTimeUnit());
+        setWindow(limit.getUnitTime(), limit.getTimeUnit());
+    }
+
+    private void setWindow(int unitTime, String timeUnit) {
+        this.unitCount = unitTime;
+        this.timeUnit = timeUnit.toLowerCase();
+    }
+
     private long getTimeInMilliSeconds(int unitTime, String timeUnit) {
         long milliSeconds;
         if ("min".equalsIgnoreCase(timeUnit)) {
@@ -179,4 +347,16 @@ public class ThrottlePolicy {
         }
         return milliSeconds;
     }
+
+    private long getDataInBytes(long dataAmount, String dataUnit) {
+        if ("KB".equalsIgnoreCase(dataUnit)) {
+            return dataAmount * 1024;
+        } else if ("MB".equalsIgnoreCase(dataUnit)) {
+            return dataAmount * 1024 * 1024;
+        } else if ("GB".equalsIgnoreCase(dataUnit)) {
+            return dataAmount * 1024 * 1024 * 1024;
+        } else {
+            throw new RuntimeException("Unsupported data unit provided");
+        }
+    }
 }
@@ -18,6 +18,8 @@
 package org.wso2.apimgt.gateway.cli.model.template.policy;
 
 import org.wso2.apimgt.gateway.cli.constants.GeneratorConstants;
+import org.wso2.apimgt.gateway.cli.model.config.Throttling;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
 
@@ -26,13 +28,14 @@ import java.util.List;
 
 public class ThrottlePolicyInitializer {
     private List<String> policyInitNames;
-    private List<String> policyNames;
+    private List<ThrottlePolicy> policies;
     private String srcPackage;
     private String modelPackage;
 
     public ThrottlePolicyInitializer() {
         policyInitNames = new ArrayList<>();
-        policyNames = new ArrayList<>();
+        policyInitNames.add(GeneratorConstants.POLICY_EVALUATOR_INIT_FUNC);
+        policies = new ArrayList<>();
     }
 
     public List<String> getPolicyInitNames() {
@@ -43,20 +46,39 @@ public class ThrottlePolicyInitializer {
         this.policyInitNames = policyInitNames;
     }
 
+    public List<ThrottlePolicy> getPolicies() {
+        return policies;
+    }
+
     public ThrottlePolicyInitializer buildAppContext(List<ApplicationThrottlePolicyDTO> applicationPolicies) {
         for (ApplicationThrottlePolicyDTO policyDTO : applicationPolicies) {
-            policyInitNames.add(GeneratorConstants.APPLICATION_INIT_FUNC_PREFIX + policyDTO.getPolicyName()
-                    + GeneratorConstants.INIT_FUNC_SUFFIX);
-            policyNames.add(policyDTO.getPolicyName());
+            policies.add(new ThrottlePolicy().buildContext(policyDTO));
         }
         return this;
     }
 
     public ThrottlePolicyInitializer buildSubsContext(List<SubscriptionThrottlePolicyDTO> subscriptionPolicies) {
         for (SubscriptionThrottlePolicyDTO policyDTO : subscriptionPolicies) {
-            policyInitNames.add(GeneratorConstants.SUBSCRIPTION_INIT_FUNC_PREFIX + policyDTO.getPolicyName()
-                    + GeneratorConstants.INIT_FUNC_SUFFIX);
-            policyNames.add(policyDTO.getPolicyName());
+            policies.add(new ThrottlePolicy().buildContext(policyDTO));
+        }
+        return this;
+    }
+
+    public ThrottlePolicyInitializer buildAdvancedContext(List<AdvancedThrottlePolicyDTO> advancedPolicies) {
+        for (AdvancedThrottlePolicyDTO policyDTO : advancedPolicies) {
+            policies.add(new ThrottlePolicy().buildContext(policyDTO, GeneratorConstants.API_TIER_TYPE,
+                    GeneratorConstants.API_KEY));
+        }
+        return this;
+    }
+
+    /**
+     * Selects the algorithm of each policy from the throttling configuration of the toolkit, so that the gateway
+     * knows which policies are counted in a sketch.
+     */
+    public ThrottlePolicyInitializer algorithms(Throttling throttling) {
+        for (ThrottlePolicy policy : policies) {
+            policy.algorithm(throttling);
         }
         return this;
     }
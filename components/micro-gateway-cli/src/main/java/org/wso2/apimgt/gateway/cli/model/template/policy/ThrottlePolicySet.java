@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.apimgt.gateway.cli.model.template.policy;
+
+import org.wso2.apimgt.gateway.cli.constants.GeneratorConstants;
+import org.wso2.apimgt.gateway.cli.exception.CLIRuntimeException;
+import org.wso2.apimgt.gateway.cli.model.config.Throttling;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Template context of the single throttler:evaluate query which evaluates all deployed policies.
+ * <p>
+ * Each policy type is a level of the evaluator, given by the tier and the throttle key attributes of the request
+ * stream. Policies are passed to the evaluator as a table of
+ * level,name,requestCount,unitTime,timeUnit,stopOnQuotaReach,algorithm entries. Bandwidth policies are evaluated by a
+ * second query, which counts the bytes of requests and responses instead of the number of requests. As the table is
+ * separated by ';' and ',', policies whose names contain either are rejected.
+ */
+public class ThrottlePolicySet {
+    private static final String POLICY_SEPARATOR = ";";
+    private static final String FIELD_SEPARATOR = ",";
+
+    private String funcName;
+    private List<PolicyLevel> levels;
+    private List<ThrottlePolicy> policies;
+
+    public ThrottlePolicySet() {
+        funcName = GeneratorConstants.POLICY_EVALUATOR_INIT_FUNC;
+        levels = new ArrayList<>();
+        policies = new ArrayList<>();
+    }
+
+    public String getFuncName() {
+        return funcName;
+    }
+
+    public void setFuncName(String funcName) {
+        this.funcName = funcName;
+    }
+
+    /**
+     * Returns the request stream attribute the throttle events are partitioned on when handed off to the workers, the
+     * subscription key, so that the events of a subscription are counted in order by the same worker.
+     */
+    public String getPartitionKey() {
+        return GeneratorConstants.SUBSCRIPTION_KEY;
+    }
+
+    public List<PolicyLevel> getLevels() {
+        return levels;
+    }
+
+    public List<ThrottlePolicy> getPolicies() {
+        return policies;
+    }
+
+    /**
+     * Returns the table of request count policies passed to throttler:evaluate.
+     */
+    public String getPolicyTable() {
+        return getPolicyTable(false);
+    }
+
+    /**
+     * Returns the table of bandwidth policies, whose request count is a number of bytes.
+     */
+    public String getBandwidthPolicyTable() {
+        return getPolicyTable(true);
+    }
+
+    private String getPolicyTable(boolean bandwidthLimit) {
+        StringBuilder policyTable = new StringBuilder();
+        for (ThrottlePolicy policy : policies) {
+            if (policy.isBandwidthLimit() != bandwidthLimit) {
+                continue;
+            }
+            if (policyTable.length() > 0) {
+                policyTable.append(POLICY_SEPARATOR);
+            }
+            policyTable.append(getLevel(policy)).append(FIELD_SEPARATOR).append(policy.getName())
+                    .append(FIELD_SEPARATOR).append(policy.getCount()).append(FIELD_SEPARATOR)
+                    .append(policy.getUnitCount()).append(FIELD_SEPARATOR).append(policy.getTimeUnit())
+                    .append(FIELD_SEPARATOR).append(policy.isStopOnQuotaReach()).append(FIELD_SEPARATOR)
+                    .append(policy.getAlgorithm());
+        }
+        return policyTable.toString();
+    }
+
+    public ThrottlePolicySet buildAppContext(List<ApplicationThrottlePolicyDTO> applicationPolicies) {
+        levels.add(new PolicyLevel(GeneratorConstants.APPLICATION_TIER_TYPE, GeneratorConstants.APPLICATION_KEY));
+        for (ApplicationThrottlePolicyDTO policyDTO : applicationPolicies) {
+            addPolicy(new ThrottlePolicy().buildContext(policyDTO));
+        }
+        return this;
+    }
+
+    /**
+     * Adds the subscription level and, if any subscription policy counts requests per header, query parameter or JWT
+     * claim, the custom key level. Such policies are listed for both levels, so that the requests of a subscription
+     * are counted as a whole as well as per attribute value.
+     */
+    public ThrottlePolicySet buildSubsContext(List<SubscriptionThrottlePolicyDTO> subscriptionPolicies) {
+        levels.add(new PolicyLevel(GeneratorConstants.SUBSCRIPTION_TIER_TYPE, GeneratorConstants.SUBSCRIPTION_KEY));
+        List<ThrottlePolicy> customKeyPolicies = new ArrayList<>();
+        for (SubscriptionThrottlePolicyDTO policyDTO : subscriptionPolicies) {
+            ThrottlePolicy policy = new ThrottlePolicy().buildContext(policyDTO);
+            addPolicy(policy);
+            if (policy.hasKeyAttributes()) {
+                customKeyPolicies.add(new ThrottlePolicy().buildContext(policyDTO).customKeyLevel());
+            }
+        }
+        if (!customKeyPolicies.isEmpty()) {
+            levels.add(new PolicyLevel(GeneratorConstants.SUBSCRIPTION_TIER_TYPE, GeneratorConstants.CUSTOM_KEY));
+            policies.addAll(customKeyPolicies);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the API and the resource levels, on which the advanced policies attached to APIs and to resources are
+     * evaluated. Each advanced policy is listed for both levels, as the same policy may be attached to either.
+     */
+    public ThrottlePolicySet buildAdvancedContext(List<AdvancedThrottlePolicyDTO> advancedPolicies) {
+        levels.add(new PolicyLevel(GeneratorConstants.API_TIER_TYPE, GeneratorConstants.API_KEY));
+        levels.add(new PolicyLevel(GeneratorConstants.RESOURCE_TIER_TYPE, GeneratorConstants.RESOURCE_KEY));
+        for (AdvancedThrottlePolicyDTO policyDTO : advancedPolicies) {
+            addPolicy(new ThrottlePolicy().buildContext(policyDTO, GeneratorConstants.API_TIER_TYPE,
+                    GeneratorConstants.API_KEY));
+            addPolicy(new ThrottlePolicy().buildContext(policyDTO, GeneratorConstants.RESOURCE_TIER_TYPE,
+                    GeneratorConstants.RESOURCE_KEY));
+        }
+        return this;
+    }
+
+    /**
+     * Selects the algorithm of each policy from the throttling configuration of the toolkit.
+     */
+    public ThrottlePolicySet algorithms(Throttling throttling) {
+        for (ThrottlePolicy policy : policies) {
+            policy.algorithm(throttling);
+        }
+        return this;
+    }
+
+    private void addPolicy(ThrottlePolicy policy) {
+        String name = policy.getName();
+        if (name.contains(POLICY_SEPARATOR) || name.contains(FIELD_SEPARATOR)) {
+            throw new CLIRuntimeException("Throttle policy '" + name + "' cannot be deployed to the microgateway, "
+                    + "as policy names must not contain '" + POLICY_SEPARATOR + "' or '" + FIELD_SEPARATOR + "'");
+        }
+        policies.add(policy);
+    }
+
+    private int getLevel(ThrottlePolicy policy) {
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.get(i).getTierType().equals(policy.getTierType())
+                    && levels.get(i).getPolicyKey().equals(policy.getPolicyKey())) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No evaluator level found for tier type " + policy.getTierType()
+                + " and throttle key " + policy.getPolicyKey());
+    }
+
+    /**
+     * Tier and throttle key attributes of the request stream a policy type is evaluated on.
+     */
+    public static class PolicyLevel {
+        private String tierType;
+        private String policyKey;
+
+        public PolicyLevel(String tierType, String policyKey) {
+            this.tierType = tierType;
+            this.policyKey = policyKey;
+        }
+
+        public String getTierType() {
+            return tierType;
+        }
+
+        public String getPolicyKey() {
+            return policyKey;
+        }
+    }
+}
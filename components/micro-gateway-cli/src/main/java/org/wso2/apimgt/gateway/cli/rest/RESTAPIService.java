@@ -18,6 +18,7 @@
 package org.wso2.apimgt.gateway.cli.rest;
 
 import org.wso2.apimgt.gateway.cli.model.rest.ext.ExtendedAPI;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
 
@@ -59,4 +60,12 @@ public interface RESTAPIService {
      * @return list of subscription policies
      */
     List<SubscriptionThrottlePolicyDTO> getSubscriptionPolicies(String accessToken);
+
+    /**
+     * Get list of advanced policies, which are attached to APIs and resources
+     *
+     * @param accessToken access token
+     * @return list of advanced policies
+     */
+    List<AdvancedThrottlePolicyDTO> getAdvancedPolicies(String accessToken);
 }
@@ -30,6 +30,8 @@ import org.wso2.apimgt.gateway.cli.model.rest.APIListDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.Endpoint;
 import org.wso2.apimgt.gateway.cli.model.rest.EndpointConfig;
 import org.wso2.apimgt.gateway.cli.model.rest.ext.ExtendedAPI;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyListDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyListDTO;
 import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
@@ -296,6 +298,56 @@ public class RESTAPIServiceImpl implements RESTAPIService {
         return filteredPolicyDTOS;
     }
 
+    /**
+     * @see RESTAPIService#getAdvancedPolicies(String)
+     */
+    public List<AdvancedThrottlePolicyDTO> getAdvancedPolicies(String accessToken) {
+        URL url;
+        HttpsURLConnection urlConn = null;
+        AdvancedThrottlePolicyListDTO advancedList;
+        List<AdvancedThrottlePolicyDTO> filteredPolicyDTOS = new ArrayList<>();
+        adminEp = adminEp.endsWith("/") ? adminEp : adminEp + "/";
+        try {
+            String urlStr = adminEp + "throttling/policies/advanced";
+            url = new URL(urlStr);
+            urlConn = (HttpsURLConnection) url.openConnection();
+            if (inSecure) {
+                urlConn.setHostnameVerifier((s, sslSession) -> true);
+            }
+            urlConn.setDoOutput(true);
+            urlConn.setRequestMethod(RESTServiceConstants.GET);
+            urlConn.setRequestProperty(RESTServiceConstants.AUTHORIZATION,
+                    RESTServiceConstants.BEARER + " " + accessToken);
+            int responseCode = urlConn.getResponseCode();
+            if (responseCode == 200) {
+                ObjectMapper mapper = new ObjectMapper();
+                String responseStr = TokenManagementUtil.getResponseString(urlConn.getInputStream());
+                //convert json string to object
+                advancedList = mapper.readValue(responseStr, AdvancedThrottlePolicyListDTO.class);
+                List<AdvancedThrottlePolicyDTO> policyDTOS = advancedList.getList();
+                for (AdvancedThrottlePolicyDTO policyDTO : policyDTOS) {
+                    if (!RESTServiceConstants.UNLIMITED.equalsIgnoreCase(policyDTO.getPolicyName())) {
+                        filteredPolicyDTOS.add(policyDTO);
+                    }
+                }
+            } else if (responseCode == 401) {
+                throw new CLIRuntimeException(
+                        "Invalid user credentials or the user does not have required permissions");
+            } else {
+                throw new RuntimeException(
+                        "Error occurred while getting advanced policies. Status code: " + responseCode);
+            }
+        } catch (IOException e) {
+            String msg = "Error while retrieving advanced policies.";
+            throw new RuntimeException(msg, e);
+        } finally {
+            if (urlConn != null) {
+                urlConn.disconnect();
+            }
+        }
+        return filteredPolicyDTOS;
+    }
+
     private EndpointConfig getEndpointConfig(String endpointConfig) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         JsonNode rootNode;
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.apimgt.gateway.cli.test;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.context.FieldValueResolver;
+import com.github.jknack.handlebars.context.JavaBeanValueResolver;
+import com.github.jknack.handlebars.context.MapValueResolver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.wso2.apimgt.gateway.cli.constants.GeneratorConstants;
+import org.wso2.apimgt.gateway.cli.exception.CLIRuntimeException;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.AdvancedThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.ApplicationThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.BandwidthLimitDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.CustomAttributeDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.RequestCountLimitDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.SubscriptionThrottlePolicyDTO;
+import org.wso2.apimgt.gateway.cli.model.rest.policy.ThrottleLimitDTO;
+import org.wso2.apimgt.gateway.cli.model.template.policy.ThrottlePolicySet;
+import org.wso2.apimgt.gateway.cli.utils.CodegenUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for {@link ThrottlePolicySet} and the policy template it is rendered with
+ */
+public class ThrottlePolicySetTest {
+
+    @Test
+    public void testPolicyTable() {
+        ThrottlePolicySet policySet = getPolicySet();
+        // The custom key level of Silver follows the subscription level and shifts the API and resource levels.
+        Assert.assertEquals(policySet.getPolicyTable(), "0,Gold,100,1,min,true,window;"
+                + "1,Silver,50,2,hour,false,window;2,Silver,50,2,hour,false,window;"
+                + "3,10KPerMin,10000,1,min,true,window;4,10KPerMin,10000,1,min,true,window");
+        Assert.assertEquals(policySet.getBandwidthPolicyTable(), "0,Download,1048576,1,day,true,window");
+    }
+
+    @Test
+    public void testPolicyTemplate() throws IOException {
+        String content = CodegenUtils.compileTemplate(GeneratorConstants.DEFAULT_TEMPLATE_DIR,
+                GeneratorConstants.THROTTLE_POLICY_TEMPLATE_NAME).apply(Context.newBuilder(getPolicySet())
+                .resolver(MapValueResolver.INSTANCE, JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE)
+                .build());
+        String levels = "appTier, appKey, subscriptionTier, subscriptionKey, subscriptionTier, customKey, apiTier, "
+                + "apiKey, resourceTier, resourceKey)";
+        Assert.assertTrue(content.contains("from gateway:requestStream where responseSize == 0"), content);
+        Assert.assertTrue(content.contains("throttler:async(subscriptionKey)"), content);
+        Assert.assertTrue(content.contains("throttler:evaluate(\"" + getPolicySet().getPolicyTable() + "\", "
+                + levels), content);
+        Assert.assertTrue(content.contains("throttler:evaluate(\"0,Download,1048576,1,day,true,window\", "
+                + "requestSize + responseSize, " + levels), content);
+        Assert.assertTrue(content.contains("throttler:emitOnStateChange(throttleKey, isThrottled)"), content);
+    }
+
+    /**
+     * Without bandwidth policies, the template leaves out the query counting bytes.
+     */
+    @Test
+    public void testPolicyTemplateWithoutBandwidthPolicies() throws IOException {
+        ThrottlePolicySet policySet = new ThrottlePolicySet()
+                .buildAppContext(Collections.singletonList(getApplicationPolicy("Gold", requestCountLimit(100))))
+                .buildSubsContext(Collections.emptyList()).buildAdvancedContext(Collections.emptyList());
+        Assert.assertEquals(policySet.getBandwidthPolicyTable(), "");
+        String content = CodegenUtils.compileTemplate(GeneratorConstants.DEFAULT_TEMPLATE_DIR,
+                GeneratorConstants.THROTTLE_POLICY_TEMPLATE_NAME).apply(Context.newBuilder(policySet)
+                .resolver(MapValueResolver.INSTANCE, JavaBeanValueResolver.INSTANCE, FieldValueResolver.INSTANCE)
+                .build());
+        Assert.assertTrue(content.contains("throttler:evaluate(\"0,Gold,100,1,min,true,window\", appTier, appKey, "
+                + "subscriptionTier, subscriptionKey, apiTier, apiKey, resourceTier, resourceKey)"), content);
+        Assert.assertFalse(content.contains("requestSize + responseSize"), content);
+    }
+
+    @Test(expectedExceptions = CLIRuntimeException.class)
+    public void testPolicyNameWithSemicolon() {
+        new ThrottlePolicySet().buildAppContext(Collections.singletonList(getApplicationPolicy("Gold;Silver",
+                requestCountLimit(100))));
+    }
+
+    @Test(expectedExceptions = CLIRuntimeException.class)
+    public void testPolicyNameWithComma() {
+        AdvancedThrottlePolicyDTO advancedPolicy = new AdvancedThrottlePolicyDTO();
+        advancedPolicy.setPolicyName("10K,PerMin");
+        advancedPolicy.setDefaultLimit(requestCountLimit(10000));
+        new ThrottlePolicySet().buildAdvancedContext(Collections.singletonList(advancedPolicy));
+    }
+
+    private static ThrottlePolicySet getPolicySet() {
+        BandwidthLimitDTO bandwidthLimit = new BandwidthLimitDTO();
+        bandwidthLimit.setType(ThrottleLimitDTO.TypeEnum.BandwidthLimit);
+        bandwidthLimit.setDataAmount(1L);
+        bandwidthLimit.setDataUnit("MB");
+        bandwidthLimit.setUnitTime(1);
+        bandwidthLimit.setTimeUnit("day");
+
+        RequestCountLimitDTO silverLimit = requestCountLimit(50);
+        silverLimit.setUnitTime(2);
+        silverLimit.setTimeUnit("hour");
+        SubscriptionThrottlePolicyDTO subscriptionPolicy = new SubscriptionThrottlePolicyDTO();
+        subscriptionPolicy.setPolicyName("Silver");
+        subscriptionPolicy.setDefaultLimit(silverLimit);
+        subscriptionPolicy.setStopOnQuotaReach(false);
+        CustomAttributeDTO keyHeader = new CustomAttributeDTO();
+        keyHeader.setName(GeneratorConstants.KEY_HEADER_ATTRIBUTE);
+        keyHeader.setValue("X-Tenant");
+        subscriptionPolicy.setCustomAttributes(Collections.singletonList(keyHeader));
+
+        AdvancedThrottlePolicyDTO advancedPolicy = new AdvancedThrottlePolicyDTO();
+        advancedPolicy.setPolicyName("10KPerMin");
+        advancedPolicy.setDefaultLimit(requestCountLimit(10000));
+
+        return new ThrottlePolicySet()
+                .buildAppContext(Arrays.asList(getApplicationPolicy("Gold", requestCountLimit(100)),
+                        getApplicationPolicy("Download", bandwidthLimit)))
+                .buildSubsContext(Collections.singletonList(subscriptionPolicy))
+                .buildAdvancedContext(Collections.singletonList(advancedPolicy));
+    }
+
+    private static ApplicationThrottlePolicyDTO getApplicationPolicy(String name, ThrottleLimitDTO limit) {
+        ApplicationThrottlePolicyDTO applicationPolicy = new ApplicationThrottlePolicyDTO();
+        applicationPolicy.setPolicyName(name);
+        applicationPolicy.setDefaultLimit(limit);
+        return applicationPolicy;
+    }
+
+    private static RequestCountLimitDTO requestCountLimit(long requestCount) {
+        RequestCountLimitDTO limit = new RequestCountLimitDTO();
+        limit.setType(ThrottleLimitDTO.TypeEnum.RequestCountLimit);
+        limit.setRequestCount(requestCount);
+        limit.setUnitTime(1);
+        limit.setTimeUnit("min");
+        return limit;
+    }
+}
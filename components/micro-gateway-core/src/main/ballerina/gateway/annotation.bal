@@ -29,11 +29,13 @@ public annotation <resource> RateLimit TierConfiguration;
 @Field {value:"apiVersion: version specified for the API"}
 @Field {value:"publisher: provider of the API"}
 @Field {value:"authorizationHeader: authorization header specified for the API"}
+@Field {value:"apiTier: advanced throttle policy attached to the API"}
 public type APIConfiguration record {
     string apiVersion;
     string name;
     string publisher;
     string authorizationHeader;
+    string apiTier;
 
 };
 
@@ -14,106 +14,90 @@
 // specific language governing permissions and limitations
 // under the License.
 
-import ballerina/cache;
-
-cache:Cache gatewayTokenCache;
-cache:Cache gatewayKeyValidationCache;
-cache:Cache invalidTokenCache;
+// Age in milliseconds after which key validation information is refreshed ahead of its expiry, or -1 if disabled
+int keyValidationRefreshAheadTime = -1;
+
+@Description {value:"Returned by the authentication cache in place of the cached key validation information to the
+ first request which finds the information due to be refreshed ahead of its expiry"}
+@Field {value:"apiKeyValidationDto: cached key validation information"}
+public type KeyValidationRefresh record {
+    APIKeyValidationDto apiKeyValidationDto;
+};
 
 public function initGatewayCaches() {
-    gatewayTokenCache = new(expiryTimeMillis = getConfigIntValue(CACHING_ID, TOKEN_CACHE_EXPIRY,
-            900000), capacity = getConfigIntValue(CACHING_ID, TOKEN_CACHE_CAPACITY, 100),
-        evictionFactor = getConfigFloatValue(CACHING_ID, TOKEN_CACHE_EVICTION_FACTOR, 0.25));
-    gatewayKeyValidationCache = new(expiryTimeMillis = getConfigIntValue(CACHING_ID, TOKEN_CACHE_EXPIRY,
-            900000), capacity = getConfigIntValue(CACHING_ID, TOKEN_CACHE_CAPACITY, 100),
-        evictionFactor = getConfigFloatValue(CACHING_ID, TOKEN_CACHE_EVICTION_FACTOR, 0.25));
-    invalidTokenCache = new(expiryTimeMillis = getConfigIntValue(CACHING_ID, TOKEN_CACHE_EXPIRY, 900000),
-        capacity = getConfigIntValue(CACHING_ID, TOKEN_CACHE_CAPACITY, 100),
-        evictionFactor = getConfigFloatValue(CACHING_ID, TOKEN_CACHE_EVICTION_FACTOR, 0.25));
+    int expiryTime = getConfigIntValue(CACHING_ID, TOKEN_CACHE_EXPIRY, 900000);
+    float refreshAheadFactor = getConfigFloatValue(CACHING_ID, TOKEN_CACHE_REFRESH_AHEAD_FACTOR, 0.75);
+    if (refreshAheadFactor > 0.0 && refreshAheadFactor < 1.0) {
+        keyValidationRefreshAheadTime = <int>(<float>expiryTime * refreshAheadFactor);
+    }
+    int capacity = getConfigIntValue(CACHING_ID, TOKEN_CACHE_CAPACITY, 100000);
+    int offHeapMemory = 0;
+    if (getConfigBooleanValue(CACHING_ID, TOKEN_CACHE_OFF_HEAP_ENABLED, false)) {
+        // Only the hot tokens are kept on the heap, the rest are held off heap in a compact encoding.
+        offHeapMemory = getConfigIntValue(CACHING_ID, TOKEN_CACHE_OFF_HEAP_MAX_MEMORY, 268435456);
+        capacity = getConfigIntValue(CACHING_ID, TOKEN_CACHE_OFF_HEAP_FRONT_CAPACITY, 10000);
+    }
+    initAuthenticationCache(expiryTime, capacity, keyValidationRefreshAheadTime, offHeapMemory);
 }
 
 public type APIGatewayCache object {
 
+   public function retrieveFromAuthenticationCache(string accessToken, string resourceKey) returns
+               (APIKeyValidationDto|KeyValidationRefresh|());
 
-   public function authenticateFromGatewayKeyValidationCache(string tokenCacheKey) returns (APIKeyValidationDto|());
-
-   public function addToGatewayKeyValidationCache (string tokenCacheKey, APIKeyValidationDto apiKeyValidationDto) ;
-
-   public function removeFromGatewayKeyValidationCache (string tokenCacheKey);
-
-   public function retrieveFromInvalidTokenCache(string tokenCacheKey) returns (APIKeyValidationDto |());
+   public function addToAuthenticationCache(string accessToken, string resourceKey,
+                                            APIKeyValidationDto apiKeyValidationDto);
 
-   public function removeFromInvalidTokenCache (string tokenCacheKey);
-
-   public function addToInvalidTokenCache (string tokenCacheKey, APIKeyValidationDto apiKeyValidationDto) ;
-
-   public function retrieveFromTokenCache(string accessToken) returns (boolean|());
-
-   public function removeFromTokenCache (string accessToken);
-
-   public function addToTokenCache (string accessToken, boolean isValid) ;
+   public function addToInvalidTokenCache(string accessToken, APIKeyValidationDto apiKeyValidationDto);
 };
 
-function APIGatewayCache::authenticateFromGatewayKeyValidationCache(string tokenCacheKey) returns (APIKeyValidationDto|()) {
-    match <APIKeyValidationDto> gatewayKeyValidationCache.get(tokenCacheKey){
-        APIKeyValidationDto apikeyValidationDto => {
-            return apikeyValidationDto;
+@Description {value:"Looks up the authentication result of an access token for a resource with a single cache lookup"}
+@Return {value:"The key validation information of the token, which is not authorized if the token is invalid, the key
+ validation information wrapped in a KeyValidationRefresh if the caller should refresh it in the background, or ()
+ if the token has to be validated"}
+function APIGatewayCache::retrieveFromAuthenticationCache(string accessToken, string resourceKey) returns
+            (APIKeyValidationDto|KeyValidationRefresh|()) {
+    match getAuthenticationResult(accessToken, resourceKey) {
+        APIKeyValidationDto apiKeyValidationDto => {
+            return apiKeyValidationDto;
         }
-        error err => {
-            return ();
+        KeyValidationRefresh refresh => {
+            return refresh;
         }
-    }
-}
-
-function APIGatewayCache::addToGatewayKeyValidationCache (string tokenCacheKey, APIKeyValidationDto
-    apiKeyValidationDto) {
-    gatewayKeyValidationCache.put(tokenCacheKey, apiKeyValidationDto);
-    printDebug(KEY_GW_CACHE, "Added key validation information to the key validation cache. key: " + mask(tokenCacheKey));
-}
-
-function APIGatewayCache::removeFromGatewayKeyValidationCache (string tokenCacheKey) {
-    gatewayKeyValidationCache.remove(tokenCacheKey);
-    printDebug(KEY_GW_CACHE, "Removed key validation information from the key validation cache. key: " + mask(tokenCacheKey));
-}
-
-function APIGatewayCache::retrieveFromInvalidTokenCache(string tokenCacheKey) returns (APIKeyValidationDto |()) {
-    match <APIKeyValidationDto> invalidTokenCache.get(tokenCacheKey){
-        APIKeyValidationDto authorize => {
-            return authorize;
-        }
-        error err => {
+        any => {
             return ();
         }
     }
 }
 
-function APIGatewayCache::addToInvalidTokenCache (string tokenCacheKey, APIKeyValidationDto apiKeyValidationDto) {
-    invalidTokenCache.put(tokenCacheKey, apiKeyValidationDto);
-    printDebug(KEY_GW_CACHE, "Added key validation information to the invalid token cache. key: " + mask(tokenCacheKey));
+function APIGatewayCache::addToAuthenticationCache(string accessToken, string resourceKey,
+                                                   APIKeyValidationDto apiKeyValidationDto) {
+    KeyValidationRefresh refresh = { apiKeyValidationDto: apiKeyValidationDto };
+    putAuthenticationResult(accessToken, resourceKey, apiKeyValidationDto, refresh);
+    printDebug(KEY_GW_CACHE, "Added key validation information to the authentication cache. key: "
+            + mask(accessToken));
 }
 
-function APIGatewayCache::removeFromInvalidTokenCache (string tokenCacheKey) {
-    invalidTokenCache.remove(tokenCacheKey);
-    printDebug(KEY_GW_CACHE, "Removed from the invalid key validation cache. key: " + mask(tokenCacheKey));
+function APIGatewayCache::addToInvalidTokenCache(string accessToken, APIKeyValidationDto apiKeyValidationDto) {
+    putInvalidAuthenticationResult(accessToken, apiKeyValidationDto);
+    printDebug(KEY_GW_CACHE, "Added the token to the authentication cache as invalid. key: " + mask(accessToken));
 }
 
-function APIGatewayCache::retrieveFromTokenCache(string accessToken) returns (boolean|()) {
-    match <boolean> gatewayTokenCache.get(accessToken){
-        boolean authorize => {
-            return authorize;
-        }
-        error err => {
-            return ();
-        }
-    }
-}
+@Description {value:"Configures the authentication cache, which holds the key validation information of each access
+ token, either as invalid or for each resource the token has been validated for. Tokens beyond the capacity are
+ evicted one at a time, those used least often recently first. If the off heap memory is not zero, tokens are also
+ held off heap, with the capacity limiting the tokens held on the heap"}
+extern function initAuthenticationCache(int expiryTime, int capacity, int refreshAheadTime, int offHeapMemory);
 
-function APIGatewayCache::addToTokenCache (string accessToken, boolean isValid) {
-    gatewayTokenCache.put(accessToken, isValid);
-    printDebug(KEY_GW_CACHE, "Added validity information to the token cache. key: " + mask(accessToken));
-}
+@Description {value:"Looks up the authentication result of an access token for a resource"}
+@Return {value:"The cached APIKeyValidationDto or KeyValidationRefresh, or () if nothing is cached"}
+extern function getAuthenticationResult(string accessToken, string resourceKey) returns any;
+
+@Description {value:"Caches the key validation information of an access token validated for a resource. The refresh
+ record is returned in place of the information to the first lookup which should refresh it"}
+extern function putAuthenticationResult(string accessToken, string resourceKey,
+                                         APIKeyValidationDto apiKeyValidationDto, KeyValidationRefresh refresh);
 
-function APIGatewayCache::removeFromTokenCache (string accessToken) {
-    gatewayTokenCache.remove(accessToken);
-    printDebug(KEY_GW_CACHE, "Removed from the token cache. key: " + mask(accessToken));
-}
\ No newline at end of file
+@Description {value:"Caches an access token as invalid for every resource. Only used for failures which concern the
+ token itself, such as invalid or expired credentials"}
+extern function putInvalidAuthenticationResult(string accessToken, APIKeyValidationDto apiKeyValidationDto);
@@ -15,10 +15,17 @@
 // under the License.
 
 
+@final public int API_THROTTLE_OUT_ERROR_CODE = 900800;
+@final public int RESOURCE_THROTTLE_OUT_ERROR_CODE = 900802;
 @final public int APPLICATION_THROTTLE_OUT_ERROR_CODE = 900803;
 @final public int SUBSCRIPTION_THROTTLE_OUT_ERROR_CODE = 900804;
+@final public int BLOCKED_ERROR_CODE = 900805;
+@final public int SUBSCRIPTION_BURST_THROTTLE_OUT_ERROR_CODE = 900807;
 @final public int INTERNAL_ERROR_CODE = 900808;
 @final public int INTERNAL_ERROR_CODE_POLICY_NOT_FOUND = 900809;
 
 @final public string THROTTLE_OUT_MESSAGE = "Message throttled out";
 @final public string THROTTLE_OUT_DESCRIPTION = "You have exceeded your quota";
+@final public string BURST_THROTTLE_OUT_DESCRIPTION = "You have exceeded your burst limit";
+@final public string BLOCKED_MESSAGE = "Message blocked";
+@final public string BLOCKED_DESCRIPTION = "You have been blocked from accessing the resource";
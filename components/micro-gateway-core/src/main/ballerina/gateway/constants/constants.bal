@@ -96,6 +96,10 @@
 @final public string IS_SECURED = "IS_SECURED";
 @Description { value: "Requested throttld out reason" }
 @final public string THROTTLE_OUT_REASON = "THROTTLE_REASON";
+@Description { value: "Throttle event of a request, kept to count the response size against bandwidth policies" }
+@final public string THROTTLE_EVENT = "THROTTLE_EVENT";
+@Description { value: "Content length header name" }
+@final public string CONTENT_LENGTH_HEADER = "Content-Length";
 @Description { value: "Default jwt header name" }
 @final public string JWT_HEADER_NAME = "X-JWT-Assertion";
 @Description { value: "Production key type value" }
@@ -212,6 +216,62 @@
 @final public string KM_CONF_INSTANCE_ID = "keyManager";
 @Description { value: "Throttling related configs"}
 @final public string THROTTLE_CONF_INSTANCE_ID = "Throttling";
+@Description { value: "Blocking conditions related configs"}
+@final public string BLOCKING_CONF_INSTANCE_ID = "blocking";
+@Description { value: "Blocking conditions enabled or not"}
+@final public string BLOCKING_ENABLED = "enabled";
+@Description { value: "File the blocking conditions are read from"}
+@final public string BLOCKING_CONDITIONS_FILE = "conditionsFile";
+@Description { value: "Time between two checks of the blocking conditions file for changes in milliseconds"}
+@final public string BLOCKING_RELOAD_INTERVAL = "reloadInterval";
+@Description { value: "Comma separated addresses or prefixes of the proxies whose X-Forwarded-For header is trusted"}
+@final public string BLOCKING_TRUSTED_PROXIES = "trustedProxies";
+@Description { value: "Throttle state persistence enabled or not"}
+@final public string THROTTLE_PERSISTENCE_ENABLED = "persistence.enabled";
+@Description { value: "Directory the throttle state is checkpointed to"}
+@final public string THROTTLE_PERSISTENCE_DIRECTORY = "persistence.directory";
+@Description { value: "Time between two throttle state checkpoints in milliseconds"}
+@final public string THROTTLE_PERSISTENCE_INTERVAL = "persistence.interval";
+@Description { value: "Inline throttle decisions enabled or not"}
+@final public string THROTTLE_INLINE_ENABLED = "inline.enabled";
+@Description { value: "Hand off of throttle events to worker threads enabled or not"}
+@final public string THROTTLE_ASYNC_ENABLED = "async.enabled";
+@Description { value: "Number of worker threads processing throttle events"}
+@final public string THROTTLE_ASYNC_WORKERS = "async.workers";
+@Description { value: "Number of throttle events queued per worker"}
+@final public string THROTTLE_ASYNC_BUFFER_SIZE = "async.bufferSize";
+@Description { value: "Handling of throttle events when the queue of a worker is full, either drop or inline"}
+@final public string THROTTLE_ASYNC_OVERFLOW = "async.overflow";
+@Description { value: "Spike arrest of subscriptions enabled or not"}
+@final public string THROTTLE_SPIKE_ARREST_ENABLED = "spikeArrest.enabled";
+@Description { value: "Request count of a deployed throttle policy"}
+@final public string POLICY_REQUEST_COUNT = "count";
+@Description { value: "Number of time units in the window of a deployed throttle policy"}
+@final public string POLICY_UNIT_TIME = "unitTime";
+@Description { value: "Time unit of the window of a deployed throttle policy, one of min, hour, day, week, month or
+ year"}
+@final public string POLICY_TIME_UNIT = "timeUnit";
+@Description { value: "Algorithm a deployed throttle policy is evaluated with, e.g. window or sketch:<width>"}
+@final public string POLICY_ALGORITHM = "algorithm";
+@Description { value: "Prefix of the algorithm of throttle policies counted in a count-min sketch"}
+@final public string SKETCH_ALGORITHM_PREFIX = "sketch:";
+@Description { value: "Data amount in bytes of a deployed bandwidth throttle policy"}
+@final public string POLICY_DATA_AMOUNT = "dataAmount";
+@Description { value: "Headers a deployed throttle policy counts the requests of a subscription per"}
+@final public string POLICY_KEY_HEADERS = "keyHeaders";
+@Description { value: "Query parameters a deployed throttle policy counts the requests of a subscription per"}
+@final public string POLICY_KEY_QUERY_PARAMS = "keyQueryParams";
+@Description { value: "JWT claims a deployed throttle policy counts the requests of a subscription per"}
+@final public string POLICY_KEY_CLAIMS = "keyClaims";
+@Description { value: "Number of characters of a header, query parameter or JWT claim value a custom throttle key
+ keeps"}
+@final public int MAX_CUSTOM_KEY_VALUE_LENGTH = 128;
+@Description { value: "Throttle decision of a key which is not throttled"}
+@final public int THROTTLE_DECISION_NOT_THROTTLED = 0;
+@Description { value: "Throttle decision of a key which is throttled"}
+@final public int THROTTLE_DECISION_THROTTLED = 1;
+@Description { value: "Throttle decision of a key which is throttled and should stop on quota"}
+@final public int THROTTLE_DECISION_STOP_ON_QUOTA = 2;
 @Description { value: "Key manager server URL parameter"}
 @final public string KM_SERVER_URL = "serverUrl";
 @Description { value: "Key manager oauth2 endpoint contexs"}
@@ -220,6 +280,10 @@
 @final public string TIMESTAMP_SKEW = "timestampSkew";
 @Description { value: "Hostname verification enabled or not"}
 @final public string ENABLE_HOSTNAME_VERIFICATION = "verifyHostname";
+@Description { value: "Coalescing of concurrent key validation calls of the same token and resource enabled or not"}
+@final public string KM_COALESCING_ENABLED = "coalescing.enabled";
+@Description { value: "Time a request waits for the key validation call of a concurrent request in milliseconds"}
+@final public string KM_COALESCING_TIMEOUT = "coalescing.timeout";
 
 
 @Description { value: "Block condition state"}
@@ -274,8 +338,21 @@
 @final public string TOKEN_CACHE_EXPIRY = "tokenCache.expiryTime";
 @Description { value: "Token cache capacity"}
 @final public string TOKEN_CACHE_CAPACITY = "tokenCache.capacity";
-@Description { value: "Token cache eviction factor"}
-@final public string TOKEN_CACHE_EVICTION_FACTOR = "tokenCache.evictionFactor";
+@Description { value: "Authorization cache expiry time"}
+@final public string AUTHZ_CACHE_EXPIRY = "authzCache.expiryTime";
+@Description { value: "Authorization cache capacity"}
+@final public string AUTHZ_CACHE_CAPACITY = "authzCache.capacity";
+@Description { value: "Authorization cache eviction factor"}
+@final public string AUTHZ_CACHE_EVICTION_FACTOR = "authzCache.evictionFactor";
+@Description { value: "Fraction of the token cache expiry time after which a used entry is validated again in the
+ background"}
+@final public string TOKEN_CACHE_REFRESH_AHEAD_FACTOR = "tokenCache.refreshAheadFactor";
+@Description { value: "Token cache off heap storage enabled or not"}
+@final public string TOKEN_CACHE_OFF_HEAP_ENABLED = "tokenCache.offHeap.enabled";
+@Description { value: "Maximum memory in bytes used by the off heap token cache"}
+@final public string TOKEN_CACHE_OFF_HEAP_MAX_MEMORY = "tokenCache.offHeap.maxMemory";
+@Description { value: "Number of tokens kept on the heap in front of the off heap token cache"}
+@final public string TOKEN_CACHE_OFF_HEAP_FRONT_CAPACITY = "tokenCache.offHeap.frontCapacity";
 
 @Description { value: "JWT  related configs"}
 @final public string JWT_CONFIG_INSTANCE_ID = "jwtConfig";
@@ -295,6 +372,7 @@
 @final string THROTTLE_OUT_REASON_RESOURCE_LIMIT_EXCEEDED = "RESOURCE_LIMIT_EXCEEDED";
 @final string THROTTLE_OUT_REASON_SUBSCRIPTION_LIMIT_EXCEEDED = "SUBSCRIPTION_LIMIT_EXCEEDED";
 @final string THROTTLE_OUT_REASON_APPLICATION_LIMIT_EXCEEDED = "APPLICATION_LIMIT_EXCEEDED";
+@final string THROTTLE_OUT_REASON_SUBSCRIPTION_BURST_LIMIT_EXCEEDED = "SUBSCRIPTION_BURST_LIMIT_EXCEEDED";
 
 @final string INTERNAL_SERVER_ERROR_MESSAGE = "Internal server error occured";
 
@@ -317,6 +395,7 @@
 @final string KEY_AUTHZ_FILTER = "AuthzFilter";
 @final string KEY_SUBSCRIPTION_FILTER = "SubscriptionFilter";
 @final string KEY_THROTTLE_FILTER = "ThrottleFilter";
+@final string KEY_BLOCKING_FILTER = "BlockingFilter";
 @final string KEY_ANALYTICS_FILTER = "AnalyticsFilter";
 @final string KEY_THROTTLE_UTIL = "ThrottleUtil";
 @final string KEY_GW_CACHE = "GatewayCache";
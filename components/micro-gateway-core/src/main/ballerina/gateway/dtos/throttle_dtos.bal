@@ -19,6 +19,7 @@ public type RequestStreamDTO record {
     string apiKey;
     string appKey;
     string subscriptionKey;
+    string customKey;
     string appTier;
     string apiTier;
     string subscriptionTier;
@@ -32,6 +33,8 @@ public type RequestStreamDTO record {
     string appId;
     string apiName;
     string properties;
+    int requestSize;
+    int responseSize;
 };
 
 public type GlobalThrottleStreamDTO record {
@@ -0,0 +1,90 @@
+// Copyright (c)  WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+//
+// WSO2 Inc. licenses this file to you under the Apache License,
+// Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+import ballerina/http;
+
+boolean isBlockingEnabled = getConfigBooleanValue(BLOCKING_CONF_INSTANCE_ID, BLOCKING_ENABLED, true);
+
+@Description { value: "Representation of the Blocking filter, which rejects the requests of blocked client addresses
+ ahead of authentication. Blocked applications and users are rejected by the ThrottleFilter once authenticated" }
+@Field { value: "filterRequest: request filter method which rejects the requests of blocked client addresses" }
+@Field { value: "filterResponse: response filter method (not used this scenario)" }
+public type BlockingFilter object {
+
+    public new () {
+        if (isBlockingEnabled) {
+            initBlockingConditions(getConfigValue(BLOCKING_CONF_INSTANCE_ID, BLOCKING_CONDITIONS_FILE,
+                    "${ballerina.home}/blocking-conditions"), getConfigIntValue(BLOCKING_CONF_INSTANCE_ID,
+                    BLOCKING_RELOAD_INTERVAL, 10000), getConfigValue(BLOCKING_CONF_INSTANCE_ID,
+                    BLOCKING_TRUSTED_PROXIES, ""));
+        }
+    }
+
+    @Param { value: "request: Request instance" }
+    @Param { value: "context: FilterContext instance" }
+    @Return { value: "FilterResult: Blocking result to indicate if the request can proceed or not" }
+    public function filterRequest(http:Listener listener, http:Request request, http:FilterContext context) returns
+            boolean {
+        if (!isBlockingEnabled) {
+            return true;
+        }
+        // X-Forwarded-For is set by the client unless the request passed a trusted proxy, hence it is only used then.
+        string clientIp = getBlockingClientIp(listener.remote.host, getForwardedFor(request));
+        if (isIpBlocked(clientIp)) {
+            checkOrSetMessageID(context);
+            printDebug(KEY_BLOCKING_FILTER, "Client address " + clientIp + " is blocked.");
+            context.attributes[REMOTE_ADDRESS] = clientIp;
+            setThrottleErrorMessageToContext(context, FORBIDDEN, BLOCKED_ERROR_CODE, BLOCKED_MESSAGE,
+                BLOCKED_DESCRIPTION);
+            sendErrorResponse(listener, request, context);
+            return false;
+        }
+        return true;
+    }
+
+    public function filterResponse(http:Response response, http:FilterContext context) returns boolean {
+        return true;
+    }
+};
+
+@Description {value:"Returns the values of all X-Forwarded-For headers of the request, separated by commas"}
+function getForwardedFor(http:Request request) returns string {
+    string forwardedFor = "";
+    if (request.hasHeader(X_FORWARD_FOR_HEADER)) {
+        foreach value in request.getHeaders(X_FORWARD_FOR_HEADER) {
+            forwardedFor = forwardedFor == "" ? value : forwardedFor + "," + value;
+        }
+    }
+    return forwardedFor;
+}
+
+@Description {value:"Loads the blocking conditions from the given file and reloads them whenever the file changes,
+ checking it at the given interval in milliseconds. Each line of the file is a condition, either
+ 'ip <address>[/<prefix length>]', 'application <subscriber>:<application name>' or 'user <username>'. The trusted
+ proxies are comma separated addresses or prefixes of the proxies whose X-Forwarded-For header is trusted"}
+extern function initBlockingConditions(string file, int reloadInterval, string trustedProxies);
+
+@Description {value:"Returns the client address of a request received from the given remote address. The addresses of
+ the X-Forwarded-For header are only used when the remote address is a trusted proxy, in which case the last address
+ which is not a trusted proxy is returned"}
+extern function getBlockingClientIp(string remoteAddress, string forwardedFor) returns string;
+
+@Description {value:"Returns whether the given client address falls into one of the blocked IP ranges"}
+extern function isIpBlocked(string clientIp) returns boolean;
+
+@Description {value:"Returns whether the given application, given as subscriber:applicationName, or the given user is
+ blocked"}
+extern function isApplicationOrUserBlocked(string application, string username) returns boolean;
@@ -56,8 +56,18 @@ public type ThrottleFilter object {
         boolean isThrottled = false;
         boolean stopOnQuota;
         string apiContext = getContext(context);
-        string apiVersion = getAPIDetailsFromServiceAnnotation(reflect:getServiceAnnotations(context.serviceType)).
-        apiVersion;
+        APIConfiguration apiConfig = getAPIDetailsFromServiceAnnotation(reflect:getServiceAnnotations(
+            context.serviceType));
+        string apiVersion = apiConfig.apiVersion;
+        string apiTier = apiConfig.apiTier;
+        string resourceTier = getResourceLevelTier(reflect:getResourceAnnotations(context.serviceType,
+            context.resourceName)).policy;
+        // Throttle keys are built once per request and shared by the decision lookups and the throttle event.
+        string apiKey = apiContext + ":" + apiVersion;
+        string resourceKey = apiContext + "/" + apiVersion + "/" + context.resourceName;
+        string subscriptionKey;
+        string appKey;
+        string customKey;
         boolean isSecured =check <boolean>context.attributes[IS_SECURED];
         context.attributes[ALLOWED_ON_QUOTA_REACHED] = false;
         context.attributes[IS_THROTTLE_OUT] = false;
@@ -77,8 +87,32 @@ public type ThrottleFilter object {
                 sendErrorResponse(listener, request, context);
                 return false;
             }
+            subscriptionKey = keyvalidationResult.applicationId + ":" + apiContext + ":" + apiVersion;
+            appKey = keyvalidationResult.applicationId + ":" + keyvalidationResult.username;
+            if (isApplicationOrUserBlocked(keyvalidationResult.subscriber + ":" + keyvalidationResult.applicationName,
+                    keyvalidationResult.username)) {
+                printDebug(KEY_THROTTLE_FILTER, "Application or user is blocked. Sending blocked response.");
+                setThrottleErrorMessageToContext(context, FORBIDDEN, BLOCKED_ERROR_CODE, BLOCKED_MESSAGE,
+                    BLOCKED_DESCRIPTION);
+                sendErrorResponse(listener, request, context);
+                return false;
+            }
+            printDebug(KEY_THROTTLE_FILTER, "Checking subscription level spike arrest.");
+            if (isSpikeArrested(subscriptionKey, keyvalidationResult)) {
+                printDebug(KEY_THROTTLE_FILTER, "Subscription burst limit exceeded. Sending throttled out response.");
+                context.attributes[IS_THROTTLE_OUT] = true;
+                context.attributes[THROTTLE_OUT_REASON] = THROTTLE_OUT_REASON_SUBSCRIPTION_BURST_LIMIT_EXCEEDED;
+                setThrottleErrorMessageToContext(context, THROTTLED_OUT, SUBSCRIPTION_BURST_THROTTLE_OUT_ERROR_CODE,
+                    THROTTLE_OUT_MESSAGE, BURST_THROTTLE_OUT_DESCRIPTION);
+                sendErrorResponse(listener, request, context);
+                return false;
+            }
+            // Policies with custom key attributes count the requests of a subscription per attribute value as well,
+            // in addition to the requests of the subscription as a whole.
+            customKey = getCustomKey(request, subscriptionKey, keyvalidationResult.tier, deployedPolicies);
             printDebug(KEY_THROTTLE_FILTER, "Checking subscription level throttling-out.");
-            (isThrottled, stopOnQuota) = isSubscriptionLevelThrottled(context, keyvalidationResult);
+            (isThrottled, stopOnQuota) = isSubscriptionLevelThrottled(subscriptionKey, customKey, keyvalidationResult,
+                deployedPolicies);
             printDebug(KEY_THROTTLE_FILTER, "Subscription level throttling result:: isThrottled:"
                     + isThrottled + ", stopOnQuota:" + stopOnQuota);
             if (isThrottled) {
@@ -108,7 +142,7 @@ public type ThrottleFilter object {
                 return false;
             }
             printDebug(KEY_THROTTLE_FILTER, "Checking application level throttling-out.");
-            if (isApplicationLevelThrottled(keyvalidationResult)) {
+            if (isApplicationLevelThrottled(appKey, keyvalidationResult, deployedPolicies)) {
                 printDebug(KEY_THROTTLE_FILTER, "Application level throttled out. Sending throttled out response.");
                 context.attributes[IS_THROTTLE_OUT] = true;
                 context.attributes[THROTTLE_OUT_REASON] = THROTTLE_OUT_REASON_APPLICATION_LIMIT_EXCEEDED;
@@ -119,6 +153,12 @@ public type ThrottleFilter object {
             } else {
                 printDebug(KEY_THROTTLE_FILTER, "Application level throttled out: false");
             }
+            // The inline counters of the API and the resource are shared by every consumer, hence they are only
+            // taken once the consumer's own limits let the request through.
+            if (isApiOrResourceLevelThrottled(listener, request, context, apiKey, apiTier, resourceKey, resourceTier,
+                    deployedPolicies)) {
+                return false;
+            }
         } else if (!isSecured) {
             printDebug(KEY_THROTTLE_FILTER, "Not a secured resource. Proceeding with Unauthenticated tier.");
             // setting keytype to invocationContext
@@ -134,7 +174,11 @@ public type ThrottleFilter object {
                 sendErrorResponse(listener, request, context);
                 return false;
             }
-            (isThrottled, stopOnQuota) = isUnauthenticateLevelThrottled(context);
+            string clientIp = <string>context.attributes[REMOTE_ADDRESS];
+            subscriptionKey = clientIp + ":" + apiContext + ":" + apiVersion;
+            customKey = getCustomKey(request, subscriptionKey, UNAUTHENTICATED_TIER, deployedPolicies);
+            appKey = clientIp + ":" + END_USER_ANONYMOUS;
+            (isThrottled, stopOnQuota) = isUnauthenticateLevelThrottled(subscriptionKey, customKey, deployedPolicies);
             printDebug(KEY_THROTTLE_FILTER, "Unauthenticated tier throttled out result:: isThrottled:"
                     + isThrottled + ", stopOnQuota:" + stopOnQuota);
             if (isThrottled) {
@@ -152,7 +196,10 @@ public type ThrottleFilter object {
                     printDebug(KEY_THROTTLE_FILTER, "Proceeding(2nd) since stopOnQuota is set to false.");
                 }
             }
-            string clientIp = <string>context.attributes[REMOTE_ADDRESS];
+            if (isApiOrResourceLevelThrottled(listener, request, context, apiKey, apiTier, resourceKey, resourceTier,
+                    deployedPolicies)) {
+                return false;
+            }
             keyvalidationResult.authenticated = true;
             keyvalidationResult.tier = UNAUTHENTICATED_TIER;
             keyvalidationResult.stopOnQuotaReach = true;
@@ -171,13 +218,34 @@ public type ThrottleFilter object {
         }
 
         //Publish throttle event to internal policies
-        RequestStreamDTO throttleEvent = generateThrottleEvent(request, context, keyvalidationResult);
+        RequestStreamDTO throttleEvent = generateThrottleEvent(request, context, keyvalidationResult, apiContext,
+            apiVersion, apiKey, apiTier, resourceKey, resourceTier, subscriptionKey, appKey, customKey);
         publishNonThrottleEvent(throttleEvent);
+        if (isBandwidthPolicy(throttleEvent.subscriptionTier, deployedPolicies) ||
+                isBandwidthPolicy(throttleEvent.appTier, deployedPolicies) ||
+                isBandwidthPolicy(apiTier, deployedPolicies) || isBandwidthPolicy(resourceTier, deployedPolicies)) {
+            context.attributes[THROTTLE_EVENT] = throttleEvent;
+        }
         printDebug(KEY_THROTTLE_FILTER, "Request is not throttled");
         return true;
     }
 
+    @Description { value: "Counts the size of the response against the bandwidth policies of the request" }
+    @Param { value: "response: Response instance" }
+    @Param { value: "context: FilterContext instance" }
+    @Return { value: "FilterResult: Always true, as a response is never throttled" }
     public function filterResponse(http:Response response, http:FilterContext context) returns boolean {
+        // Only the Content-Length header is counted, so that the payload is never buffered to measure its size.
+        if (context.attributes.hasKey(THROTTLE_EVENT) && response.hasHeader(CONTENT_LENGTH_HEADER)) {
+            RequestStreamDTO throttleEvent = check <RequestStreamDTO>context.attributes[THROTTLE_EVENT];
+            throttleEvent.requestSize = 0;
+            throttleEvent.responseSize = getContentLength(response.getHeader(CONTENT_LENGTH_HEADER));
+            if (throttleEvent.responseSize > 0) {
+                printDebug(KEY_THROTTLE_FILTER, "Counting " + throttleEvent.responseSize
+                        + " response bytes against bandwidth policies");
+                publishNonThrottleEvent(throttleEvent);
+            }
+        }
         return true;
     }
 };
@@ -191,59 +259,123 @@ function setThrottleErrorMessageToContext(http:FilterContext context, int status
     context.attributes[ERROR_DESCRIPTION] = errorDescription;
 }
 
-function isSubscriptionLevelThrottled(http:FilterContext context, AuthenticationContext keyValidationDto) returns (
-            boolean, boolean) {
+@Description {value:"Checks the subscription policy against the requests of the subscription and, if the policy has
+ custom key attributes, against the requests with the same attribute values"}
+@Param {value:"customThrottleKey: subscription key extended with the attribute values, or an empty string"}
+function isSubscriptionLevelThrottled(string subscriptionLevelThrottleKey, string customThrottleKey,
+                                      AuthenticationContext keyValidationDto, map deployedPolicies)
+                                      returns (boolean, boolean) {
     if(keyValidationDto.tier == UNLIMITED_TIER) {
         return (false, false);
     }
-    string subscriptionLevelThrottleKey = keyValidationDto.applicationId + ":" + getContext(context) + ":"
-    + getAPIDetailsFromServiceAnnotation(reflect:getServiceAnnotations(context.serviceType)).apiVersion;
-    return isRequestThrottled(subscriptionLevelThrottleKey);
+    boolean throttled;
+    boolean stopOnQuota;
+    (throttled, stopOnQuota) = isRequestThrottled(subscriptionLevelThrottleKey);
+    if (!throttled && isInlineThrottled(subscriptionLevelThrottleKey, keyValidationDto.tier, deployedPolicies)) {
+        return (true, keyValidationDto.stopOnQuotaReach);
+    }
+    if (!throttled && customThrottleKey != "") {
+        (throttled, stopOnQuota) = isRequestThrottled(customThrottleKey);
+        if (!throttled && isInlineThrottled(customThrottleKey, keyValidationDto.tier, deployedPolicies)) {
+            return (true, keyValidationDto.stopOnQuotaReach);
+        }
+    }
+    return (throttled, stopOnQuota);
 }
 
-function isApplicationLevelThrottled(AuthenticationContext keyValidationDto) returns (boolean) {
+function isApplicationLevelThrottled(string applicationLevelThrottleKey, AuthenticationContext keyValidationDto,
+                                     map deployedPolicies) returns (boolean) {
     if(keyValidationDto.applicationTier == UNLIMITED_TIER) {
         return false;
     }
-    string applicationLevelThrottleKey = keyValidationDto.applicationId + ":" + keyValidationDto.username;
     boolean throttled;
     boolean stopOnQuota;
     (throttled, stopOnQuota) = isRequestThrottled(applicationLevelThrottleKey);
-    return throttled;
+    return throttled || isInlineThrottled(applicationLevelThrottleKey, keyValidationDto.applicationTier,
+        deployedPolicies);
+}
+
+@Description {value:"Checks the advanced policies attached to the API and to the resource of the request, and sends the
+ throttled out response if either of them is exceeded"}
+@Return {value:"true if the request is throttled out"}
+function isApiOrResourceLevelThrottled(http:Listener listener, http:Request request, http:FilterContext context,
+                                       string apiKey, string apiTier, string resourceKey, string resourceTier,
+                                       map deployedPolicies) returns boolean {
+    if (isAdvancedLevelThrottled(resourceKey, resourceTier, deployedPolicies)) {
+        printDebug(KEY_THROTTLE_FILTER, "Resource level throttled out. Sending throttled out response.");
+        context.attributes[IS_THROTTLE_OUT] = true;
+        context.attributes[THROTTLE_OUT_REASON] = THROTTLE_OUT_REASON_RESOURCE_LIMIT_EXCEEDED;
+        setThrottleErrorMessageToContext(context, THROTTLED_OUT, RESOURCE_THROTTLE_OUT_ERROR_CODE,
+            THROTTLE_OUT_MESSAGE, THROTTLE_OUT_DESCRIPTION);
+        sendErrorResponse(listener, request, context);
+        return true;
+    }
+    if (isAdvancedLevelThrottled(apiKey, apiTier, deployedPolicies)) {
+        printDebug(KEY_THROTTLE_FILTER, "API level throttled out. Sending throttled out response.");
+        context.attributes[IS_THROTTLE_OUT] = true;
+        context.attributes[THROTTLE_OUT_REASON] = THROTTLE_OUT_REASON_API_LIMIT_EXCEEDED;
+        setThrottleErrorMessageToContext(context, THROTTLED_OUT, API_THROTTLE_OUT_ERROR_CODE,
+            THROTTLE_OUT_MESSAGE, THROTTLE_OUT_DESCRIPTION);
+        sendErrorResponse(listener, request, context);
+        return true;
+    }
+    return false;
+}
+
+@Description {value:"Checks whether the given API or resource key exceeds the advanced policy attached to it. Keys
+ without a policy, with the Unlimited policy or with a policy not deployed in the gateway are never throttled"}
+function isAdvancedLevelThrottled(string throttleKey, string tier, map deployedPolicies) returns boolean {
+    if (tier == "" || tier == UNLIMITED_TIER || !deployedPolicies.hasKey(tier)) {
+        return false;
+    }
+    boolean throttled;
+    boolean stopOnQuota;
+    (throttled, stopOnQuota) = isRequestThrottled(throttleKey);
+    return throttled || isInlineThrottled(throttleKey, tier, deployedPolicies);
 }
 
-function isUnauthenticateLevelThrottled(http:FilterContext context) returns (boolean, boolean) {
-    string clientIp = <string>context.attributes[REMOTE_ADDRESS];
-    string throttleKey = clientIp + ":" + getContext(context) + ":" + getAPIDetailsFromServiceAnnotation(
-                                                         reflect:getServiceAnnotations(context.serviceType)).apiVersion;
-    return isRequestThrottled(throttleKey);
+function isUnauthenticateLevelThrottled(string throttleKey, string customThrottleKey, map deployedPolicies)
+                                        returns (boolean, boolean) {
+    boolean throttled;
+    boolean stopOnQuota;
+    (throttled, stopOnQuota) = isRequestThrottled(throttleKey);
+    if (!throttled && isInlineThrottled(throttleKey, UNAUTHENTICATED_TIER, deployedPolicies)) {
+        return (true, true);
+    }
+    if (!throttled && customThrottleKey != "") {
+        (throttled, stopOnQuota) = isRequestThrottled(customThrottleKey);
+        if (!throttled && isInlineThrottled(customThrottleKey, UNAUTHENTICATED_TIER, deployedPolicies)) {
+            return (true, true);
+        }
+    }
+    return (throttled, stopOnQuota);
 }
 
-function generateThrottleEvent(http:Request req, http:FilterContext context, AuthenticationContext keyValidationDto)
-             returns (RequestStreamDTO) {
+function generateThrottleEvent(http:Request req, http:FilterContext context, AuthenticationContext keyValidationDto,
+                               string apiContext, string apiVersion, string apiKey, string apiTier,
+                               string resourceKey, string resourceTier, string subscriptionKey, string appKey,
+                               string customKey) returns (RequestStreamDTO) {
     RequestStreamDTO requestStreamDto;
-    string apiVersion = getAPIDetailsFromServiceAnnotation(reflect:getServiceAnnotations
-        (context.serviceType)).apiVersion;
     requestStreamDto.messageID = <string>context.attributes[MESSAGE_ID];
-    requestStreamDto.apiKey = getContext(context) + ":" + apiVersion;
-    requestStreamDto.appKey = keyValidationDto.applicationId + ":" + keyValidationDto.username;
-    requestStreamDto.subscriptionKey = keyValidationDto.applicationId + ":" + getContext(context) + ":" +
-        apiVersion;
+    requestStreamDto.apiKey = apiKey;
+    requestStreamDto.appKey = appKey;
+    requestStreamDto.subscriptionKey = subscriptionKey;
+    requestStreamDto.customKey = customKey;
     requestStreamDto.appTier = keyValidationDto.applicationTier;
-    requestStreamDto.apiTier = keyValidationDto.apiTier;
+    requestStreamDto.apiTier = apiTier;
     requestStreamDto.subscriptionTier = keyValidationDto.tier;
-    requestStreamDto.resourceKey = getContext(context) + "/" + getAPIDetailsFromServiceAnnotation(reflect:
-            getServiceAnnotations(context.serviceType)).apiVersion;
-    TierConfiguration tier = getResourceLevelTier(reflect:getResourceAnnotations(context.serviceType,
-            context.resourceName));
-    requestStreamDto.resourceTier = tier.policy;
+    requestStreamDto.resourceKey = resourceKey;
+    requestStreamDto.resourceTier = resourceTier;
     requestStreamDto.userId = keyValidationDto.username;
-    requestStreamDto.apiContext = getContext(context);
+    requestStreamDto.apiContext = apiContext;
     requestStreamDto.apiVersion = apiVersion;
     requestStreamDto.appTenant = keyValidationDto.subscriberTenantDomain;
     requestStreamDto.apiTenant = getTenantDomain(context);
     requestStreamDto.apiName = getApiName(context);
     requestStreamDto.appId = keyValidationDto.applicationId;
+    if (req.hasHeader(CONTENT_LENGTH_HEADER)) {
+        requestStreamDto.requestSize = getContentLength(req.getHeader(CONTENT_LENGTH_HEADER));
+    }
 
     json properties = {};
     requestStreamDto.properties = properties.toString();
@@ -154,9 +154,11 @@ public function getAuthProviders() returns http:AuthProvider[] {
 }
 
 public function getDefaultAuthorizationFilter() returns OAuthzFilter {
-    cache:Cache authzCache = new(expiryTimeMillis = getConfigIntValue(CACHING_ID, TOKEN_CACHE_EXPIRY, 900000),
-        capacity = getConfigIntValue(CACHING_ID, TOKEN_CACHE_CAPACITY, 100), evictionFactor = getConfigFloatValue(
-        CACHING_ID, TOKEN_CACHE_EVICTION_FACTOR, 0.25));
+    // The authorization handler only accepts a ballerina/cache instance, hence this cache is sized on its own.
+    cache:Cache authzCache = new(expiryTimeMillis = getConfigIntValue(CACHING_ID, AUTHZ_CACHE_EXPIRY,
+        getConfigIntValue(CACHING_ID, TOKEN_CACHE_EXPIRY, 900000)),
+        capacity = getConfigIntValue(CACHING_ID, AUTHZ_CACHE_CAPACITY, 100000), evictionFactor = getConfigFloatValue(
+        CACHING_ID, AUTHZ_CACHE_EVICTION_FACTOR, 0.25));
 
     auth:ConfigAuthStoreProvider configAuthStoreProvider = new;
     auth:AuthStoreProvider authStoreProvider = <auth:AuthStoreProvider>configAuthStoreProvider;
@@ -77,8 +77,15 @@ function OAuthnAuthenticator::handle (http:Request req)
 
 
 
+boolean isKeyValidationCoalescingEnabled = getConfigBooleanValue(KM_CONF_INSTANCE_ID, KM_COALESCING_ENABLED, true);
+int keyValidationCoalescingTimeout = getConfigIntValue(KM_CONF_INSTANCE_ID, KM_COALESCING_TIMEOUT, 10000);
+
 function  getAccessTokenCacheKey(APIRequestMetaDataDto dto) returns string {
-    return dto.accessToken + ":" + dto.context + "/" + dto.apiVersion + dto.matchingResource + ":" + dto.httpVerb;
+    return dto.accessToken + ":" + getResourceCacheKey(dto);
+}
+
+function getResourceCacheKey(APIRequestMetaDataDto dto) returns string {
+    return dto.context + "/" + dto.apiVersion + dto.matchingResource + ":" + dto.httpVerb;
 }
 
 
@@ -107,51 +114,28 @@ function OAuthAuthProvider::authenticate (APIRequestMetaDataDto apiRequestMetaDa
               (APIKeyValidationDto) {
 
     printDebug(KEY_OAUTH_PROVIDER, "Authenticating request using the request metadata.");
-    string cacheKey = getAccessTokenCacheKey(apiRequestMetaDataDto);
     string accessToken = apiRequestMetaDataDto.accessToken;
     boolean authorized;
     APIKeyValidationDto apiKeyValidationDto;
     if(getConfigBooleanValue(CACHING_ID, TOKEN_CACHE_ENABLED, true)) {
-        printDebug(KEY_OAUTH_PROVIDER, "Checking for the access token in the gateway token cache.");
-        match self.gatewayCache.retrieveFromTokenCache(accessToken) {
-            boolean isTokenCached => {
-                printDebug(KEY_OAUTH_PROVIDER, "Access token found in the token cache.");
-                match self.gatewayCache.authenticateFromGatewayKeyValidationCache(cacheKey) {
-                    APIKeyValidationDto apiKeyValidationDtoFromcache => {
-                        if (isAccessTokenExpired(apiKeyValidationDtoFromcache)) {
-                            self.gatewayCache.removeFromGatewayKeyValidationCache(cacheKey);
-                            self.gatewayCache.addToInvalidTokenCache(accessToken, apiKeyValidationDtoFromcache);
-                            self.gatewayCache.removeFromTokenCache(accessToken);
-                            apiKeyValidationDtoFromcache.authorized = "false";
-                            printDebug(KEY_OAUTH_PROVIDER, "Token has expired");
-                            return apiKeyValidationDtoFromcache;
-                        }
-                        authorized = <boolean>apiKeyValidationDtoFromcache.authorized;
-                        apiKeyValidationDto = apiKeyValidationDtoFromcache;
-                        printDebug(KEY_OAUTH_PROVIDER, "Authorized value from the token cache: " + authorized);
-                    }
-                    () => {
-                        printDebug(KEY_OAUTH_PROVIDER, "Access token not found in the invalid token cache."
-                        + " Calling the key validation service.");
-                        (authorized, apiKeyValidationDto) = self.invokeKeyValidation(apiRequestMetaDataDto);
-                    }
-                }
+        printDebug(KEY_OAUTH_PROVIDER, "Checking for the access token in the authentication cache.");
+        match self.gatewayCache.retrieveFromAuthenticationCache(accessToken,
+                getResourceCacheKey(apiRequestMetaDataDto)) {
+            APIKeyValidationDto apiKeyValidationDtoFromcache => {
+                (authorized, apiKeyValidationDto) = checkCachedKeyValidation(self.gatewayCache, accessToken,
+                    apiKeyValidationDtoFromcache);
+            }
+            KeyValidationRefresh refresh => {
+                printDebug(KEY_OAUTH_PROVIDER, "Refreshing the key validation information in the background ahead"
+                    + " of its expiry.");
+                future refreshFuture = start refreshKeyValidation(self, apiRequestMetaDataDto);
+                (authorized, apiKeyValidationDto) = checkCachedKeyValidation(self.gatewayCache, accessToken,
+                    refresh.apiKeyValidationDto);
             }
             () => {
-                printDebug(KEY_OAUTH_PROVIDER, "Access token not found in the gateway token cache.");
-
-                printDebug(KEY_OAUTH_PROVIDER, "Checking for the access token in the invalid token cache.");
-                match self.gatewayCache.retrieveFromInvalidTokenCache(accessToken) {
-                    APIKeyValidationDto cacheAuthorizedValue => {
-                        printDebug(KEY_OAUTH_PROVIDER, "Access token found in the invalid token cache.");
-                        return cacheAuthorizedValue;
-                    }
-                    () => {
-                        printDebug(KEY_OAUTH_PROVIDER, "Access token not found in the invalid token cache." 
-                                + " Calling the key validation service.");
-                        (authorized, apiKeyValidationDto) = self.invokeKeyValidation(apiRequestMetaDataDto);
-                    }
-                }
+                printDebug(KEY_OAUTH_PROVIDER, "Access token not found in the authentication cache."
+                        + " Calling the key validation service.");
+                (authorized, apiKeyValidationDto) = self.invokeKeyValidation(apiRequestMetaDataDto);
             }
         }
     } else {
@@ -174,7 +158,20 @@ function OAuthAuthProvider::invokeKeyValidation(APIRequestMetaDataDto apiRequest
     APIKeyValidationDto apiKeyValidationDto;
     string accessToken = apiRequestMetaDataDto.accessToken;
     boolean authorized = false;
-    json keyValidationInfoJson = self.doKeyValidation(apiRequestMetaDataDto);
+    json keyValidationInfoJson;
+    if (isKeyValidationCoalescingEnabled) {
+        // Concurrent requests of the same token and resource share a single key validation call.
+        string cacheKey = getAccessTokenCacheKey(apiRequestMetaDataDto);
+        keyValidationInfoJson = joinKeyValidation(cacheKey, keyValidationCoalescingTimeout);
+        if (keyValidationInfoJson == null) {
+            keyValidationInfoJson = self.doKeyValidation(apiRequestMetaDataDto);
+            completeKeyValidation(cacheKey, keyValidationInfoJson);
+        } else {
+            printDebug(KEY_OAUTH_PROVIDER, "Using the key validation response of a concurrent request.");
+        }
+    } else {
+        keyValidationInfoJson = self.doKeyValidation(apiRequestMetaDataDto);
+    }
     printTrace(KEY_OAUTH_PROVIDER, "key Validation json " + keyValidationInfoJson.toString());
     match <string>keyValidationInfoJson.authorized {
         string authorizeValue => {
@@ -197,15 +194,20 @@ function OAuthAuthProvider::invokeKeyValidation(APIRequestMetaDataDto apiRequest
                 }
                 authorized = auth;
                 if(getConfigBooleanValue(CACHING_ID, TOKEN_CACHE_ENABLED, true)) {
-                    string cacheKey = getAccessTokenCacheKey(apiRequestMetaDataDto);
-                    self.gatewayCache.addToGatewayKeyValidationCache(cacheKey, apiKeyValidationDto);
-                    self.gatewayCache.addToTokenCache(accessToken, true);
+                    self.gatewayCache.addToAuthenticationCache(accessToken,
+                        getResourceCacheKey(apiRequestMetaDataDto), apiKeyValidationDto);
                 }
             } else {
                 apiKeyValidationDto.authorized = "false";
                 apiKeyValidationDto.validationStatus = check <string>keyValidationInfoJson.validationStatus;
                 if(getConfigBooleanValue(CACHING_ID, TOKEN_CACHE_ENABLED, true)) {
-                    self.gatewayCache.addToInvalidTokenCache(accessToken, apiKeyValidationDto);
+                    if (isTokenLevelValidationStatus(apiKeyValidationDto.validationStatus)) {
+                        self.gatewayCache.addToInvalidTokenCache(accessToken, apiKeyValidationDto);
+                    } else {
+                        // e.g. the application is not subscribed to this API, the token stays valid for others.
+                        self.gatewayCache.addToAuthenticationCache(accessToken,
+                            getResourceCacheKey(apiRequestMetaDataDto), apiKeyValidationDto);
+                    }
                 }
             }
         }
@@ -219,6 +221,56 @@ function OAuthAuthProvider::invokeKeyValidation(APIRequestMetaDataDto apiRequest
 
 }
 
+@Description {value:"Checks whether a key validation failure concerns the token itself rather than the resource it was
+ validated for, in which case the token is invalid for every resource"}
+@Param {value:"validationStatus: validation status returned by the key validation service"}
+@Return {value:"true if the token is invalid, expired or inactive"}
+function isTokenLevelValidationStatus(string validationStatus) returns boolean {
+    return validationStatus == API_AUTH_INVALID_CREDENTIALS_STRING
+        || validationStatus == <string>API_AUTH_ACCESS_TOKEN_EXPIRED
+        || validationStatus == <string>API_AUTH_ACCESS_TOKEN_INACTIVE;
+}
+
+@Description {value:"Checks the key validation information found in the authentication cache. Tokens which have
+ expired since they were validated are cached as invalid"}
+@Param {value:"gatewayCache: authentication cache the information was found in"}
+@Param {value:"accessToken: access token of the request"}
+@Param {value:"apiKeyValidationDto: cached key validation information"}
+@Return {value:"boolean: true if the token is authorized, else false. APIKeyValidationDto: key validation information"}
+function checkCachedKeyValidation(APIGatewayCache gatewayCache, string accessToken,
+                                  APIKeyValidationDto apiKeyValidationDto) returns (boolean, APIKeyValidationDto) {
+    boolean authorized = <boolean>apiKeyValidationDto.authorized;
+    printDebug(KEY_OAUTH_PROVIDER, "Authorized value from the authentication cache: " + authorized);
+    if (authorized && isAccessTokenExpired(apiKeyValidationDto)) {
+        // Cached information is shared between requests, hence the expired token gets its own invalid information.
+        APIKeyValidationDto expiredDto = { authorized: "false", validationStatus: API_AUTH_INVALID_CREDENTIALS_STRING };
+        gatewayCache.addToInvalidTokenCache(accessToken, expiredDto);
+        printDebug(KEY_OAUTH_PROVIDER, "Token has expired");
+        return (false, expiredDto);
+    }
+    return (authorized, apiKeyValidationDto);
+}
+
+@Description {value:"Validates a cached key again, so that the cached key validation information is replaced before it
+ expires and requests of a hot token do not wait for the key validation service. Keys which are no longer authorized
+ are cached as invalid by the validation itself. If the key validation service fails, the cached information is kept
+ until it expires"}
+@Param {value:"provider: OAuthAuthProvider instance the key was cached by"}
+@Param {value:"apiRequestMetaDataDto: Object containig data to call the key validation service"}
+function refreshKeyValidation(OAuthAuthProvider provider, APIRequestMetaDataDto apiRequestMetaDataDto) {
+    boolean authorized;
+    APIKeyValidationDto apiKeyValidationDto;
+    try {
+        (authorized, apiKeyValidationDto) = provider.invokeKeyValidation(apiRequestMetaDataDto);
+        if (!authorized) {
+            printDebug(KEY_OAUTH_PROVIDER, "Access token is no longer authorized.");
+        }
+    } catch (error err) {
+        log:printError("Error occurred while refreshing the key validation information of the access token",
+            err = err);
+    }
+}
+
 function OAuthAuthProvider::doKeyValidation (APIRequestMetaDataDto apiRequestMetaDataDto)
                                        returns (json) {
     try {
@@ -287,3 +339,11 @@ function OAuthAuthProvider::doKeyValidation (APIRequestMetaDataDto apiRequestMet
         return {};
     }
 }
+
+@Description {value:"Joins the key validation call in flight for the given cache key, waiting at most the given time in
+ milliseconds for its response. Returns null if there is none, in which case the caller calls the key validation
+ service and completes the validation"}
+extern function joinKeyValidation(string cacheKey, int timeout) returns json;
+
+@Description {value:"Completes the key validation of the given cache key, handing the response to the waiting callers"}
+extern function completeKeyValidation(string cacheKey, json keyValidationResponse);
@@ -18,28 +18,152 @@ import ballerina/http;
 import ballerina/time;
 import ballerina/io;
 import ballerina/log;
+import ballerina/runtime;
 
-map throttleDataMap;
 public stream<RequestStreamDTO> requestStream;
 public stream<GlobalThrottleStreamDTO> globalThrottleStream;
 public boolean isStreamsInitialized;
+boolean isInlineThrottlingEnabled = getConfigBooleanValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_INLINE_ENABLED, true);
+boolean isSpikeArrestEnabled = getConfigBooleanValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_SPIKE_ARREST_ENABLED, true);
 future ftr = start initializeThrottleSubscription();
 
 public function isRequestThrottled(string key) returns (boolean, boolean) {
-    boolean isThrottled = throttleDataMap.hasKey(key);
-    if (isThrottled) {
-        int currentTime = time:currentTime().time;
-        GlobalThrottleStreamDTO dto = check <GlobalThrottleStreamDTO>throttleDataMap[key];
-        int timeStamp = dto.expiryTimeStamp;
-        boolean stopOnQuota = dto.stopOnQuota;
-        if (timeStamp >= currentTime) {
-            return (isThrottled, stopOnQuota);
-        } else {
-            boolean status = throttleDataMap.remove(key);
-            return (false, stopOnQuota);
+    int decision = getThrottleDecision(key, time:currentTime().time);
+    return (decision != THROTTLE_DECISION_NOT_THROTTLED, decision == THROTTLE_DECISION_STOP_ON_QUOTA);
+}
+
+@Description {value:"Counts the request of the given key against the limit of its policy, inline with the request,
+ so that bursts are throttled before the decision of the throttle streams arrives. Policies counted in a sketch are
+ not counted inline, as the inline limiter would hold a counter for each of their many keys"}
+public function isInlineThrottled(string key, string tier, map deployedPolicies) returns boolean {
+    if (!isInlineThrottlingEnabled || tier == UNLIMITED_TIER) {
+        return false;
+    }
+    match deployedPolicies[tier] {
+        map policy => {
+            if (!policy.hasKey(POLICY_REQUEST_COUNT) || isSketchPolicy(policy)) {
+                return false;
+            }
+            int limit = check <int>policy[POLICY_REQUEST_COUNT];
+            int unitTime = check <int>policy[POLICY_UNIT_TIME];
+            string timeUnit = <string>policy[POLICY_TIME_UNIT];
+            return !tryAcquire(key, limit, unitTime, timeUnit);
+        }
+        any => {
+            return false;
+        }
+    }
+}
+
+@Description {value:"Checks whether a request of the given subscription exceeds the spike arrest limit of the
+ subscription, which caps the requests per second or per minute regardless of the remaining quota"}
+public function isSpikeArrested(string key, AuthenticationContext keyValidationDto) returns boolean {
+    if (!isSpikeArrestEnabled || keyValidationDto.spikeArrestLimit <= 0) {
+        return false;
+    }
+    return !tryAcquireSpikeArrest(key, keyValidationDto.spikeArrestLimit, keyValidationDto.spikeArrestUnit);
+}
+
+@Description {value:"Checks whether the given deployed policy is counted in a count-min sketch"}
+function isSketchPolicy(map policy) returns boolean {
+    return policy.hasKey(POLICY_ALGORITHM) && (<string>policy[POLICY_ALGORITHM]).hasPrefix(SKETCH_ALGORITHM_PREFIX);
+}
+
+@Description {value:"Checks whether the tier has a deployed bandwidth policy, which counts the bytes of requests and
+ responses instead of the number of requests"}
+public function isBandwidthPolicy(string tier, map deployedPolicies) returns boolean {
+    match deployedPolicies[tier] {
+        map policy => {
+            return policy.hasKey(POLICY_DATA_AMOUNT);
+        }
+        any => {
+            return false;
+        }
+    }
+}
+
+@Description {value:"Returns the custom throttle key of a request, which is the subscription key followed by the
+ values of the headers, query parameters and JWT claims the policy of the given tier counts the requests of a
+ subscription per, or an empty string if the policy has none"}
+public function getCustomKey(http:Request request, string subscriptionKey, string tier, map deployedPolicies)
+                             returns string {
+    string customKey = getCustomThrottleKey(request, tier, deployedPolicies);
+    return customKey == "" ? "" : subscriptionKey + customKey;
+}
+
+@Description {value:"Returns the values of the headers, query parameters and JWT claims the policy of the given tier
+ counts the requests of a subscription per, or an empty string if the policy has none. Each value is prefixed with
+ ':' and its length, so that values containing ':' cannot make the keys of different values equal, and values are
+ cut at MAX_CUSTOM_KEY_VALUE_LENGTH characters, so that clients cannot make the keys arbitrarily long"}
+public function getCustomThrottleKey(http:Request request, string tier, map deployedPolicies) returns string {
+    match deployedPolicies[tier] {
+        map policy => {
+            string customKey = "";
+            foreach header in getPolicyKeyAttributes(policy, POLICY_KEY_HEADERS) {
+                customKey = appendCustomKeyValue(customKey, request.hasHeader(header) ? request.getHeader(header) : "");
+            }
+            string[] params = getPolicyKeyAttributes(policy, POLICY_KEY_QUERY_PARAMS);
+            if (lengthof params > 0) {
+                map<string> queryParams = request.getQueryParams();
+                foreach param in params {
+                    customKey = appendCustomKeyValue(customKey, queryParams.hasKey(param) ? <string>queryParams[param]
+                        : "");
+                }
+            }
+            string[] claimNames = getPolicyKeyAttributes(policy, POLICY_KEY_CLAIMS);
+            if (lengthof claimNames > 0) {
+                map claims = runtime:getInvocationContext().userPrincipal.claims;
+                foreach claim in claimNames {
+                    customKey = appendCustomKeyValue(customKey, claims.hasKey(claim) ? <string>claims[claim] : "");
+                }
+            }
+            return customKey;
+        }
+        any => {
+            return "";
+        }
+    }
+}
+
+@Description {value:"Returns the request attributes of the given kind a deployed policy counts the requests of a
+ subscription per, as listed by getDeployedPolicies"}
+function getPolicyKeyAttributes(map policy, string kind) returns string[] {
+    match policy[kind] {
+        string[] attributes => {
+            return attributes;
+        }
+        any[] attributes => {
+            string[] names = [];
+            foreach attribute in attributes {
+                names[lengthof names] = <string>attribute;
+            }
+            return names;
+        }
+        any => {
+            return [];
+        }
+    }
+}
+
+@Description {value:"Appends a request attribute value to a custom throttle key"}
+function appendCustomKeyValue(string customKey, string value) returns string {
+    int length = value.length();
+    if (length > MAX_CUSTOM_KEY_VALUE_LENGTH) {
+        return customKey + ":" + length + ":" + value.substring(0, MAX_CUSTOM_KEY_VALUE_LENGTH);
+    }
+    return customKey + ":" + length + ":" + value;
+}
+
+@Description {value:"Returns the value of a Content-Length header, or 0 when the value is not a valid length"}
+public function getContentLength(string contentLength) returns int {
+    match <int>contentLength {
+        int length => {
+            return length;
+        }
+        error => {
+            return 0;
         }
     }
-    return (isThrottled, false);
 }
 
 public function publishNonThrottleEvent(RequestStreamDTO request) {
@@ -48,13 +172,48 @@ public function publishNonThrottleEvent(RequestStreamDTO request) {
 }
 function initializeThrottleSubscription() {
     globalThrottleStream.subscribe(onReceiveThrottleEvent);
+    if (getConfigBooleanValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_PERSISTENCE_ENABLED, false)) {
+        initThrottleStatePersistence(getConfigValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_PERSISTENCE_DIRECTORY,
+                "${ballerina.home}/throttle-state"), getConfigIntValue(THROTTLE_CONF_INSTANCE_ID,
+                THROTTLE_PERSISTENCE_INTERVAL, 5000));
+        printDebug(KEY_THROTTLE_UTIL, "Throttle state persistence is initialized.");
+    }
+    if (getConfigBooleanValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_ASYNC_ENABLED, true)) {
+        initThrottleEventDispatcher(getConfigIntValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_ASYNC_WORKERS, 4),
+            getConfigIntValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_ASYNC_BUFFER_SIZE, 8192),
+            getConfigValue(THROTTLE_CONF_INSTANCE_ID, THROTTLE_ASYNC_OVERFLOW, "inline"));
+        printDebug(KEY_THROTTLE_UTIL, "Throttle event dispatcher is initialized.");
+    }
     isStreamsInitialized = true;
 }
+
+@Description {value:"Restores the throttle state checkpointed to the given directory and keeps checkpointing it at the
+ given interval in milliseconds"}
+extern function initThrottleStatePersistence(string directory, int interval);
+
+@Description {value:"Starts the worker threads the throttle queries hand their events off to, so that the request
+ thread only queues its throttle event. The overflow policy is either drop or inline"}
+extern function initThrottleEventDispatcher(int workers, int bufferSize, string overflowPolicy);
+
+@Description {value:"Admits a request of the given key if less than limit requests of the key were admitted in the
+ current calendar window of unitTime time units, which starts and ends with the window of the throttle policy"}
+extern function tryAcquire(string key, int limit, int unitTime, string timeUnit) returns boolean;
+
+@Description {value:"Admits a request of the given key if less than limit requests of the key were admitted within
+ the last second or minute, as given by the unit. Requests of other units are admitted."}
+extern function tryAcquireSpikeArrest(string key, int limit, string unit) returns boolean;
+
+@Description {value:"Records that the given key is throttled until the expiry time"}
+extern function addThrottleDecision(string key, int expiryTimeStamp, boolean stopOnQuota);
+
+@Description {value:"Returns the throttle decision of the given key at the current time, which is one of the
+ THROTTLE_DECISION constants"}
+extern function getThrottleDecision(string key, int currentTime) returns int;
 public function onReceiveThrottleEvent(GlobalThrottleStreamDTO throttleEvent) {
     printDebug(KEY_THROTTLE_UTIL, "Event GlobalThrottleStream: throttleKey:" + throttleEvent.throttleKey + ",isThrottled:"
         + throttleEvent.isThrottled + ",expiryTimeStamp:" + throttleEvent.expiryTimeStamp);
     if (throttleEvent.isThrottled){
-        throttleDataMap[throttleEvent.throttleKey] = throttleEvent;
+        addThrottleDecision(throttleEvent.throttleKey, throttleEvent.expiryTimeStamp, throttleEvent.stopOnQuota);
     }
 }
 
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.auth;
+
+import org.ballerina.gateway.cache.OffHeapStore;
+import org.ballerina.gateway.cache.TinyLfuCache;
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.ballerinalang.model.types.BType;
+import org.ballerinalang.model.values.BMap;
+import org.ballerinalang.model.values.BValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of the authentication results of access tokens.
+ * <p/>
+ * Each token maps to a single entry which either marks the token as invalid, holding the key validation information
+ * with the invalid status, or holds the key validation information of each resource the token has been validated
+ * for. Only failures which concern the token itself, such as invalid or expired credentials, mark the whole token as
+ * invalid; failures of one resource, such as a missing subscription, are results of that resource only. A lookup of
+ * a token and resource therefore takes one hash probe followed by a scan of the few resources of the token. Entries
+ * are immutable and replaced as a whole, hence readers never see a partially updated entry.
+ * <p/>
+ * Results expire the configured time after they were cached. When refresh ahead is enabled, the first lookup of a
+ * result older than the refresh ahead time is handed the refresh value of the result instead, which tells the caller
+ * to validate the token again in the background while later lookups keep being served the cached result.
+ * <p/>
+ * Tokens are held in a {@link TinyLfuCache}, hence when the capacity is exceeded the tokens used least often recently
+ * are evicted, one at a time.
+ * <p/>
+ * For very large numbers of tokens, entries can in addition be written through to an {@link OffHeapStore} in a
+ * compact binary encoding. The heap then only holds a small front of hot tokens, and tokens missing from the front are
+ * decoded from the off heap store and brought back into it.
+ */
+public class AuthenticationCache {
+    private static final Logger log = LoggerFactory.getLogger(AuthenticationCache.class);
+    private static final AuthenticationCache instance = new AuthenticationCache();
+
+    private static final String CACHE_NAME = "authCache";
+
+    private final RecordCodec codec = new RecordCodec();
+    private volatile TinyLfuCache<String, TokenEntry> entries = new TinyLfuCache<>(CACHE_NAME, 100000, 900000);
+    private volatile OffHeapStore offHeapStore;
+    private volatile long expiryTime = 900000;
+    private volatile long refreshAheadTime = -1;
+    // Type and field of the record refresh values wrap results in, used to wrap results read from off heap.
+    private volatile BType refreshType;
+    private volatile String refreshField;
+
+    AuthenticationCache() {
+        GatewayMetrics.registerGauge(CACHE_NAME + ".size", () -> entries.size());
+    }
+
+    public static AuthenticationCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param expiryTime       time in milliseconds results are cached for
+     * @param capacity         maximum number of tokens cached on the heap
+     * @param refreshAheadTime age in milliseconds after which results are refreshed, or a negative value to disable
+     * @param offHeapMemory    maximum number of bytes used to hold tokens off heap, or zero to disable
+     */
+    public void init(long expiryTime, int capacity, long refreshAheadTime, long offHeapMemory) {
+        this.entries = new TinyLfuCache<>(CACHE_NAME, capacity, expiryTime);
+        this.offHeapStore = offHeapMemory > 0 ? new OffHeapStore(CACHE_NAME, offHeapMemory) : null;
+        this.expiryTime = expiryTime;
+        this.refreshAheadTime = refreshAheadTime;
+    }
+
+    /**
+     * Looks up the authentication result of a token for a resource.
+     *
+     * @param accessToken access token
+     * @param resourceKey resource the token is used for
+     * @param currentTime current time in milliseconds
+     * @return the invalid result of the token, the result of the resource, the refresh value of the result of the
+     * resource when the caller should refresh it, or null when nothing is cached
+     */
+    public BValue get(String accessToken, String resourceKey, long currentTime) {
+        TokenEntry entry = entries.get(accessToken, currentTime);
+        if (entry == null && offHeapStore != null) {
+            entry = loadFromOffHeap(accessToken, currentTime);
+        }
+        if (entry == null) {
+            GatewayMetrics.counter("authCache.misses").increment();
+            return null;
+        }
+        if (entry.invalidResult != null) {
+            return hitOrMiss(currentTime < entry.invalidCachedTime + expiryTime ? entry.invalidResult : null);
+        }
+        ResourceResult result = entry.find(resourceKey);
+        if (result == null || currentTime >= result.cachedTime + expiryTime) {
+            return hitOrMiss(null);
+        }
+        if (refreshAheadTime >= 0 && result.refreshValue != null && currentTime - result.cachedTime >= refreshAheadTime
+                && !result.refreshing.get() && result.refreshing.compareAndSet(false, true)) {
+            GatewayMetrics.counter("authCache.refreshes").increment();
+            return hitOrMiss(result.refreshValue);
+        }
+        return hitOrMiss(result.value);
+    }
+
+    /**
+     * Caches the result of a token validated for a resource, whether the token is authorized for the resource or
+     * not. The token is no longer considered invalid and the result replaces any previous result of the resource.
+     *
+     * @param refreshValue value handed to the lookup which should refresh the result
+     */
+    public void put(String accessToken, String resourceKey, BValue value, BValue refreshValue, long currentTime) {
+        ResourceResult result = new ResourceResult(resourceKey, value, refreshValue, currentTime);
+        if (refreshType == null) {
+            learnRefreshType(value, refreshValue);
+        }
+        entries.compute(accessToken, previous -> {
+            // Results of other resources may only be held off heap when the token has left the front.
+            TokenEntry current = previous == null ? readFromOffHeap(accessToken) : previous;
+            return writeToOffHeap(accessToken, current == null || current.invalidResult != null
+                    ? new TokenEntry(new ResourceResult[] { result })
+                    : current.with(result, currentTime, expiryTime));
+        }, currentTime);
+    }
+
+    /**
+     * Marks the token as invalid for every resource, dropping the results of its resources. Only meant for failures
+     * which concern the token itself, failures of a single resource are cached with
+     * {@link #put(String, String, BValue, BValue, long)}.
+     */
+    public void putInvalid(String accessToken, BValue invalidResult, long currentTime) {
+        TokenEntry entry = new TokenEntry(invalidResult, currentTime);
+        entries.compute(accessToken, previous -> writeToOffHeap(accessToken, entry), currentTime);
+    }
+
+    public void remove(String accessToken) {
+        entries.remove(accessToken);
+        OffHeapStore store = offHeapStore;
+        if (store != null) {
+            store.remove(accessToken);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private BValue hitOrMiss(BValue value) {
+        GatewayMetrics.counter(value == null ? "authCache.misses" : "authCache.hits").increment();
+        return value;
+    }
+
+    /**
+     * Reads the entry of a token missing from the front from off heap, and brings it back into the front.
+     */
+    private TokenEntry loadFromOffHeap(String accessToken, long currentTime) {
+        long startTime = System.nanoTime();
+        TokenEntry entry = readFromOffHeap(accessToken);
+        GatewayMetrics.counter(CACHE_NAME + ".offHeap.readNanos").add(System.nanoTime() - startTime);
+        GatewayMetrics.counter(CACHE_NAME + (entry == null ? ".offHeap.misses" : ".offHeap.hits")).increment();
+        if (entry == null) {
+            return null;
+        }
+        // An entry written meanwhile is more recent than the one read.
+        return entries.compute(accessToken, previous -> previous == null ? entry : previous, currentTime);
+    }
+
+    private TokenEntry readFromOffHeap(String accessToken) {
+        OffHeapStore store = offHeapStore;
+        byte[] bytes = store == null ? null : store.get(accessToken);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to decode the cached authentication results of a token", e);
+            store.remove(accessToken);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry through to off heap. Entries which cannot be encoded are only kept in the front.
+     *
+     * @return the given entry
+     */
+    private TokenEntry writeToOffHeap(String accessToken, TokenEntry entry) {
+        OffHeapStore store = offHeapStore;
+        if (store == null) {
+            return entry;
+        }
+        byte[] bytes = null;
+        try {
+            bytes = encode(entry);
+        } catch (IOException e) {
+            log.debug("Unable to encode the authentication results of a token", e);
+        }
+        if (bytes == null) {
+            store.remove(accessToken);
+        } else {
+            store.put(accessToken, bytes);
+        }
+        return entry;
+    }
+
+    private byte[] encode(TokenEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (entry.invalidResult != null) {
+            out.writeBoolean(true);
+            out.writeLong(entry.invalidCachedTime);
+            if (!codec.encode(entry.invalidResult, out)) {
+                return null;
+            }
+        } else {
+            out.writeBoolean(false);
+            out.writeShort(entry.results.length);
+            for (ResourceResult result : entry.results) {
+                out.writeUTF(result.resourceKey);
+                out.writeLong(result.cachedTime);
+                if (!codec.encode(result.value, out)) {
+                    return null;
+                }
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private TokenEntry decode(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            long cachedTime = in.readLong();
+            return new TokenEntry(codec.decode(in), cachedTime);
+        }
+        ResourceResult[] results = new ResourceResult[in.readUnsignedShort()];
+        for (int i = 0; i < results.length; i++) {
+            String resourceKey = in.readUTF();
+            long cachedTime = in.readLong();
+            BValue value = codec.decode(in);
+            results[i] = new ResourceResult(resourceKey, value, wrapForRefresh(value), cachedTime);
+        }
+        return new TokenEntry(results);
+    }
+
+    private void learnRefreshType(BValue value, BValue refreshValue) {
+        if (!(refreshValue instanceof BMap)) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        BMap<String, BValue> refreshRecord = (BMap<String, BValue>) refreshValue;
+        for (String key : refreshRecord.keys()) {
+            if (refreshRecord.get(key) == value) {
+                refreshField = key;
+                refreshType = refreshValue.getType();
+                return;
+            }
+        }
+    }
+
+    private BValue wrapForRefresh(BValue value) {
+        if (refreshType == null) {
+            return null;
+        }
+        BMap<String, BValue> refreshRecord = new BMap<>(refreshType);
+        refreshRecord.put(refreshField, value);
+        return refreshRecord;
+    }
+
+    /**
+     * Authentication results of a token.
+     */
+    private static class TokenEntry {
+        private final BValue invalidResult;
+        private final long invalidCachedTime;
+        private final ResourceResult[] results;
+
+        private TokenEntry(BValue invalidResult, long currentTime) {
+            this.invalidResult = invalidResult;
+            this.invalidCachedTime = currentTime;
+            this.results = new ResourceResult[0];
+        }
+
+        private TokenEntry(ResourceResult[] results) {
+            this.invalidResult = null;
+            this.invalidCachedTime = 0;
+            this.results = results;
+        }
+
+        private ResourceResult find(String resourceKey) {
+            for (ResourceResult result : results) {
+                if (result.resourceKey.equals(resourceKey)) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns a copy of the entry with the given result added, dropping expired results and the previous result
+         * of the same resource.
+         */
+        private TokenEntry with(ResourceResult result, long currentTime, long expiryTime) {
+            List<ResourceResult> updated = new ArrayList<>(results.length + 1);
+            for (ResourceResult existing : results) {
+                if (!existing.resourceKey.equals(result.resourceKey)
+                        && currentTime < existing.cachedTime + expiryTime) {
+                    updated.add(existing);
+                }
+            }
+            updated.add(result);
+            return new TokenEntry(updated.toArray(new ResourceResult[0]));
+        }
+    }
+
+    /**
+     * Authentication result of a token for one resource.
+     */
+    private static class ResourceResult {
+        private final String resourceKey;
+        private final BValue value;
+        private final BValue refreshValue;
+        private final long cachedTime;
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        private ResourceResult(String resourceKey, BValue value, BValue refreshValue, long cachedTime) {
+            this.resourceKey = resourceKey;
+            this.value = value;
+            this.refreshValue = refreshValue;
+            this.cachedTime = cachedTime;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.auth;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.ballerinalang.model.values.BValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces concurrent key validation calls of the same access token and resource into a single call.
+ * <p/>
+ * The first caller of a key starts a validation and calls the key validation service. Callers of the same key which
+ * arrive while the validation is in flight register a callback instead, which is handed the response of the
+ * validation once it completes, so that a popular token expiring from the cache results in one call to the key
+ * manager instead of one call per concurrent request. Waiting callers do not hold a thread.
+ * <p/>
+ * A caller waits at most the given timeout. When it expires, e.g. because the caller validating the key failed
+ * before completing the validation, the first waiting caller to time out replaces the validation with one of its own
+ * and calls the service itself. The other callers timing out on the same validation join the replacement instead, so
+ * that a failed validation is retried by one caller only.
+ */
+public class KeyValidationCoalescer {
+    private static final KeyValidationCoalescer instance = new KeyValidationCoalescer();
+
+    private final ConcurrentHashMap<String, Validation> validations = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timer;
+
+    KeyValidationCoalescer() {
+        timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "key-validation-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        GatewayMetrics.registerGauge("keyValidation.inFlight", () -> validations.size());
+    }
+
+    public static KeyValidationCoalescer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Joins the validation of the given key in flight, or starts one when there is none.
+     *
+     * @param key      key validation cache key, i.e. the access token and the resource it is validated for
+     * @param timeout  time in milliseconds to wait for the validation in flight
+     * @param callback receives the response of the validation joined, or null when the caller has to validate the
+     *                 key itself and complete the validation
+     * @return true if the caller started the validation, in which case the callback is not called
+     */
+    public boolean join(String key, long timeout, Consumer<BValue> callback) {
+        Validation validation = validations.get(key);
+        if (validation == null) {
+            Validation newValidation = new Validation();
+            validation = validations.putIfAbsent(key, newValidation);
+            if (validation == null) {
+                GatewayMetrics.counter("keyValidation.calls").increment();
+                return true;
+            }
+        }
+        Waiter waiter = new Waiter(callback, timeout);
+        synchronized (validation) {
+            if (!validation.completed) {
+                Validation joined = validation;
+                waiter.timeoutTask = timer.schedule(() -> takeOver(key, joined, waiter), timeout,
+                        TimeUnit.MILLISECONDS);
+                validation.waiters.add(waiter);
+                return false;
+            }
+        }
+        // The validation completed after it was looked up.
+        GatewayMetrics.counter("keyValidation.coalesced").increment();
+        callback.accept(validation.response);
+        return false;
+    }
+
+    /**
+     * Completes the validation of the given key, handing the response to the callers waiting for it.
+     */
+    public void complete(String key, BValue response) {
+        Validation validation = validations.remove(key);
+        if (validation == null) {
+            return;
+        }
+        List<Waiter> waiters;
+        synchronized (validation) {
+            validation.completed = true;
+            validation.response = response;
+            waiters = validation.waiters;
+        }
+        for (Waiter waiter : waiters) {
+            if (waiter.done.compareAndSet(false, true)) {
+                waiter.timeoutTask.cancel(false);
+                GatewayMetrics.counter("keyValidation.coalesced").increment();
+                waiter.callback.accept(response);
+            }
+        }
+    }
+
+    public int size() {
+        return validations.size();
+    }
+
+    private void takeOver(String key, Validation validation, Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return;
+        }
+        GatewayMetrics.counter("keyValidation.coalesceTimeouts").increment();
+        // Later callers join the validation of this caller instead of the one which timed out.
+        if (validations.replace(key, validation, new Validation())) {
+            GatewayMetrics.counter("keyValidation.calls").increment();
+            waiter.callback.accept(null);
+            return;
+        }
+        // Another caller took over or the validation completed meanwhile, hence the caller waits once more.
+        if (join(key, waiter.timeout, waiter.callback)) {
+            waiter.callback.accept(null);
+        }
+    }
+
+    /**
+     * Key validation in flight and the callers waiting for its response.
+     */
+    private static class Validation {
+        private final List<Waiter> waiters = new ArrayList<>();
+        private boolean completed;
+        private BValue response;
+    }
+
+    /**
+     * Callback of a waiting caller, which is called exactly once, either on completion or on timeout.
+     */
+    private static class Waiter {
+        private final Consumer<BValue> callback;
+        private final long timeout;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private ScheduledFuture<?> timeoutTask;
+
+        private Waiter(Consumer<BValue> callback, long timeout) {
+            this.callback = callback;
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.auth;
+
+import org.ballerinalang.model.types.BType;
+import org.ballerinalang.model.values.BMap;
+import org.ballerinalang.model.values.BString;
+import org.ballerinalang.model.values.BValue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Binary encoding of records of one type whose fields are all strings, such as the key validation information.
+ * <p/>
+ * The type of the records and the names of their fields are kept once by the codec, hence an encoded record holds a
+ * one byte field number and the value of each field only.
+ */
+public class RecordCodec {
+    private static final int MAX_FIELDS = 255;
+
+    private final Map<String, Integer> fieldNumbers = new ConcurrentHashMap<>();
+    private final List<String> fieldNames = new CopyOnWriteArrayList<>();
+    private volatile BType recordType;
+
+    /**
+     * Writes the record to the given stream.
+     *
+     * @return false if the value is not a record of the type of the codec or has fields which are not strings, in
+     * which case the stream is left in an undefined state
+     */
+    public boolean encode(BValue value, DataOutputStream out) throws IOException {
+        if (!(value instanceof BMap) || !isRecordType(value.getType())) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        BMap<String, BValue> record = (BMap<String, BValue>) value;
+        String[] keys = record.keys();
+        out.writeByte(keys.length);
+        for (String key : keys) {
+            BValue field = record.get(key);
+            Integer fieldNumber = fieldNumberOf(key);
+            if (!(field instanceof BString) || fieldNumber == null) {
+                return false;
+            }
+            out.writeByte(fieldNumber);
+            out.writeUTF(field.stringValue());
+        }
+        return true;
+    }
+
+    /**
+     * Reads a record written by {@link #encode(BValue, DataOutputStream)}.
+     */
+    public BValue decode(DataInputStream in) throws IOException {
+        BMap<String, BValue> record = new BMap<>(recordType);
+        int fieldCount = in.readUnsignedByte();
+        for (int i = 0; i < fieldCount; i++) {
+            String fieldName = fieldNames.get(in.readUnsignedByte());
+            record.put(fieldName, new BString(in.readUTF()));
+        }
+        return record;
+    }
+
+    private boolean isRecordType(BType type) {
+        if (recordType == null) {
+            synchronized (this) {
+                if (recordType == null) {
+                    recordType = type;
+                }
+            }
+        }
+        return recordType.equals(type);
+    }
+
+    private Integer fieldNumberOf(String fieldName) {
+        Integer fieldNumber = fieldNumbers.get(fieldName);
+        if (fieldNumber != null) {
+            return fieldNumber;
+        }
+        synchronized (this) {
+            fieldNumber = fieldNumbers.get(fieldName);
+            if (fieldNumber == null && fieldNames.size() < MAX_FIELDS) {
+                fieldNames.add(fieldName);
+                fieldNumber = fieldNames.size() - 1;
+                fieldNumbers.put(fieldName, fieldNumber);
+            }
+            return fieldNumber;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.cache;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Store of byte array values held outside the Java heap.
+ * <p/>
+ * Values are appended to a ring of direct buffer slabs, which are allocated on first use up to the maximum memory.
+ * Only the index from key to slab and offset stays on the heap. When the ring wraps around, the oldest slab is reused
+ * and the values written to it are dropped, hence values are evicted in the order they were written, which for
+ * values with a fixed time to live is the order they expire in. Replacing or removing a value leaves its old bytes in
+ * place until the slab is reused.
+ * <p/>
+ * Writes are serialized by a lock. Reads copy the value optimistically and only take the lock when a write
+ * interfered.
+ */
+public class OffHeapStore {
+    private static final int MAX_SLAB_SIZE = 4 * 1024 * 1024;
+    private static final int MIN_MEMORY = 1024 * 1024;
+    // Length of the record and of the key precede the key and the value.
+    private static final int HEADER_SIZE = 6;
+
+    private final ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final ByteBuffer[] slabs;
+    private final int[] slabEnds;
+    private final int slabSize;
+    private final String metricPrefix;
+    private int currentSlab;
+    private int position;
+
+    /**
+     * @param name      name the metrics of the store are published under
+     * @param maxMemory maximum number of bytes allocated outside the heap
+     */
+    public OffHeapStore(String name, long maxMemory) {
+        if (maxMemory < MIN_MEMORY) {
+            throw new IllegalArgumentException("Maximum off heap memory of " + name + " should be at least "
+                    + MIN_MEMORY + " bytes, but found " + maxMemory);
+        }
+        this.slabSize = (int) Math.min(MAX_SLAB_SIZE, maxMemory / 2);
+        int slabCount = (int) Math.min(Integer.MAX_VALUE, maxMemory / slabSize);
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabEnds = new int[slabCount];
+        this.metricPrefix = name + ".offHeap.";
+        GatewayMetrics.registerGauge(metricPrefix + "entries", () -> index.size());
+        GatewayMetrics.registerGauge(metricPrefix + "allocatedBytes", this::getAllocatedBytes);
+        GatewayMetrics.registerGauge(metricPrefix + "maxBytes", () -> (long) slabs.length * slabSize);
+    }
+
+    /**
+     * Stores the value of the key, replacing any previous value.
+     *
+     * @return false if the value does not fit in a slab and was not stored
+     */
+    public boolean put(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + keyBytes.length + value.length;
+        if (length > slabSize || keyBytes.length > Short.MAX_VALUE) {
+            index.remove(key);
+            GatewayMetrics.counter(metricPrefix + "rejections").increment();
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            if (slabs[currentSlab] == null || position + length > slabSize) {
+                nextSlab();
+            }
+            ByteBuffer slab = slabs[currentSlab].duplicate();
+            slab.position(position);
+            slab.putInt(length);
+            slab.putShort((short) keyBytes.length);
+            slab.put(keyBytes);
+            slab.put(value);
+            index.put(key, address(currentSlab, position));
+            position += length;
+            slabEnds[currentSlab] = position;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the value of the key, or null if the key is not stored.
+     */
+    public byte[] get(String key) {
+        Long address = index.get(key);
+        if (address == null) {
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = null;
+        long stamp = lock.tryOptimisticRead();
+        try {
+            value = read(address, keyBytes);
+        } catch (RuntimeException e) {
+            // The record was overwritten while it was read, validation below fails.
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                address = index.get(key);
+                value = address == null ? null : read(address, keyBytes);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    public void remove(String key) {
+        index.remove(key);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long getAllocatedBytes() {
+        long allocated = 0;
+        for (ByteBuffer slab : slabs) {
+            if (slab != null) {
+                allocated += slab.capacity();
+            }
+        }
+        return allocated;
+    }
+
+    private byte[] read(long address, byte[] keyBytes) {
+        ByteBuffer slab = slabs[(int) (address >>> 32)].duplicate();
+        slab.position((int) address);
+        int length = slab.getInt();
+        int keyLength = slab.getShort();
+        if (keyLength != keyBytes.length || length < HEADER_SIZE + keyLength || length > slabSize) {
+            return null;
+        }
+        byte[] storedKey = new byte[keyLength];
+        slab.get(storedKey);
+        if (!Arrays.equals(storedKey, keyBytes)) {
+            return null;
+        }
+        byte[] value = new byte[length - HEADER_SIZE - keyLength];
+        slab.get(value);
+        return value;
+    }
+
+    /**
+     * Moves on to the next slab of the ring, dropping the values stored in it. Called with the write lock held.
+     */
+    private void nextSlab() {
+        if (slabs[currentSlab] != null) {
+            currentSlab = (currentSlab + 1) % slabs.length;
+        }
+        position = 0;
+        ByteBuffer slab = slabs[currentSlab];
+        if (slab == null) {
+            slabs[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+            return;
+        }
+        int evictionCount = 0;
+        ByteBuffer records = slab.duplicate();
+        for (int offset = 0; offset < slabEnds[currentSlab]; ) {
+            records.position(offset);
+            int length = records.getInt();
+            byte[] keyBytes = new byte[records.getShort()];
+            records.get(keyBytes);
+            if (index.remove(new String(keyBytes, StandardCharsets.UTF_8), address(currentSlab, offset))) {
+                evictionCount++;
+            }
+            offset += length;
+        }
+        slabEnds[currentSlab] = 0;
+        if (evictionCount > 0) {
+            GatewayMetrics.counter(metricPrefix + "evictions").add(evictionCount);
+        }
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+}
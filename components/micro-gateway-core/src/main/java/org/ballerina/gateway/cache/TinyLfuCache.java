@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.cache;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded cache with time to live expiry and W-TinyLFU eviction.
+ * <p/>
+ * Entries are held in a concurrent hash map, hence reads do not lock. The eviction policy is split into segments by
+ * key hash, each with its own lock, recency lists and frequency sketch. A new entry enters the small window region of
+ * its segment. Entries leaving the window compete with the least recently used entry of the probation region for a
+ * place in the main region, and the one the sketch has seen less often is evicted, so that a burst of keys seen once
+ * does not flush the popular keys out of the cache. Entries read while in probation are promoted to the protected
+ * region. Every step is a constant number of list operations.
+ * <p/>
+ * Reads record the access only if the lock of the segment is free. Dropping an access under contention merely makes
+ * the policy less accurate, and keeps hot keys from serializing readers on the lock.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class TinyLfuCache<K, V> {
+    private static final int WINDOW_PERCENTAGE = 1;
+    private static final int PROTECTED_PERCENTAGE = 80;
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private final long expiryTime;
+    private final String evictionMetric;
+
+    /**
+     * @param name        name the metrics of the cache are published under
+     * @param maximumSize maximum number of entries
+     * @param expiryTime  time in milliseconds entries live after they are written
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(String name, int maximumSize, long expiryTime) {
+        if (maximumSize <= 0 || expiryTime <= 0) {
+            throw new IllegalArgumentException("Invalid configuration of cache " + name + ". maximum size: "
+                    + maximumSize + ", expiry time: " + expiryTime);
+        }
+        int segmentCount = Math.min(Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors()),
+                Integer.highestOneBit(Math.max(1, maximumSize / MIN_SEGMENT_SIZE)));
+        int segmentSize = (maximumSize + segmentCount - 1) / segmentCount;
+        this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentSize);
+        }
+        this.segmentMask = segmentCount - 1;
+        this.expiryTime = expiryTime;
+        this.evictionMetric = name + ".evictions";
+    }
+
+    /**
+     * Returns the value of the key, or null when the key is not cached or has expired.
+     */
+    public V get(K key, long currentTime) {
+        Node<K, V> node = data.get(key);
+        Segment<K, V> segment = segmentOf(key);
+        if (node == null) {
+            if (segment.lock.tryLock()) {
+                try {
+                    segment.sketch.increment(key);
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            return null;
+        }
+        if (currentTime >= node.expiryTime) {
+            if (segment.lock.tryLock()) {
+                try {
+                    remove(segment, node);
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            return null;
+        }
+        if (segment.lock.tryLock()) {
+            try {
+                segment.onAccess(node);
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    public void put(K key, V value, long currentTime) {
+        compute(key, previous -> value, currentTime);
+    }
+
+    /**
+     * Atomically replaces the value of the key with the result of the given function, which is passed the current
+     * value, or null if there is none. The entry lives for the expiry time from now on.
+     */
+    public V compute(K key, UnaryOperator<V> function, long currentTime) {
+        Segment<K, V> segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null && currentTime >= node.expiryTime) {
+                remove(segment, node);
+                node = null;
+            }
+            V value = function.apply(node == null ? null : node.value);
+            if (node != null) {
+                node.value = value;
+                node.expiryTime = currentTime + expiryTime;
+                segment.onAccess(node);
+                return value;
+            }
+            node = new Node<>(key, value, currentTime + expiryTime);
+            data.put(key, node);
+            segment.sketch.increment(key);
+            Node<K, V> candidate = segment.add(node);
+            int evictionCount = 0;
+            while (segment.isOverflowing()) {
+                Node<K, V> victim = segment.selectVictim(candidate);
+                if (victim == candidate) {
+                    candidate = candidate.next;
+                }
+                remove(segment, victim);
+                evictionCount++;
+            }
+            if (evictionCount > 0) {
+                GatewayMetrics.counter(evictionMetric).add(evictionCount);
+            }
+            return value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segmentOf(key);
+        segment.lock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                remove(segment, node);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    private void remove(Segment<K, V> segment, Node<K, V> node) {
+        segment.unlink(node);
+        data.remove(node.key, node);
+    }
+
+    private Segment<K, V> segmentOf(K key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    /**
+     * Eviction policy of the keys hashing to one segment. All fields are guarded by the lock.
+     */
+    private static class Segment<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final FrequencySketch sketch;
+        private final AccessOrder<K, V> window = new AccessOrder<>();
+        private final AccessOrder<K, V> probation = new AccessOrder<>();
+        private final AccessOrder<K, V> protectedOrder = new AccessOrder<>();
+        private final int maximumSize;
+        private final int windowMaximum;
+        private final int protectedMaximum;
+
+        private Segment(int maximumSize) {
+            this.sketch = new FrequencySketch(maximumSize);
+            this.maximumSize = maximumSize;
+            this.windowMaximum = Math.max(1, maximumSize * WINDOW_PERCENTAGE / 100);
+            this.protectedMaximum = (maximumSize - windowMaximum) * PROTECTED_PERCENTAGE / 100;
+        }
+
+        /**
+         * Adds a new entry to the window, moving the entries overflowing the window to the end of probation.
+         *
+         * @return the first entry moved to probation, or null if the window did not overflow
+         */
+        private Node<K, V> add(Node<K, V> node) {
+            window.addLast(node);
+            Node<K, V> candidate = null;
+            while (window.size > windowMaximum) {
+                Node<K, V> moved = window.removeFirst();
+                probation.addLast(moved);
+                if (candidate == null) {
+                    candidate = moved;
+                }
+            }
+            return candidate;
+        }
+
+        private void onAccess(Node<K, V> node) {
+            sketch.increment(node.key);
+            if (node.order == null) {
+                // Evicted after the reader looked it up.
+                return;
+            }
+            if (node.order == probation) {
+                probation.remove(node);
+                protectedOrder.addLast(node);
+                while (protectedOrder.size > protectedMaximum) {
+                    probation.addLast(protectedOrder.removeFirst());
+                }
+            } else {
+                node.order.moveToLast(node);
+            }
+        }
+
+        private boolean isOverflowing() {
+            return window.size + probation.size + protectedOrder.size > maximumSize;
+        }
+
+        /**
+         * Picks the entry to evict out of the least recently used entry of probation and the given candidate, which
+         * is one of the entries at the end of probation that just left the window.
+         */
+        private Node<K, V> selectVictim(Node<K, V> candidate) {
+            Node<K, V> victim = probation.first;
+            if (victim == null) {
+                return protectedOrder.first != null ? protectedOrder.first : window.first;
+            }
+            if (candidate == null || candidate == victim) {
+                return victim;
+            }
+            return sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+        }
+
+        private void unlink(Node<K, V> node) {
+            if (node.order != null) {
+                node.order.remove(node);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of entries from the least to the most recently used.
+     */
+    private static class AccessOrder<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+        private int size;
+
+        private void addLast(Node<K, V> node) {
+            node.order = this;
+            node.previous = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+            size++;
+        }
+
+        private Node<K, V> removeFirst() {
+            Node<K, V> node = first;
+            remove(node);
+            return node;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.previous == null) {
+                first = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            node.order = null;
+            size--;
+        }
+
+        private void moveToLast(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Cache entry. The value and the expiry time are read without the lock; the links are guarded by the lock of
+     * the segment.
+     */
+    private static class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile long expiryTime;
+        private AccessOrder<K, V> order;
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        private Node(K key, V value, long expiryTime) {
+            this.key = key;
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the counters and gauges published by the native gateway components.
+ * <p/>
+ * All values are exposed through the {@code org.wso2.micro.gateway:type=GatewayMetrics} MXBean.
+ */
+public final class GatewayMetrics {
+    private static final Logger log = LoggerFactory.getLogger(GatewayMetrics.class);
+    private static final String OBJECT_NAME = "org.wso2.micro.gateway:type=GatewayMetrics";
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsView(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            log.warn("Unable to register the gateway metrics MBean", e);
+        }
+    }
+
+    private GatewayMetrics() {
+    }
+
+    /**
+     * Returns the counter registered against the given name, creating it if required.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge whose value is read from the given supplier whenever the metrics are queried.
+     */
+    public static void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Returns the current value of every counter and gauge, ordered by name.
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    /**
+     * Management interface of the gateway metrics.
+     */
+    public interface GatewayMetricsMXBean {
+        Map<String, Long> getMetrics();
+    }
+
+    private static class MetricsView implements GatewayMetricsMXBean {
+        @Override
+        public Map<String, Long> getMetrics() {
+            return snapshot();
+        }
+    }
+}
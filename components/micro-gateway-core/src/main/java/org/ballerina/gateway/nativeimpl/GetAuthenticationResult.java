@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.nativeimpl;
+
+import org.ballerina.gateway.auth.AuthenticationCache;
+import org.ballerinalang.bre.Context;
+import org.ballerinalang.bre.bvm.BlockingNativeCallableUnit;
+import org.ballerinalang.model.types.TypeKind;
+import org.ballerinalang.natives.annotations.Argument;
+import org.ballerinalang.natives.annotations.BallerinaFunction;
+import org.ballerinalang.natives.annotations.ReturnType;
+
+/**
+ * Native function which looks up the authentication result of an access token for a resource.
+ */
+@BallerinaFunction(orgName = "wso2", packageName = "gateway", functionName = "getAuthenticationResult",
+        args = { @Argument(name = "accessToken", type = TypeKind.STRING),
+                @Argument(name = "resourceKey", type = TypeKind.STRING) },
+        returnType = { @ReturnType(type = TypeKind.ANY) })
+public class GetAuthenticationResult extends BlockingNativeCallableUnit {
+
+    @Override
+    public void execute(Context context) {
+        context.setReturnValues(AuthenticationCache.getInstance().get(context.getStringArgument(0),
+                context.getStringArgument(1), System.currentTimeMillis()));
+    }
+}
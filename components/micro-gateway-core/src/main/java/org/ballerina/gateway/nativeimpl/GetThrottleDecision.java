@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.nativeimpl;
+
+import org.ballerina.gateway.throttle.ThrottleDecisionTable;
+import org.ballerinalang.bre.Context;
+import org.ballerinalang.bre.bvm.BlockingNativeCallableUnit;
+import org.ballerinalang.model.types.TypeKind;
+import org.ballerinalang.model.values.BInteger;
+import org.ballerinalang.natives.annotations.Argument;
+import org.ballerinalang.natives.annotations.BallerinaFunction;
+import org.ballerinalang.natives.annotations.ReturnType;
+
+/**
+ * Native function which returns the throttle decision of a key at the given time.
+ */
+@BallerinaFunction(orgName = "wso2", packageName = "gateway", functionName = "getThrottleDecision",
+        args = { @Argument(name = "key", type = TypeKind.STRING),
+                @Argument(name = "currentTime", type = TypeKind.INT) },
+        returnType = { @ReturnType(type = TypeKind.INT) })
+public class GetThrottleDecision extends BlockingNativeCallableUnit {
+    // Decisions are returned as shared values so that a lookup does not allocate.
+    private static final BInteger[] DECISIONS = { new BInteger(ThrottleDecisionTable.NOT_THROTTLED),
+            new BInteger(ThrottleDecisionTable.THROTTLED),
+            new BInteger(ThrottleDecisionTable.THROTTLED_STOP_ON_QUOTA) };
+
+    @Override
+    public void execute(Context context) {
+        context.setReturnValues(getDecision(context.getStringArgument(0), context.getIntArgument(0)));
+    }
+
+    static BInteger getDecision(String throttleKey, long currentTime) {
+        return DECISIONS[ThrottleDecisionTable.getInstance().get(throttleKey, currentTime)];
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.nativeimpl;
+
+import org.ballerina.gateway.throttle.BlockingConditions;
+import org.ballerinalang.bre.Context;
+import org.ballerinalang.bre.bvm.BlockingNativeCallableUnit;
+import org.ballerinalang.model.types.TypeKind;
+import org.ballerinalang.natives.annotations.Argument;
+import org.ballerinalang.natives.annotations.BallerinaFunction;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Native function which loads the blocking conditions from a file and reloads them whenever the file changes. The
+ * trusted proxies are given as comma separated addresses or prefixes.
+ */
+@BallerinaFunction(orgName = "wso2", packageName = "gateway", functionName = "initBlockingConditions",
+        args = { @Argument(name = "file", type = TypeKind.STRING),
+                @Argument(name = "reloadInterval", type = TypeKind.INT),
+                @Argument(name = "trustedProxies", type = TypeKind.STRING) })
+public class InitBlockingConditions extends BlockingNativeCallableUnit {
+    private static final String BALLERINA_HOME = "ballerina.home";
+
+    @Override
+    public void execute(Context context) {
+        String file = context.getStringArgument(0);
+        long reloadInterval = context.getIntArgument(0);
+        List<String> trustedProxies = new ArrayList<>();
+        for (String trustedProxy : context.getStringArgument(1).split(",")) {
+            if (!trustedProxy.trim().isEmpty()) {
+                trustedProxies.add(trustedProxy.trim());
+            }
+        }
+        if (System.getProperty(BALLERINA_HOME) != null) {
+            file = file.replace("${" + BALLERINA_HOME + "}", System.getProperty(BALLERINA_HOME));
+        }
+        BlockingConditions.getInstance().init(Paths.get(file), reloadInterval, trustedProxies);
+        context.setReturnValues();
+    }
+}
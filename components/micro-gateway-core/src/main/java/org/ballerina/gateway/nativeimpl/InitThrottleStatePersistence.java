@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.nativeimpl;
+
+import org.ballerina.gateway.throttle.ThrottleStateCheckpointer;
+import org.ballerinalang.bre.Context;
+import org.ballerinalang.bre.bvm.BlockingNativeCallableUnit;
+import org.ballerinalang.model.types.TypeKind;
+import org.ballerinalang.natives.annotations.Argument;
+import org.ballerinalang.natives.annotations.BallerinaFunction;
+
+import java.nio.file.Paths;
+
+/**
+ * Native function which restores the checkpointed throttle state and starts checkpointing it periodically.
+ */
+@BallerinaFunction(orgName = "wso2", packageName = "gateway", functionName = "initThrottleStatePersistence",
+        args = { @Argument(name = "directory", type = TypeKind.STRING),
+                @Argument(name = "interval", type = TypeKind.INT) })
+public class InitThrottleStatePersistence extends BlockingNativeCallableUnit {
+    private static final String BALLERINA_HOME = "ballerina.home";
+
+    @Override
+    public void execute(Context context) {
+        String directory = context.getStringArgument(0);
+        long interval = context.getIntArgument(0);
+        if (System.getProperty(BALLERINA_HOME) != null) {
+            directory = directory.replace("${" + BALLERINA_HOME + "}", System.getProperty(BALLERINA_HOME));
+        }
+        ThrottleStateCheckpointer.getInstance().init(Paths.get(directory), interval);
+        context.setReturnValues();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.nativeimpl;
+
+import org.ballerina.gateway.auth.KeyValidationCoalescer;
+import org.ballerinalang.bre.Context;
+import org.ballerinalang.bre.bvm.CallableUnitCallback;
+import org.ballerinalang.model.NativeCallableUnit;
+import org.ballerinalang.model.types.TypeKind;
+import org.ballerinalang.model.values.BValue;
+import org.ballerinalang.natives.annotations.Argument;
+import org.ballerinalang.natives.annotations.BallerinaFunction;
+import org.ballerinalang.natives.annotations.ReturnType;
+
+/**
+ * Native function which joins the key validation in flight for a cache key. The function does not block: callers
+ * waiting for the validation are resumed when it completes or when the timeout expires.
+ */
+@BallerinaFunction(orgName = "wso2", packageName = "gateway", functionName = "joinKeyValidation",
+        args = { @Argument(name = "cacheKey", type = TypeKind.STRING),
+                @Argument(name = "timeout", type = TypeKind.INT) },
+        returnType = { @ReturnType(type = TypeKind.JSON) })
+public class JoinKeyValidation implements NativeCallableUnit {
+
+    @Override
+    public void execute(Context context, CallableUnitCallback callback) {
+        boolean started = KeyValidationCoalescer.getInstance().join(context.getStringArgument(0),
+                context.getIntArgument(0), response -> {
+                    context.setReturnValues(response);
+                    callback.notifySuccess();
+                });
+        if (started) {
+            context.setReturnValues((BValue) null);
+            callback.notifySuccess();
+        }
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return false;
+    }
+}
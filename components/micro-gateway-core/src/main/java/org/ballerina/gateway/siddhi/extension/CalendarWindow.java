@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tumbling window aligned to calendar boundaries in UTC.
+ * <p/>
+ * Minute, hour and day windows start at multiples of their length since the epoch, weekly windows start on Mondays and
+ * monthly and yearly windows start on the first day of the month. The start time shifts every boundary by the given
+ * number of milliseconds, e.g. to align daily quotas to a time zone other than UTC.
+ */
+public class CalendarWindow {
+    private static final LocalDate EPOCH = LocalDate.of(1970, 1, 1);
+    // 1970-01-01 was a Thursday, hence weekly windows are shifted to start on the following Monday.
+    private static final long WEEK_ALIGNMENT = TimeUnit.DAYS.toMillis(4);
+
+    private final String timeUnit;
+    private final int unitTime;
+    private final long startTime;
+    private final long windowLength;
+    private final int windowMonths;
+
+    /**
+     * @param unitTime  number of time units in one window
+     * @param timeUnit  one of min, hour, day, week, month or year
+     * @param startTime offset in milliseconds applied to the window boundaries
+     */
+    public CalendarWindow(int unitTime, String timeUnit, long startTime) {
+        if (unitTime <= 0) {
+            throw new IllegalArgumentException("Unit time of a calendar window should be positive, but found "
+                    + unitTime);
+        }
+        this.timeUnit = timeUnit.toLowerCase();
+        this.unitTime = unitTime;
+        switch (this.timeUnit) {
+            case "min":
+            case "minute":
+                this.windowLength = TimeUnit.MINUTES.toMillis(unitTime);
+                this.windowMonths = 0;
+                this.startTime = startTime;
+                break;
+            case "hour":
+                this.windowLength = TimeUnit.HOURS.toMillis(unitTime);
+                this.windowMonths = 0;
+                this.startTime = startTime;
+                break;
+            case "day":
+                this.windowLength = TimeUnit.DAYS.toMillis(unitTime);
+                this.windowMonths = 0;
+                this.startTime = startTime;
+                break;
+            case "week":
+                this.windowLength = 7 * TimeUnit.DAYS.toMillis(unitTime);
+                this.windowMonths = 0;
+                this.startTime = startTime + WEEK_ALIGNMENT;
+                break;
+            case "month":
+                this.windowLength = 0;
+                this.windowMonths = unitTime;
+                this.startTime = startTime;
+                break;
+            case "year":
+                this.windowLength = 0;
+                this.windowMonths = 12 * unitTime;
+                this.startTime = startTime;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported time unit " + timeUnit + " for a calendar window");
+        }
+    }
+
+    /**
+     * Returns the time at which the window containing the given time ends.
+     */
+    public long getWindowEnd(long currentTime) {
+        long shiftedTime = currentTime - startTime;
+        if (windowMonths == 0) {
+            return currentTime - Math.floorMod(shiftedTime, windowLength) + windowLength;
+        }
+        LocalDate date = Instant.ofEpochMilli(shiftedTime).atZone(ZoneOffset.UTC).toLocalDate();
+        long monthsSinceEpoch = (date.getYear() - EPOCH.getYear()) * 12L + date.getMonthValue() - 1;
+        long windowStart = Math.floorDiv(monthsSinceEpoch, windowMonths) * windowMonths;
+        return EPOCH.plusMonths(windowStart + windowMonths).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()
+                + startTime;
+    }
+
+    /**
+     * Returns the length of the window in milliseconds, counting months as 30 days and years as 365 days.
+     */
+    public long getNominalLength() {
+        if (windowMonths == 0) {
+            return windowLength;
+        }
+        return windowMonths % 12 == 0 ? (windowMonths / 12) * TimeUnit.DAYS.toMillis(365)
+                : windowMonths * TimeUnit.DAYS.toMillis(30);
+    }
+
+    public String getTimeUnit() {
+        return timeUnit;
+    }
+
+    public int getUnitTime() {
+        return unitTime;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Windowed count-min sketch which estimates the counts of throttle keys in a fixed amount of memory.
+ * <p/>
+ * Every key is hashed to one counter in each of the rows of the sketch, and its estimated count is the minimum of
+ * those counters. Estimates never fall below the real count, so every key over the limit is throttled, and they only
+ * exceed it by the counts of keys colliding in all rows, which stay small next to the heavy hitters a limit is meant
+ * for. Counters are raised with conservative update, i.e. only up to the new estimate, which keeps the overestimate
+ * of light keys low. The counters are cleared when the calendar window rolls over, and the memory of the sketch does
+ * not depend on the number of distinct keys.
+ */
+public class CountMinSketch {
+    private static final int DEPTH = 4;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final CalendarWindow window;
+    private final int width;
+    private volatile WindowCounters counters;
+
+    /**
+     * @param window calendar window the counts apply to
+     * @param width  number of counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(CalendarWindow window, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Width of a count-min sketch should be positive, but found " + width);
+        }
+        int rowLength = 1;
+        while (rowLength < width) {
+            rowLength <<= 1;
+        }
+        this.window = window;
+        this.width = rowLength;
+        this.counters = new WindowCounters(-1, 0);
+    }
+
+    /**
+     * Adds the given amount to the count of the key.
+     *
+     * @param throttleKey throttle key
+     * @param amount      amount to be added
+     * @param currentTime current time in milliseconds
+     * @return the estimated count of the key in the current window, including the amount
+     */
+    public long add(String throttleKey, long amount, long currentTime) {
+        WindowCounters current = counters;
+        if (currentTime >= current.windowEnd) {
+            current = rollOver(currentTime);
+        }
+        long hash = hash(throttleKey);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32) | 1;
+        int mask = width - 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, current.counts.get(row * width + ((hash1 + row * hash2) & mask)));
+        }
+        long updated = estimate + amount;
+        for (int row = 0; row < DEPTH; row++) {
+            current.counts.accumulateAndGet(row * width + ((hash1 + row * hash2) & mask), updated, Math::max);
+        }
+        return updated;
+    }
+
+    /**
+     * Returns the time at which the current window of the sketch ends.
+     */
+    public long getWindowEnd() {
+        return counters.windowEnd;
+    }
+
+    private synchronized WindowCounters rollOver(long currentTime) {
+        WindowCounters current = counters;
+        if (currentTime >= current.windowEnd) {
+            current = new WindowCounters(window.getWindowEnd(currentTime), DEPTH * width);
+            counters = current;
+        }
+        return current;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key, so that the rows are indexed independently of {@link String#hashCode()}, which
+     * is easily made to collide.
+     */
+    private static long hash(String key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Counters of one window. A new instance replaces the counters on roll over, so that a request of the previous
+     * window never clears the counts of the next one.
+     */
+    private static class WindowCounters {
+        private final long windowEnd;
+        private final AtomicLongArray counts;
+
+        private WindowCounters(long windowEnd, int size) {
+            this.windowEnd = windowEnd;
+            this.counts = new AtomicLongArray(size);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.ballerina.gateway.siddhi.extension;
 
+import org.ballerina.gateway.metrics.GatewayMetrics;
 import org.ballerinalang.siddhi.annotation.Example;
 import org.ballerinalang.siddhi.annotation.Extension;
 import org.ballerinalang.siddhi.annotation.Parameter;
@@ -27,6 +28,7 @@ import org.ballerinalang.siddhi.core.event.ComplexEventChunk;
 import org.ballerinalang.siddhi.core.event.stream.StreamEvent;
 import org.ballerinalang.siddhi.core.event.stream.StreamEventCloner;
 import org.ballerinalang.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import org.ballerinalang.siddhi.core.executor.ConstantExpressionExecutor;
 import org.ballerinalang.siddhi.core.executor.ExpressionExecutor;
 import org.ballerinalang.siddhi.core.executor.VariableExpressionExecutor;
 import org.ballerinalang.siddhi.core.query.processor.Processor;
@@ -37,7 +39,6 @@ import org.ballerinalang.siddhi.query.api.definition.Attribute;
 import org.ballerinalang.siddhi.query.api.exception.SiddhiAppValidationException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -53,12 +54,18 @@ import java.util.Map;
  * This is useful when the throttler needs to alert only when the throttling decision is changed, in contrast to
  * alerting about every decision taken.
  * <p/>
+ * The last decision of each key is kept in a {@link ThrottleStateStore}, which is bounded by maxKeys and evicts keys
+ * which have not been seen for idleTime. The size and the eviction count of the store are published to
+ * {@link GatewayMetrics}.
+ * <p/>
  * Usage:
- * throttler:emitOnStateChange(key, isThrottled)
+ * throttler:emitOnStateChange(key, isThrottled [, maxKeys [, idleTime]])
  * <p/>
  * Parameters:
  * key: The key coming in the request, based on which throttling decision was made.
  * isThrottled: The throttling decision made.
+ * maxKeys: The maximum number of keys the state is kept for. Defaults to 100000.
+ * idleTime: The time in milliseconds after which the state of an unseen key is evicted. Defaults to 30 minutes.
  * <p/>
  * Example on usage:
  * from DecisionStream#throttler:emitOnStateChange(key, isThrottled)
@@ -71,7 +78,12 @@ import java.util.Map;
         @Parameter(name = "throttle.key", description = "The priority/type of this log message.", type = {
                 DataType.STRING }),
         @Parameter(name = "is.throttled", description = "This submit the log message.", type = {
-                DataType.STRING }) }, examples = {
+                DataType.STRING }),
+        @Parameter(name = "max.keys", description = "The maximum number of keys the throttle state is kept for.",
+                type = { DataType.INT, DataType.LONG }, optional = true, defaultValue = "100000"),
+        @Parameter(name = "idle.time", description = "The time after which the throttle state of a key which has not "
+                + "been seen is evicted.", type = { DataType.INT, DataType.LONG, DataType.TIME }, optional = true,
+                defaultValue = "30 min") }, examples = {
         @Example(syntax = "from fooStream#log(\"INFO\", \"Sample Event :\", true)\nselect *\ninsert into barStream;",
                 description = "This will log as INFO with the message \"Sample Event :\" + fooStream:events."),
         @Example(syntax = "from fooStream#log(\"Sample Event :\", true)\nselect *\ninsert into barStream;",
@@ -83,38 +95,43 @@ import java.util.Map;
         @Example(syntax = "from fooStream#log(\"Sample Event :\")\nselect *\ninsert into barStream;",
                 description = "This will log message and fooStream:events.") })
 public class EmitOnStateChange extends StreamProcessor {
+    private static final int DEFAULT_MAX_KEYS = 100000;
+    private static final long DEFAULT_IDLE_TIME = 30 * 60 * 1000L;
     private VariableExpressionExecutor keyExpressionExecutor;
     private VariableExpressionExecutor isThrottledExpressionExecutor;
-    private Map<String, Object> throttleStateMap = new HashMap<String, Object>();
+    private ThrottleStateStore throttleStateStore;
+    private SiddhiAppContext siddhiAppContext;
+    private String metricPrefix;
 
     public void start() {
-        //Nothing to do.
+        metricPrefix = "throttle.stateStore." + siddhiAppContext.getName() + "." + queryName;
+        GatewayMetrics.registerGauge(metricPrefix + ".size", throttleStateStore::size);
+        GatewayMetrics.registerGauge(metricPrefix + ".evictions", throttleStateStore::getEvictionCount);
     }
 
     public void stop() {
-        //Nothing to do.
+        GatewayMetrics.unregisterGauge(metricPrefix + ".size");
+        GatewayMetrics.unregisterGauge(metricPrefix + ".evictions");
     }
 
     public Map<String, Object> currentState() {
-        return throttleStateMap;
+        return throttleStateStore.toMap();
     }
 
     public void restoreState(Map<String, Object> map) {
-        throttleStateMap = map;
+        throttleStateStore.restore(map, siddhiAppContext.getTimestampGenerator().currentTime());
     }
 
     @Override
     protected void process(ComplexEventChunk<StreamEvent> streamEventChunk, Processor processor,
             StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
         while (streamEventChunk.hasNext()) {
             StreamEvent event = streamEventChunk.next();
-            Boolean currentThrottleState = (Boolean) isThrottledExpressionExecutor.execute(event);
+            boolean currentThrottleState = (Boolean) isThrottledExpressionExecutor.execute(event);
             String key = (String) keyExpressionExecutor.execute(event);
-            Boolean lastThrottleState = (Boolean) throttleStateMap.get(key);
-            if (currentThrottleState.equals(lastThrottleState) && !currentThrottleState) {
+            if (!throttleStateStore.update(key, currentThrottleState, currentTime)) {
                 streamEventChunk.remove();
-            } else {
-                throttleStateMap.put(key, currentThrottleState);
             }
         }
         nextProcessor.process(streamEventChunk);
@@ -123,9 +140,10 @@ public class EmitOnStateChange extends StreamProcessor {
     @Override
     protected List<Attribute> init(AbstractDefinition abstractDefinition, ExpressionExecutor[] expressionExecutors,
             ConfigReader configReader, SiddhiAppContext siddhiAppContext) {
-        if (attributeExpressionExecutors.length != 2) {
+        if (attributeExpressionExecutors.length < 2 || attributeExpressionExecutors.length > 4) {
             throw new SiddhiAppValidationException("Invalid no of arguments passed to throttler:emitOnStateChange"
-                    + "(key,isThrottled), required 2, but found " + attributeExpressionExecutors.length);
+                    + "(key,isThrottled[,maxKeys[,idleTime]]), required 2 to 4, but found "
+                    + attributeExpressionExecutors.length);
         }
         if (attributeExpressionExecutors[0].getReturnType() != Attribute.Type.STRING) {
             throw new SiddhiAppValidationException("Invalid parameter type found for the argument of "
@@ -137,8 +155,33 @@ public class EmitOnStateChange extends StreamProcessor {
                     + "throttler:emitOnStateChange(key,isThrottled), " + "required " + Attribute.Type.BOOL
                     + ", but found " + attributeExpressionExecutors[1].getReturnType());
         }
+        long maxKeys = DEFAULT_MAX_KEYS;
+        long idleTime = DEFAULT_IDLE_TIME;
+        if (attributeExpressionExecutors.length > 2) {
+            maxKeys = getConstantLongValue(attributeExpressionExecutors[2], "maxKeys");
+        }
+        if (attributeExpressionExecutors.length > 3) {
+            idleTime = getConstantLongValue(attributeExpressionExecutors[3], "idleTime");
+        }
         keyExpressionExecutor = (VariableExpressionExecutor) attributeExpressionExecutors[0];
         isThrottledExpressionExecutor = (VariableExpressionExecutor) attributeExpressionExecutors[1];
+        throttleStateStore = new ThrottleStateStore((int) Math.min(maxKeys, Integer.MAX_VALUE), idleTime);
+        this.siddhiAppContext = siddhiAppContext;
         return new ArrayList<Attribute>();
     }
+
+    private long getConstantLongValue(ExpressionExecutor executor, String parameterName) {
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("throttler:emitOnStateChange parameter " + parameterName
+                    + " needs to be a constant attribute");
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            return (Integer) ((ConstantExpressionExecutor) executor).getValue();
+        } else if (executor.getReturnType() == Attribute.Type.LONG) {
+            return (Long) ((ConstantExpressionExecutor) executor).getValue();
+        }
+        throw new SiddhiAppValidationException("Invalid parameter type found for the argument " + parameterName
+                + " of throttler:emitOnStateChange, required " + Attribute.Type.INT + " or " + Attribute.Type.LONG
+                + ", but found " + executor.getReturnType());
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table which maps throttle keys to primitive long counters.
+ * <p/>
+ * Keys and counts are kept in two parallel arrays so that a counter costs one array slot instead of a boxed value
+ * and a map entry. The table is not thread safe; callers guard it with their own lock.
+ */
+public class KeyCounterTable {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private long[] counts;
+    private int size;
+    private int resizeThreshold;
+
+    public KeyCounterTable() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Adds the given delta to the counter of the key, creating the counter if required.
+     *
+     * @param key   throttle key
+     * @param delta value to be added
+     * @return the updated counter value
+     */
+    public long add(String key, long delta) {
+        int index = indexOf(key);
+        if (keys[index] == null) {
+            if (size + 1 > resizeThreshold) {
+                allocate(keys.length << 1);
+                index = indexOf(key);
+            }
+            keys[index] = key;
+            size++;
+        }
+        counts[index] += delta;
+        return counts[index];
+    }
+
+    public long increment(String key) {
+        return add(key, 1);
+    }
+
+    /**
+     * Returns the counter value of the given key, or zero when the key is not present.
+     */
+    public long get(String key) {
+        int index = indexOf(key);
+        return keys[index] == null ? 0 : counts[index];
+    }
+
+    public void put(String key, long count) {
+        int index = indexOf(key);
+        if (keys[index] == null) {
+            add(key, count);
+        } else {
+            counts[index] = count;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all counters. Tables which grew for a burst of keys are shrunk back to the default capacity.
+     */
+    public void clear() {
+        if (keys.length > DEFAULT_CAPACITY && size < (resizeThreshold >> 2)) {
+            keys = new String[DEFAULT_CAPACITY];
+            counts = new long[DEFAULT_CAPACITY];
+            resizeThreshold = (int) (DEFAULT_CAPACITY * LOAD_FACTOR);
+        } else {
+            Arrays.fill(keys, null);
+            Arrays.fill(counts, 0);
+        }
+        size = 0;
+    }
+
+    /**
+     * Visits every key and its counter value.
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                visitor.visit(keys[i], counts[i]);
+            }
+        }
+    }
+
+    private int indexOf(String key) {
+        int mask = keys.length - 1;
+        int hash = key.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        while (keys[index] != null && !keys[index].equals(key)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        String[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new String[capacity];
+        counts = new long[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        if (oldKeys != null) {
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    int index = indexOf(oldKeys[i]);
+                    keys[index] = oldKeys[i];
+                    counts[index] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Callback used to iterate over the counters of the table.
+     */
+    public interface Visitor {
+        void visit(String key, long count);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerina.gateway.throttle.ThrottleEventDispatcher;
+import org.ballerinalang.siddhi.annotation.Example;
+import org.ballerinalang.siddhi.annotation.Extension;
+import org.ballerinalang.siddhi.annotation.Parameter;
+import org.ballerinalang.siddhi.annotation.util.DataType;
+import org.ballerinalang.siddhi.core.config.SiddhiAppContext;
+import org.ballerinalang.siddhi.core.event.ComplexEvent;
+import org.ballerinalang.siddhi.core.event.ComplexEventChunk;
+import org.ballerinalang.siddhi.core.event.stream.StreamEvent;
+import org.ballerinalang.siddhi.core.event.stream.StreamEventCloner;
+import org.ballerinalang.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import org.ballerinalang.siddhi.core.executor.ExpressionExecutor;
+import org.ballerinalang.siddhi.core.query.processor.Processor;
+import org.ballerinalang.siddhi.core.query.processor.stream.StreamProcessor;
+import org.ballerinalang.siddhi.core.util.config.ConfigReader;
+import org.ballerinalang.siddhi.query.api.definition.AbstractDefinition;
+import org.ballerinalang.siddhi.query.api.definition.Attribute;
+import org.ballerinalang.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Continues the processing of a query on the workers of the {@link ThrottleEventDispatcher}.
+ * <p/>
+ * Everything after this processor, i.e. the throttle policies and the publishing of their decisions, runs on a
+ * worker thread, so that the thread which published the event returns as soon as the event is queued. Events are
+ * partitioned by the given string key; the events of a key are processed in order by the same worker.
+ * <p/>
+ * Usage:
+ * throttler:async(partitionKey)
+ * <p/>
+ * Example on usage:
+ * from requestStream#throttler:async(subscriptionKey)#throttler:evaluate("0,Gold,5000,1,min,true", appTier, appKey)
+ * select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp
+ * insert into resultStream;
+ */
+@Extension(name = "async", namespace = "throttler", description = "Hands the events off to the throttle event "
+        + "dispatcher, which processes the rest of the query on its worker threads.", parameters = {
+        @Parameter(name = "partition.key", description = "The attribute events are partitioned on. Events with the "
+                + "same key are processed in order.", type = { DataType.STRING }) }, examples = {
+        @Example(syntax = "from requestStream#throttler:async(subscriptionKey)"
+                + "#throttler:evaluate(\"0,Gold,5000,1,min,true\", appTier, appKey)\n"
+                + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp\n"
+                + "insert into resultStream;", description = "This will evaluate the policies of requests on the "
+                + "dispatcher workers, partitioned by subscription.") })
+public class ThrottleAsyncProcessor extends StreamProcessor {
+    private ExpressionExecutor partitionKeyExecutor;
+
+    @Override
+    protected List<Attribute> init(AbstractDefinition abstractDefinition, ExpressionExecutor[] expressionExecutors,
+            ConfigReader configReader, SiddhiAppContext siddhiAppContext) {
+        if (attributeExpressionExecutors.length != 1) {
+            throw new SiddhiAppValidationException("Throttle async processor should have one parameter "
+                    + "(<string> partitionKey), but found " + attributeExpressionExecutors.length
+                    + " input attributes");
+        }
+        Attribute.Type partitionKeyType = attributeExpressionExecutors[0].getReturnType();
+        if (partitionKeyType != Attribute.Type.STRING) {
+            throw new SiddhiAppValidationException("Throttle async processor's parameter should be a string, but "
+                    + "found " + partitionKeyType);
+        }
+        partitionKeyExecutor = attributeExpressionExecutors[0];
+        return new ArrayList<Attribute>();
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> complexEventChunk, Processor processor,
+            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        ThrottleEventDispatcher dispatcher = ThrottleEventDispatcher.getInstance();
+        while (complexEventChunk.hasNext()) {
+            StreamEvent streamEvent = complexEventChunk.next();
+            if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                continue;
+            }
+            // The event is copied as the publishing thread may reuse it once this method returns.
+            final StreamEvent queuedEvent = streamEventCloner.copyStreamEvent(streamEvent);
+            Runnable task = () -> {
+                ComplexEventChunk<StreamEvent> eventChunk = new ComplexEventChunk<StreamEvent>(true);
+                eventChunk.add(queuedEvent);
+                nextProcessor.process(eventChunk);
+            };
+            dispatcher.dispatch((String) partitionKeyExecutor.execute(streamEvent), task);
+        }
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public Map<String, Object> currentState() {
+        return new HashMap<String, Object>();
+    }
+
+    public void restoreState(Map<String, Object> map) {
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+/**
+ * Sizing of the lock-striped partitions the throttle extensions split their per key state into.
+ */
+final class ThrottlePartitions {
+    private static final int MAX_PARTITIONS = 64;
+
+    private ThrottlePartitions() {
+    }
+
+    /**
+     * Returns the number of partitions, a power of two of at least twice the number of processors, capped at
+     * {@value #MAX_PARTITIONS}.
+     */
+    static int getPartitionCount() {
+        int partitionCount = 1;
+        while (partitionCount < Runtime.getRuntime().availableProcessors() * 2 && partitionCount < MAX_PARTITIONS) {
+            partitionCount <<= 1;
+        }
+        return partitionCount;
+    }
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerina.gateway.throttle.ThrottleStateCheckpointer;
+import org.ballerina.gateway.throttle.ThrottleStateParticipant;
+import org.ballerina.gateway.throttle.ThrottleStateSnapshot;
+import org.ballerinalang.siddhi.annotation.Example;
+import org.ballerinalang.siddhi.annotation.Extension;
+import org.ballerinalang.siddhi.annotation.Parameter;
+import org.ballerinalang.siddhi.annotation.util.DataType;
+import org.ballerinalang.siddhi.core.config.SiddhiAppContext;
+import org.ballerinalang.siddhi.core.event.ComplexEvent;
+import org.ballerinalang.siddhi.core.event.ComplexEventChunk;
+import org.ballerinalang.siddhi.core.event.stream.StreamEvent;
+import org.ballerinalang.siddhi.core.event.stream.StreamEventCloner;
+import org.ballerinalang.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import org.ballerinalang.siddhi.core.executor.ConstantExpressionExecutor;
+import org.ballerinalang.siddhi.core.executor.ExpressionExecutor;
+import org.ballerinalang.siddhi.core.query.processor.Processor;
+import org.ballerinalang.siddhi.core.query.processor.stream.StreamProcessor;
+import org.ballerinalang.siddhi.core.util.config.ConfigReader;
+import org.ballerinalang.siddhi.query.api.definition.AbstractDefinition;
+import org.ballerinalang.siddhi.query.api.definition.Attribute;
+import org.ballerinalang.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Evaluates every deployed request count or bandwidth policy in a single pass over the request stream.
+ * <p/>
+ * The policies are given as a constant table, followed by one (tier, throttle key) attribute pair per policy level,
+ * e.g. the application and the subscription level. For each request the tier of every level is looked up in a hash
+ * map, the counter of the throttle key is incremented in the window of that policy, and one decision is emitted per
+ * level whose tier has a deployed policy. Requests are never retained; each policy keeps one counter per throttle key
+ * for its current calendar aligned window, and the counters are cleared lazily by the first request after the window
+ * elapses. Policies with the same window share its boundary, locks and rollover, while keeping counters of their own.
+ * <p/>
+ * Usage:
+ * throttler:evaluate(policies, [amount,] tier1, throttleKey1 [, tier2, throttleKey2 ...])
+ * <p/>
+ * Without an amount every event counts as one request. With an amount, e.g. the number of bytes of a request or a
+ * response, every event adds the amount to the counters instead, so that the limits of the policies are amounts of
+ * data per unit time. Only window policies can count amounts.
+ * <p/>
+ * The policies are separated by ';' and each policy is described as
+ * level,name,requestCount,unitTime,timeUnit,stopOnQuotaReach[,algorithm]
+ * where level is the zero based index of the attribute pair the policy applies to. The optional algorithm is either
+ * window, the default, or tokenBucket:burst to admit the request count evenly spread over the unit time with bursts of
+ * up to the given size, as throttler:tokenBucket does, or sketch:width to count the keys of the policy approximately
+ * in a {@link CountMinSketch} of the given width. Sketch policies keep a fixed amount of memory however many distinct
+ * keys arrive, e.g. the client addresses of the unauthenticated tier, and only emit decisions for throttled keys.
+ * <p/>
+ * Example on usage:
+ * from requestStream#throttler:evaluate("0,Gold,5000,1,min,true;1,Silver,2000,1,min,false",
+ * appTier, appKey, subscriptionTier, subscriptionKey)
+ * select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp
+ * insert into resultStream;
+ */
+@Extension(name = "evaluate", namespace = "throttler", description = "Evaluates all request count policies in a "
+        + "single pass and emits one throttle decision per policy level the event has a deployed tier for.",
+        parameters = {
+                @Parameter(name = "policies", description = "The policy table. Policies are separated by ';' and "
+                        + "described as level,name,requestCount,unitTime,timeUnit,stopOnQuotaReach[,algorithm], "
+                        + "where algorithm is either window, tokenBucket:burst or sketch:width.", type = {
+                        DataType.STRING }),
+                @Parameter(name = "amount", description = "The amount an event adds to the counters, e.g. its "
+                        + "size in bytes. When omitted every event counts as one request.", type = {
+                        DataType.INT, DataType.LONG }, optional = true, defaultValue = "1"),
+                @Parameter(name = "tier", description = "The tier of a policy level. Repeated once per level.",
+                        type = { DataType.STRING }),
+                @Parameter(name = "throttle.key", description = "The throttle key of a policy level. Repeated once "
+                        + "per level.", type = { DataType.STRING }) }, examples = {
+        @Example(syntax = "from requestStream#throttler:evaluate(\"0,Gold,5000,1,min,true;1,Silver,2000,1,min,false\""
+                + ", appTier, appKey, subscriptionTier, subscriptionKey)\n"
+                + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp\n"
+                + "insert into resultStream;", description = "This will count the requests of applications in the "
+                + "Gold tier per application key and the requests of subscriptions in the Silver tier per "
+                + "subscription key, each per minute.") })
+public class ThrottlePolicyEvaluator extends StreamProcessor {
+    private static final String THROTTLE_KEY = "throttleKey";
+    private static final String IS_THROTTLED = "isThrottled";
+    private static final String STOP_ON_QUOTA = "stopOnQuota";
+    private static final String EXPIRY_TIME_STAMP = "expiryTimeStamp";
+    private static final String POLICY_SEPARATOR = ";";
+    private static final String FIELD_SEPARATOR = ",";
+    private static final String WINDOW_ALGORITHM = "window";
+    private static final String TOKEN_BUCKET_ALGORITHM = "tokenBucket:";
+    private static final String SKETCH_ALGORITHM = "sketch:";
+    private ExpressionExecutor amountExecutor;
+    private ExpressionExecutor[] tierExecutors;
+    private ExpressionExecutor[] throttleKeyExecutors;
+    private List<Map<String, PolicyCounter>> policiesByLevel;
+    private List<PolicyCounter> policies;
+    private Map<String, WindowGroup> windowGroups;
+    private SiddhiAppContext siddhiAppContext;
+
+    @Override
+    protected List<Attribute> init(AbstractDefinition abstractDefinition, ExpressionExecutor[] expressionExecutors,
+            ConfigReader configReader, SiddhiAppContext siddhiAppContext) {
+        this.siddhiAppContext = siddhiAppContext;
+        if (attributeExpressionExecutors.length < 3) {
+            throw new SiddhiAppValidationException("Throttle policy evaluator should have a policy table and an "
+                    + "optional amount followed by one or more (<string> tier, <string> throttleKey) pairs, but found "
+                    + attributeExpressionExecutors.length + " input attributes");
+        }
+        if (!(attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor)
+                || attributeExpressionExecutors[0].getReturnType() != Attribute.Type.STRING) {
+            throw new SiddhiAppValidationException("Throttle policy evaluator's 1st parameter needs to be a constant "
+                    + "String policy table");
+        }
+        int firstLevel = 1;
+        if (attributeExpressionExecutors.length % 2 == 0) {
+            amountExecutor = attributeExpressionExecutors[1];
+            if (amountExecutor.getReturnType() != Attribute.Type.INT
+                    && amountExecutor.getReturnType() != Attribute.Type.LONG) {
+                throw new SiddhiAppValidationException("Throttle policy evaluator's 2nd parameter needs to be an int "
+                        + "or long amount when the number of parameters is even, but found "
+                        + amountExecutor.getReturnType());
+            }
+            firstLevel = 2;
+        }
+        int levelCount = (attributeExpressionExecutors.length - firstLevel) / 2;
+        tierExecutors = new ExpressionExecutor[levelCount];
+        throttleKeyExecutors = new ExpressionExecutor[levelCount];
+        policiesByLevel = new ArrayList<Map<String, PolicyCounter>>(levelCount);
+        for (int i = 0; i < levelCount; i++) {
+            tierExecutors[i] = attributeExpressionExecutors[firstLevel + 2 * i];
+            throttleKeyExecutors[i] = attributeExpressionExecutors[firstLevel + 2 * i + 1];
+            if (tierExecutors[i].getReturnType() != Attribute.Type.STRING
+                    || throttleKeyExecutors[i].getReturnType() != Attribute.Type.STRING) {
+                throw new SiddhiAppValidationException("Throttle policy evaluator's tier and throttle key parameters "
+                        + "need to be of String type");
+            }
+            policiesByLevel.add(new HashMap<String, PolicyCounter>());
+        }
+        policies = new ArrayList<PolicyCounter>();
+        windowGroups = new HashMap<String, WindowGroup>();
+        String policyTable = (String) ((ConstantExpressionExecutor) attributeExpressionExecutors[0]).getValue();
+        for (String policy : policyTable.split(POLICY_SEPARATOR)) {
+            if (!policy.trim().isEmpty()) {
+                addPolicy(policy.trim(), levelCount);
+            }
+        }
+        for (WindowGroup windowGroup : windowGroups.values()) {
+            windowGroup.allocate();
+        }
+
+        List<Attribute> attributeList = new ArrayList<Attribute>();
+        attributeList.add(new Attribute(THROTTLE_KEY, Attribute.Type.STRING));
+        attributeList.add(new Attribute(IS_THROTTLED, Attribute.Type.BOOL));
+        attributeList.add(new Attribute(STOP_ON_QUOTA, Attribute.Type.BOOL));
+        attributeList.add(new Attribute(EXPIRY_TIME_STAMP, Attribute.Type.LONG));
+        return attributeList;
+    }
+
+    private void addPolicy(String policy, int levelCount) {
+        String[] fields = policy.split(FIELD_SEPARATOR);
+        if (fields.length != 6 && fields.length != 7) {
+            throw new SiddhiAppValidationException("Invalid throttle policy '" + policy + "', expected "
+                    + "level,name,requestCount,unitTime,timeUnit,stopOnQuotaReach[,algorithm]");
+        }
+        try {
+            int level = Integer.parseInt(fields[0].trim());
+            if (level < 0 || level >= levelCount) {
+                throw new SiddhiAppValidationException("Invalid level " + level + " in throttle policy '" + policy
+                        + "', only " + levelCount + " tier and throttle key pairs are given");
+            }
+            String name = fields[1].trim();
+            long requestCount = Long.parseLong(fields[2].trim());
+            boolean stopOnQuotaReach = Boolean.parseBoolean(fields[5].trim());
+            CalendarWindow window = new CalendarWindow(Integer.parseInt(fields[3].trim()), fields[4].trim(), 0);
+            String algorithm = fields.length == 7 ? fields[6].trim() : WINDOW_ALGORITHM;
+            PolicyCounter policyCounter;
+            if (algorithm.startsWith(TOKEN_BUCKET_ALGORITHM)) {
+                if (amountExecutor != null) {
+                    throw new SiddhiAppValidationException("Token bucket policies count requests and cannot be "
+                            + "evaluated with an amount");
+                }
+                TokenBucket tokenBucket = new TokenBucket(window.getNominalLength(), requestCount,
+                        Long.parseLong(algorithm.substring(TOKEN_BUCKET_ALGORITHM.length())));
+                policyCounter = new PolicyCounter(level, name, requestCount, stopOnQuotaReach, window, tokenBucket);
+            } else if (algorithm.startsWith(SKETCH_ALGORITHM)) {
+                CountMinSketch sketch = new CountMinSketch(window,
+                        Integer.parseInt(algorithm.substring(SKETCH_ALGORITHM.length())));
+                policyCounter = new PolicyCounter(level, name, requestCount, stopOnQuotaReach, window, sketch);
+            } else if (WINDOW_ALGORITHM.equals(algorithm)) {
+                String windowId = window.getUnitTime() + window.getTimeUnit();
+                WindowGroup windowGroup = windowGroups.get(windowId);
+                if (windowGroup == null) {
+                    windowGroup = new WindowGroup(window);
+                    windowGroups.put(windowId, windowGroup);
+                }
+                policyCounter = new PolicyCounter(level, name, requestCount, stopOnQuotaReach, window, windowGroup);
+            } else {
+                throw new SiddhiAppValidationException("Unsupported algorithm " + algorithm + " in throttle policy '"
+                        + policy + "'");
+            }
+            if (policiesByLevel.get(level).put(name, policyCounter) != null) {
+                throw new SiddhiAppValidationException("Duplicate throttle policy " + name + " at level " + level);
+            }
+            policies.add(policyCounter);
+        } catch (IllegalArgumentException e) {
+            throw new SiddhiAppValidationException("Invalid throttle policy '" + policy + "': " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> complexEventChunk, Processor processor,
+            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+        ComplexEventChunk<StreamEvent> decisionChunk = new ComplexEventChunk<StreamEvent>(true);
+        while (complexEventChunk.hasNext()) {
+            StreamEvent streamEvent = complexEventChunk.next();
+            if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                continue;
+            }
+            long amount = 1;
+            if (amountExecutor != null) {
+                Object amountValue = amountExecutor.execute(streamEvent);
+                amount = amountValue == null ? 0 : ((Number) amountValue).longValue();
+            }
+            for (int level = 0; level < tierExecutors.length; level++) {
+                Object tier = tierExecutors[level].execute(streamEvent);
+                PolicyCounter policy = tier == null ? null : policiesByLevel.get(level).get(tier);
+                if (policy == null) {
+                    continue;
+                }
+                String throttleKey = (String) throttleKeyExecutors[level].execute(streamEvent);
+                Object[] decision = policy.evaluate(throttleKey, amount, currentTime);
+                if (decision == null) {
+                    continue;
+                }
+                StreamEvent decisionEvent = streamEventCloner.copyStreamEvent(streamEvent);
+                complexEventPopulater.populateComplexEvent(decisionEvent, decision);
+                decisionChunk.add(decisionEvent);
+            }
+        }
+        if (decisionChunk.getFirst() != null) {
+            nextProcessor.process(decisionChunk);
+        }
+    }
+
+    public void start() {
+        for (PolicyCounter policy : policies) {
+            ThrottleStateCheckpointer.getInstance().register(policy);
+        }
+    }
+
+    public void stop() {
+        for (PolicyCounter policy : policies) {
+            ThrottleStateCheckpointer.getInstance().unregister(policy);
+        }
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (PolicyCounter policy : policies) {
+            ThrottleStateSnapshot snapshot = policy.snapshotState();
+            Map<String, Long> counts = new HashMap<String, Long>();
+            snapshot.getValues().forEach(counts::put);
+            map.put(policy.getCheckpointId(), new Object[] { snapshot.getExpiryTime(), counts });
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void restoreState(Map<String, Object> map) {
+        for (PolicyCounter policy : policies) {
+            Object[] state = (Object[]) map.get(policy.getCheckpointId());
+            if (state != null) {
+                KeyCounterTable counts = new KeyCounterTable();
+                for (Map.Entry<String, Long> entry : ((Map<String, Long>) state[1]).entrySet()) {
+                    counts.put(entry.getKey(), entry.getValue());
+                }
+                policy.restoreState(new ThrottleStateSnapshot((Long) state[0], counts));
+            }
+        }
+    }
+
+    /**
+     * Request counters of one policy. The counters of window policies are kept in the slot of the policy within its
+     * window group, while token bucket policies keep the arrival times of their own bucket and sketch policies the
+     * counters of their own sketch.
+     */
+    private class PolicyCounter implements ThrottleStateParticipant {
+        private final String checkpointId;
+        private final long requestCount;
+        private final boolean stopOnQuotaReach;
+        private final WindowGroup windowGroup;
+        private final int slot;
+        private final TokenBucket tokenBucket;
+        private final CountMinSketch sketch;
+
+        private PolicyCounter(int level, String name, long requestCount, boolean stopOnQuotaReach,
+                CalendarWindow window, WindowGroup windowGroup) {
+            this.checkpointId = "evaluate/" + level + "/" + name + "/" + window.getUnitTime() + window.getTimeUnit();
+            this.requestCount = requestCount;
+            this.stopOnQuotaReach = stopOnQuotaReach;
+            this.windowGroup = windowGroup;
+            this.slot = windowGroup.slotCount++;
+            this.tokenBucket = null;
+            this.sketch = null;
+        }
+
+        private PolicyCounter(int level, String name, long requestCount, boolean stopOnQuotaReach,
+                CalendarWindow window, TokenBucket tokenBucket) {
+            this.checkpointId = "evaluate/" + level + "/" + name + "/" + window.getUnitTime() + window.getTimeUnit()
+                    + "/tokenBucket";
+            this.requestCount = requestCount;
+            this.stopOnQuotaReach = stopOnQuotaReach;
+            this.windowGroup = null;
+            this.slot = -1;
+            this.tokenBucket = tokenBucket;
+            this.sketch = null;
+        }
+
+        private PolicyCounter(int level, String name, long requestCount, boolean stopOnQuotaReach,
+                CalendarWindow window, CountMinSketch sketch) {
+            this.checkpointId = "evaluate/" + level + "/" + name + "/" + window.getUnitTime() + window.getTimeUnit()
+                    + "/sketch";
+            this.requestCount = requestCount;
+            this.stopOnQuotaReach = stopOnQuotaReach;
+            this.windowGroup = null;
+            this.slot = -1;
+            this.tokenBucket = null;
+            this.sketch = sketch;
+        }
+
+        /**
+         * Adds the amount of a request to the counter of the given key and returns the decision as the output
+         * attributes of the evaluator, or null for a key of a sketch policy which is not throttled.
+         */
+        private Object[] evaluate(String throttleKey, long amount, long currentTime) {
+            if (tokenBucket != null) {
+                long allowedAt = tokenBucket.acquire(throttleKey, currentTime);
+                return new Object[] { throttleKey, allowedAt != 0, stopOnQuotaReach,
+                        allowedAt != 0 ? allowedAt : currentTime };
+            }
+            if (sketch != null) {
+                // Decisions of keys below the limit are not emitted, so that the decision streams do not hold a state
+                // for every distinct key. Throttled keys expire with the window, hence no decision lifts them.
+                long estimate = sketch.add(throttleKey, amount, currentTime);
+                return estimate >= requestCount ? new Object[] { throttleKey, true, stopOnQuotaReach,
+                        sketch.getWindowEnd() } : null;
+            }
+            if (currentTime >= windowGroup.windowEnd) {
+                windowGroup.rollOver(currentTime);
+            }
+            CounterPartition partition = windowGroup.getPartition(throttleKey);
+            long eventCount;
+            long expiryTimeStamp;
+            partition.lock.lock();
+            try {
+                eventCount = partition.counters[slot].add(throttleKey, amount);
+                expiryTimeStamp = windowGroup.windowEnd;
+            } finally {
+                partition.lock.unlock();
+            }
+            return new Object[] { throttleKey, eventCount >= requestCount, stopOnQuotaReach, expiryTimeStamp };
+        }
+
+        @Override
+        public String getCheckpointId() {
+            return checkpointId;
+        }
+
+        @Override
+        public ThrottleStateSnapshot snapshotState() {
+            if (tokenBucket != null) {
+                return tokenBucket.snapshot();
+            }
+            if (sketch != null) {
+                // Estimated counts are not checkpointed; a restarted gateway counts the heavy hitters afresh.
+                return new ThrottleStateSnapshot(sketch.getWindowEnd(), new KeyCounterTable());
+            }
+            KeyCounterTable counts = new KeyCounterTable();
+            long expiryTime;
+            windowGroup.lockAllPartitions();
+            try {
+                expiryTime = windowGroup.windowEnd;
+                for (CounterPartition partition : windowGroup.partitions) {
+                    partition.counters[slot].forEach(counts::put);
+                }
+            } finally {
+                windowGroup.unlockAllPartitions();
+            }
+            return new ThrottleStateSnapshot(expiryTime, counts);
+        }
+
+        /**
+         * Restores the counts of the current window, or the arrival times of a token bucket. As the policies of a
+         * group are restored one after the other, a restored count is taken over whenever it is higher than the count
+         * of the key in the current window.
+         */
+        @Override
+        public void restoreState(ThrottleStateSnapshot snapshot) {
+            if (tokenBucket != null) {
+                tokenBucket.restore(snapshot);
+                return;
+            }
+            if (sketch != null) {
+                return;
+            }
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            if (snapshot.getExpiryTime() != windowGroup.window.getWindowEnd(currentTime)) {
+                return;
+            }
+            windowGroup.lockAllPartitions();
+            try {
+                if (windowGroup.windowEnd != -1 && windowGroup.windowEnd != snapshot.getExpiryTime()) {
+                    return;
+                }
+                windowGroup.windowEnd = snapshot.getExpiryTime();
+                snapshot.getValues().forEach((key, count) -> {
+                    KeyCounterTable counters = windowGroup.getPartition(key).counters[slot];
+                    if (count > counters.get(key)) {
+                        counters.put(key, count);
+                    }
+                });
+            } finally {
+                windowGroup.unlockAllPartitions();
+            }
+        }
+    }
+
+    /**
+     * Window shared by the policies with the same unit time and time unit. The policies of the group are rolled over
+     * together, under a single set of partition locks.
+     */
+    private static class WindowGroup {
+        private final CalendarWindow window;
+        private CounterPartition[] partitions;
+        private int slotCount;
+        private volatile long windowEnd = -1;
+
+        private WindowGroup(CalendarWindow window) {
+            this.window = window;
+        }
+
+        /**
+         * Allocates the partitions once every policy of the group has taken its slot.
+         */
+        private void allocate() {
+            partitions = new CounterPartition[ThrottlePartitions.getPartitionCount()];
+            for (int i = 0; i < partitions.length; i++) {
+                partitions[i] = new CounterPartition(slotCount);
+            }
+        }
+
+        private void rollOver(long currentTime) {
+            lockAllPartitions();
+            try {
+                if (currentTime >= windowEnd) {
+                    for (CounterPartition partition : partitions) {
+                        for (KeyCounterTable counters : partition.counters) {
+                            counters.clear();
+                        }
+                    }
+                    windowEnd = window.getWindowEnd(currentTime);
+                }
+            } finally {
+                unlockAllPartitions();
+            }
+        }
+
+        private CounterPartition getPartition(String throttleKey) {
+            int hash = throttleKey.hashCode();
+            return partitions[(hash ^ (hash >>> 16)) & (partitions.length - 1)];
+        }
+
+        private void lockAllPartitions() {
+            for (CounterPartition partition : partitions) {
+                partition.lock.lock();
+            }
+        }
+
+        private void unlockAllPartitions() {
+            for (int i = partitions.length - 1; i >= 0; i--) {
+                partitions[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Counters of one group of throttle keys, one table per policy of the window group.
+     */
+    private static class CounterPartition {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final KeyCounterTable[] counters;
+
+        private CounterPartition(int slotCount) {
+            counters = new KeyCounterTable[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                counters[i] = new KeyCounterTable();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent store of the last throttle decision taken for each throttle key.
+ * <p/>
+ * The store is bounded both in size and in time. Keys which have not been seen for the idle time are swept, and when
+ * the number of keys exceeds the maximum the least recently seen keys are evicted until the store is back below it.
+ * Losing the state of a key is safe: the next decision for that key is simply emitted again.
+ * <p/>
+ * Decisions of the same key may be recorded by several threads, hence the state of a key is updated atomically.
+ */
+public class ThrottleStateStore {
+    private static final long MIN_SWEEP_INTERVAL = 1000;
+
+    private final Map<String, ThrottleState> states = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private final LongAdder evictionCount = new LongAdder();
+    private final int maxKeys;
+    private final long idleTimeInMilliSeconds;
+    private final long sweepInterval;
+    private volatile long nextSweepTime = -1;
+
+    public ThrottleStateStore(int maxKeys, long idleTimeInMilliSeconds) {
+        this.maxKeys = maxKeys;
+        this.idleTimeInMilliSeconds = idleTimeInMilliSeconds;
+        this.sweepInterval = Math.max(MIN_SWEEP_INTERVAL, idleTimeInMilliSeconds / 2);
+    }
+
+    /**
+     * Records the throttle decision of a key.
+     *
+     * @param key         throttle key
+     * @param isThrottled throttle decision taken for the key
+     * @param currentTime current time in milliseconds
+     * @return false if the decision repeats a previous non throttled decision and need not be emitted
+     */
+    public boolean update(String key, boolean isThrottled, long currentTime) {
+        // 0 for a suppressed decision, 1 for an emitted decision and 2 for the first decision of the key
+        int[] result = new int[1];
+        states.compute(key, (throttleKey, state) -> {
+            if (state == null) {
+                result[0] = 2;
+                return new ThrottleState(isThrottled, currentTime);
+            }
+            result[0] = isThrottled || state.isThrottled ? 1 : 0;
+            state.isThrottled = isThrottled;
+            state.lastAccessTime = currentTime;
+            return state;
+        });
+        if (result[0] == 2) {
+            sweepIfRequired(currentTime);
+        }
+        return result[0] != 0;
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the decisions currently held by the store.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        for (Map.Entry<String, ThrottleState> entry : states.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().isThrottled);
+        }
+        return map;
+    }
+
+    /**
+     * Replaces the decisions of the store with the given ones.
+     */
+    public void restore(Map<String, Object> map, long currentTime) {
+        states.clear();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getValue() instanceof Boolean) {
+                states.put(entry.getKey(), new ThrottleState((Boolean) entry.getValue(), currentTime));
+            }
+        }
+    }
+
+    private void sweepIfRequired(long currentTime) {
+        if ((currentTime < nextSweepTime && states.size() <= maxKeys) || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long idleSince = currentTime - idleTimeInMilliSeconds;
+            // Trim below the limit so that a full store is not swept again on the very next key.
+            int targetSize = maxKeys - (maxKeys >> 3);
+            Iterator<ThrottleState> iterator = states.values().iterator();
+            while (iterator.hasNext()) {
+                ThrottleState state = iterator.next();
+                if (state.lastAccessTime < idleSince) {
+                    iterator.remove();
+                    evictionCount.increment();
+                }
+            }
+            if (states.size() > targetSize) {
+                evictLeastRecentlyUsed(targetSize);
+            }
+            nextSweepTime = currentTime + sweepInterval;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Evicts the keys seen least recently until the store holds no more than the given number of keys.
+     */
+    private void evictLeastRecentlyUsed(int targetSize) {
+        long[] accessTimes = new long[states.size()];
+        int count = 0;
+        for (ThrottleState state : states.values()) {
+            if (count == accessTimes.length) {
+                break;
+            }
+            accessTimes[count++] = state.lastAccessTime;
+        }
+        int excess = count - targetSize;
+        if (excess <= 0) {
+            return;
+        }
+        Arrays.sort(accessTimes, 0, count);
+        long lastEvictedAccessTime = accessTimes[excess - 1];
+        Iterator<ThrottleState> iterator = states.values().iterator();
+        while (states.size() > targetSize && iterator.hasNext()) {
+            if (iterator.next().lastAccessTime <= lastEvictedAccessTime) {
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Last decision of a key and the time the key was last seen. Both are written under the lock of the entry.
+     */
+    private static class ThrottleState {
+        private volatile boolean isThrottled;
+        private volatile long lastAccessTime;
+
+        private ThrottleState(boolean isThrottled, long lastAccessTime) {
+            this.isThrottled = isThrottled;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+}
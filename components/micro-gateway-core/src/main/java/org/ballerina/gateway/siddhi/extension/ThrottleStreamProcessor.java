@@ -17,6 +17,9 @@
  */
 package org.ballerina.gateway.siddhi.extension;
 
+import org.ballerina.gateway.throttle.ThrottleStateCheckpointer;
+import org.ballerina.gateway.throttle.ThrottleStateParticipant;
+import org.ballerina.gateway.throttle.ThrottleStateSnapshot;
 import org.ballerinalang.siddhi.annotation.Example;
 import org.ballerinalang.siddhi.annotation.Extension;
 import org.ballerinalang.siddhi.annotation.Parameter;
@@ -53,6 +56,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Throttle stream processor class
@@ -63,20 +67,46 @@ import java.util.Map;
         @Parameter(name = "window.time", description = "The batch time period for which the window should hold events.",
                 type = { DataType.INT, DataType.LONG, DataType.TIME }),
         @Parameter(name = "start.time", description = "This specifies an offset in milliseconds in order to start the "
-                + "window at a time different to the standard time.", type = { DataType.INT }) }, examples = {
+                + "window at a time different to the standard time.", type = { DataType.INT }),
+        @Parameter(name = "throttle.key", description = "Optional attribute the window state is partitioned on. "
+                + "Events of different keys are held in independently locked partitions.", type = {
+                DataType.STRING }, optional = true),
+        @Parameter(name = "counter.only", description = "When true, the window keeps one counter per throttle key "
+                + "instead of the events themselves, emits the per key count as eventCount and resets downstream "
+                + "aggregations with a single RESET event when the window elapses. Requires throttle.key.", type = {
+                DataType.BOOL }, optional = true, defaultValue = "false") }, examples = {
         @Example(syntax = "define window cseEventWindow (symbol string, price float, volume int) "
                 + "timeBatch(20) output all events;\n" + "@info(name = 'query0')\n" + "from cseEventStream\n"
                 + "insert into cseEventWindow;\n" + "@info(name = 'query1')\n" + "from cseEventWindow\n"
                 + "select symbol, sum(price) as price\n" + "insert all events into outputStream ;", description =
-                "This will processing events arrived every 20 milliseconds" + " as a batch and out put all events.") })
-public class ThrottleStreamProcessor extends StreamProcessor implements SchedulingProcessor, FindableProcessor {
+                "This will processing events arrived every 20 milliseconds" + " as a batch and out put all events."),
+        @Example(syntax = "from eligibilityStream#throttler:timeBatch(1 min, 0, throttleKey)\n"
+                + "select throttleKey, count(messageID) as requestCount, expiryTimeStamp\n" + "group by throttleKey\n"
+                + "insert into resultStream;", description = "This will hold the events of each minute, partitioned "
+                + "by throttleKey so that events of different keys do not contend with each other."),
+        @Example(syntax = "from eligibilityStream[isEligible == true]"
+                + "#throttler:timeBatch(1 min, 0, throttleKey, true)\n"
+                + "select throttleKey, eventCount >= 1000 as isThrottled, expiryTimeStamp\n"
+                + "insert into resultStream;", description = "This will count the events of each throttleKey per "
+                + "minute without retaining the events. Counts of windows in this mode are checkpointed when "
+                + "throttle state persistence is enabled.") })
+public class ThrottleStreamProcessor extends StreamProcessor implements SchedulingProcessor, FindableProcessor,
+        ThrottleStateParticipant, ThrottleWindowTimer.ExpiryListener {
     private static final Logger log = LoggerFactory.getLogger(ThrottleStreamProcessor.class);
     private static final String EXPIRY_TIME_STAMP = "expiryTimeStamp";
+    private static final String EVENT_COUNT = "eventCount";
+    private static final String EXPIRE_EVENT_TIME = "expireEventTime";
+    private static final String COUNTS = "counts";
     private long timeInMilliSeconds;
-    private ComplexEventChunk<StreamEvent> expiredEventChunk = new ComplexEventChunk<StreamEvent>(true);
+    private WindowPartition[] partitions = new WindowPartition[] { new WindowPartition() };
+    private ExpressionExecutor throttleKeyExecutor;
+    private boolean counterOnly = false;
+    private volatile StreamEvent resetEvent;
+    private volatile StreamEvent timerEvent;
+    private volatile boolean started;
     private Scheduler scheduler;
     private SiddhiAppContext siddhiAppContext;
-    private long expireEventTime = -1;
+    private volatile long expireEventTime = -1;
     private long startTime = -1;
 
     public ThrottleStreamProcessor() {
@@ -114,7 +144,7 @@ public class ThrottleStreamProcessor extends StreamProcessor implements Scheduli
                         + "parameter attribute but found a dynamic attribute " + attributeExpressionExecutors[0]
                         .getClass().getCanonicalName());
             }
-        } else if (attributeExpressionExecutors.length == 2) {
+        } else if (attributeExpressionExecutors.length >= 2 && attributeExpressionExecutors.length <= 4) {
             if (attributeExpressionExecutors[0] instanceof ConstantExpressionExecutor) {
                 if (attributeExpressionExecutors[0].getReturnType() == Attribute.Type.INT) {
                     timeInMilliSeconds = (Integer) ((ConstantExpressionExecutor) attributeExpressionExecutors[0])
@@ -142,68 +172,78 @@ public class ThrottleStreamProcessor extends StreamProcessor implements Scheduli
             } else {
                 throw new SiddhiAppValidationException(
                         "Throttle batch window 2nd parameter needs to be a Long " + "or Int type but found a "
-                                + attributeExpressionExecutors[2].getReturnType());
+                                + attributeExpressionExecutors[1].getReturnType());
+            }
+
+            if (attributeExpressionExecutors.length >= 3) {
+                if (attributeExpressionExecutors[2] instanceof ConstantExpressionExecutor) {
+                    throw new SiddhiAppValidationException("Throttle batch window 3rd parameter needs to be a dynamic "
+                            + "attribute but found a constant attribute");
+                }
+                if (attributeExpressionExecutors[2].getReturnType() != Attribute.Type.STRING) {
+                    throw new SiddhiAppValidationException("Throttle batch window 3rd parameter needs to be a String "
+                            + "type but found a " + attributeExpressionExecutors[2].getReturnType());
+                }
+                throttleKeyExecutor = attributeExpressionExecutors[2];
+                partitions = new WindowPartition[ThrottlePartitions.getPartitionCount()];
+                for (int i = 0; i < partitions.length; i++) {
+                    partitions[i] = new WindowPartition();
+                }
+            }
+
+            if (attributeExpressionExecutors.length == 4) {
+                if (!(attributeExpressionExecutors[3] instanceof ConstantExpressionExecutor)
+                        || attributeExpressionExecutors[3].getReturnType() != Attribute.Type.BOOL) {
+                    throw new SiddhiAppValidationException("Throttle batch window 4th parameter needs to be a "
+                            + "constant Bool attribute");
+                }
+                counterOnly = (Boolean) ((ConstantExpressionExecutor) attributeExpressionExecutors[3]).getValue();
+                if (counterOnly) {
+                    for (WindowPartition partition : partitions) {
+                        partition.counters = new KeyCounterTable();
+                    }
+                }
             }
         } else {
-            throw new SiddhiAppValidationException("Throttle batch window should only have one/two parameter "
-                    + "(<int|long|time> windowTime (and <int|long> startTime), but found "
-                    + attributeExpressionExecutors.length + " input attributes");
+            throw new SiddhiAppValidationException("Throttle batch window should only have one to four parameters "
+                    + "(<int|long|time> windowTime (and <int|long> startTime (and <string> throttleKey (and <bool> "
+                    + "counterOnly))), but found " + attributeExpressionExecutors.length + " input attributes");
         }
 
         List<Attribute> attributeList = new ArrayList<Attribute>();
         attributeList.add(new Attribute(EXPIRY_TIME_STAMP, Attribute.Type.LONG));
+        if (counterOnly) {
+            attributeList.add(new Attribute(EVENT_COUNT, Attribute.Type.LONG));
+        }
         return attributeList;
     }
 
     @Override
     protected void process(ComplexEventChunk<StreamEvent> complexEventChunk, Processor processor,
             StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
-        synchronized (this) {
-            if (expireEventTime == -1) {
-                long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
-                if (startTime != -1) {
-                    expireEventTime = addTimeShift(currentTime);
-                } else {
-                    expireEventTime = siddhiAppContext.getTimestampGenerator().currentTime() + timeInMilliSeconds;
-                }
-                if (scheduler != null) {
-                    scheduler.notifyAt(expireEventTime);
-                } else {
-                    log.error("scheduler is not initiated");
-                }
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+        if (expireEventTime == -1 || currentTime >= expireEventTime) {
+            // Window boundaries are shared by every partition, hence all of them are locked while rolling over.
+            lockAllPartitions();
+            try {
+                processWindowBoundary(complexEventChunk, streamEventCloner, complexEventPopulater);
+            } finally {
+                unlockAllPartitions();
             }
-            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
-            boolean sendEvents;
-            if (currentTime >= expireEventTime) {
-                expireEventTime += timeInMilliSeconds;
-                if (scheduler != null) {
-                    scheduler.notifyAt(expireEventTime);
-                } else {
-                    log.error("scheduler is not initiated");
-                }
-                sendEvents = true;
-            } else {
-                sendEvents = false;
-            }
-
+        } else {
             while (complexEventChunk.hasNext()) {
                 StreamEvent streamEvent = complexEventChunk.next();
                 if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
                     continue;
                 }
-
-                complexEventPopulater.populateComplexEvent(streamEvent, new Object[] { expireEventTime });
-                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
-                clonedStreamEvent.setType(StreamEvent.Type.EXPIRED);
-                clonedStreamEvent.setTimestamp(expireEventTime);
-                expiredEventChunk.add(clonedStreamEvent);
-            }
-            if (sendEvents) {
-                expiredEventChunk.reset();
-                if (expiredEventChunk.getFirst() != null) {
-                    complexEventChunk.add(expiredEventChunk.getFirst());
+                String throttleKey = getThrottleKey(streamEvent);
+                WindowPartition partition = getPartition(throttleKey);
+                partition.lock.lock();
+                try {
+                    addToPartition(partition, throttleKey, streamEvent, streamEventCloner, complexEventPopulater);
+                } finally {
+                    partition.lock.unlock();
                 }
-                expiredEventChunk.clear();
             }
         }
         if (complexEventChunk.getFirst() != null) {
@@ -213,30 +253,298 @@ public class ThrottleStreamProcessor extends StreamProcessor implements Scheduli
         }
     }
 
+    /**
+     * Initializes or advances the window and, when it has elapsed, moves the expired events of every partition to
+     * the given chunk. Callers must hold the locks of all partitions.
+     */
+    private void processWindowBoundary(ComplexEventChunk<StreamEvent> complexEventChunk,
+            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        if (expireEventTime == -1) {
+            long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+            if (startTime != -1) {
+                expireEventTime = addTimeShift(currentTime);
+            } else {
+                expireEventTime = siddhiAppContext.getTimestampGenerator().currentTime() + timeInMilliSeconds;
+            }
+            notifyAt(expireEventTime);
+        }
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+        boolean sendEvents;
+        if (currentTime >= expireEventTime) {
+            expireEventTime += timeInMilliSeconds;
+            notifyAt(expireEventTime);
+            sendEvents = true;
+        } else {
+            sendEvents = false;
+        }
+
+        if (counterOnly) {
+            if (sendEvents) {
+                resetCounters(complexEventChunk, streamEventCloner);
+            }
+            sendEvents = false;
+        }
+        while (complexEventChunk.hasNext()) {
+            StreamEvent streamEvent = complexEventChunk.next();
+            if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                continue;
+            }
+            String throttleKey = getThrottleKey(streamEvent);
+            addToPartition(getPartition(throttleKey), throttleKey, streamEvent, streamEventCloner,
+                    complexEventPopulater);
+        }
+        if (sendEvents) {
+            for (WindowPartition partition : partitions) {
+                partition.expiredEventChunk.reset();
+                if (partition.expiredEventChunk.getFirst() != null) {
+                    complexEventChunk.add(partition.expiredEventChunk.getFirst());
+                }
+                partition.expiredEventChunk.clear();
+            }
+        }
+    }
+
+    private void addToPartition(WindowPartition partition, String throttleKey, StreamEvent streamEvent,
+            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        if (timerEvent == null) {
+            StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
+            clonedStreamEvent.setType(ComplexEvent.Type.TIMER);
+            timerEvent = clonedStreamEvent;
+        }
+        if (counterOnly) {
+            long eventCount = partition.counters.increment(throttleKey);
+            complexEventPopulater.populateComplexEvent(streamEvent, new Object[] { expireEventTime, eventCount });
+            if (resetEvent == null) {
+                StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
+                clonedStreamEvent.setType(ComplexEvent.Type.RESET);
+                resetEvent = clonedStreamEvent;
+            }
+            return;
+        }
+        complexEventPopulater.populateComplexEvent(streamEvent, new Object[] { expireEventTime });
+        StreamEvent clonedStreamEvent = streamEventCloner.copyStreamEvent(streamEvent);
+        clonedStreamEvent.setType(StreamEvent.Type.EXPIRED);
+        clonedStreamEvent.setTimestamp(expireEventTime);
+        partition.expiredEventChunk.add(clonedStreamEvent);
+    }
+
+    /**
+     * Clears the counters of the elapsed window and places a RESET event ahead of the events being processed, so
+     * that aggregations further down the query start the new window from zero as well.
+     */
+    private void resetCounters(ComplexEventChunk<StreamEvent> complexEventChunk,
+            StreamEventCloner streamEventCloner) {
+        for (WindowPartition partition : partitions) {
+            partition.counters.clear();
+        }
+        if (resetEvent != null) {
+            StreamEvent clonedResetEvent = streamEventCloner.copyStreamEvent(resetEvent);
+            clonedResetEvent.setType(ComplexEvent.Type.RESET);
+            clonedResetEvent.setTimestamp(expireEventTime);
+            complexEventChunk.reset();
+            StreamEvent firstEvent = complexEventChunk.getFirst();
+            complexEventChunk.clear();
+            complexEventChunk.add(clonedResetEvent);
+            if (firstEvent != null) {
+                complexEventChunk.add(firstEvent);
+            }
+        }
+    }
+
+    private String getThrottleKey(StreamEvent streamEvent) {
+        if (throttleKeyExecutor == null) {
+            return null;
+        }
+        return (String) throttleKeyExecutor.execute(streamEvent);
+    }
+
+    private WindowPartition getPartition(String throttleKey) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+        int hash = throttleKey == null ? 0 : throttleKey.hashCode();
+        return partitions[(hash ^ (hash >>> 16)) & (partitions.length - 1)];
+    }
+
+    /**
+     * Rolls the window over when notified by the shared window timer, by processing a timer event as the scheduler
+     * of a Siddhi window would.
+     */
+    @Override
+    public void onExpiry(long expiryTime) {
+        StreamEvent template = timerEvent;
+        if (!started || template == null) {
+            return;
+        }
+        StreamEvent clonedTimerEvent = streamEventCloner.copyStreamEvent(template);
+        clonedTimerEvent.setType(ComplexEvent.Type.TIMER);
+        clonedTimerEvent.setTimestamp(expiryTime);
+        ComplexEventChunk<StreamEvent> timerEventChunk = new ComplexEventChunk<StreamEvent>(true);
+        timerEventChunk.add(clonedTimerEvent);
+        process(timerEventChunk);
+    }
+
+    /**
+     * Registers the expiry of the window with the shared window timer, which follows the system clock. Siddhi apps in
+     * playback mode advance their time with the timestamps of the events instead, hence their windows are notified
+     * by the Siddhi scheduler, which follows the timestamp generator of the app.
+     */
+    private void notifyAt(long expiryTime) {
+        if (!siddhiAppContext.isPlayBack()) {
+            ThrottleWindowTimer.getInstance().notifyAt(expiryTime, this);
+        } else if (scheduler != null) {
+            scheduler.notifyAt(expiryTime);
+        } else {
+            log.error("scheduler is not initiated");
+        }
+    }
+
+    private void lockAllPartitions() {
+        for (WindowPartition partition : partitions) {
+            partition.lock.lock();
+        }
+    }
+
+    private void unlockAllPartitions() {
+        for (int i = partitions.length - 1; i >= 0; i--) {
+            partitions[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the events currently held by all partitions, in partition order.
+     */
+    private ComplexEventChunk<StreamEvent> snapshotExpiredEvents() {
+        ComplexEventChunk<StreamEvent> snapshot = new ComplexEventChunk<StreamEvent>(true);
+        lockAllPartitions();
+        try {
+            for (WindowPartition partition : partitions) {
+                partition.expiredEventChunk.reset();
+                while (partition.expiredEventChunk.hasNext()) {
+                    snapshot.add(streamEventCloner.copyStreamEvent(partition.expiredEventChunk.next()));
+                }
+            }
+        } finally {
+            unlockAllPartitions();
+        }
+        return snapshot;
+    }
+
     public void start() {
-        //Do nothing
+        started = true;
+        if (counterOnly) {
+            ThrottleStateCheckpointer.getInstance().register(this);
+        }
     }
 
     public void stop() {
-        //Do nothing
+        started = false;
+        if (counterOnly) {
+            ThrottleStateCheckpointer.getInstance().unregister(this);
+        }
     }
 
     public Map<String, Object> currentState() {
         Map<String, Object> map = new HashMap<String, Object>();
-        map.put("0", expiredEventChunk);
+        if (counterOnly) {
+            ThrottleStateSnapshot snapshot = snapshotState();
+            map.put(EXPIRE_EVENT_TIME, snapshot.getExpiryTime());
+            map.put(COUNTS, toMap(snapshot.getValues()));
+        } else {
+            map.put("0", snapshotExpiredEvents());
+        }
         return map;
     }
 
+    @SuppressWarnings("unchecked")
     public void restoreState(Map<String, Object> map) {
-        //Do nothing
+        if (counterOnly && map.get(COUNTS) instanceof Map) {
+            KeyCounterTable counts = new KeyCounterTable();
+            for (Map.Entry<String, Long> entry : ((Map<String, Long>) map.get(COUNTS)).entrySet()) {
+                counts.put(entry.getKey(), entry.getValue());
+            }
+            restoreState(new ThrottleStateSnapshot((Long) map.get(EXPIRE_EVENT_TIME), counts));
+        }
     }
 
-    public synchronized StreamEvent find(StateEvent stateEvent, CompiledCondition compiledCondition) {
-        if (compiledCondition instanceof Operator) {
-            return ((Operator) compiledCondition).find(stateEvent, this.expiredEventChunk, this.streamEventCloner);
-        } else {
+    @Override
+    public String getCheckpointId() {
+        return "timeBatch/" + timeInMilliSeconds + "/" + startTime;
+    }
+
+    @Override
+    public ThrottleStateSnapshot snapshotState() {
+        KeyCounterTable counts = new KeyCounterTable();
+        long expiryTime;
+        lockAllPartitions();
+        try {
+            expiryTime = expireEventTime;
+            for (WindowPartition partition : partitions) {
+                partition.counters.forEach(counts::put);
+            }
+        } finally {
+            unlockAllPartitions();
+        }
+        return new ThrottleStateSnapshot(expiryTime, counts);
+    }
+
+    /**
+     * Restores the counts of a window which has not elapsed yet. The counts are only taken over before the first
+     * event, as the window would otherwise already hold counts of its own.
+     */
+    @Override
+    public void restoreState(ThrottleStateSnapshot snapshot) {
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+        long expiryTime = snapshot.getExpiryTime();
+        if (expiryTime <= currentTime || expiryTime - currentTime > timeInMilliSeconds
+                || (startTime != -1 && expiryTime != addTimeShift(currentTime))) {
+            return;
+        }
+        lockAllPartitions();
+        try {
+            if (expireEventTime != -1) {
+                return;
+            }
+            expireEventTime = expiryTime;
+            snapshot.getValues().forEach((key, count) -> getPartition(key).counters.put(key, count));
+            notifyAt(expireEventTime);
+        } finally {
+            unlockAllPartitions();
+        }
+    }
+
+    private static Map<String, Long> toMap(KeyCounterTable counts) {
+        Map<String, Long> map = new HashMap<String, Long>();
+        counts.forEach(map::put);
+        return map;
+    }
+
+    /**
+     * Searches the events held by each partition under the lock of that partition only, so that a lookup neither
+     * stops the other partitions nor copies the events which do not match.
+     */
+    public StreamEvent find(StateEvent stateEvent, CompiledCondition compiledCondition) {
+        if (!(compiledCondition instanceof Operator)) {
             return null;
         }
+        Operator operator = (Operator) compiledCondition;
+        ComplexEventChunk<StreamEvent> matches = new ComplexEventChunk<StreamEvent>(true);
+        for (WindowPartition partition : partitions) {
+            StreamEvent match;
+            partition.lock.lock();
+            try {
+                if (partition.expiredEventChunk.getFirst() == null) {
+                    continue;
+                }
+                match = operator.find(stateEvent, partition.expiredEventChunk, this.streamEventCloner);
+            } finally {
+                partition.lock.unlock();
+            }
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+        return matches.getFirst();
     }
 
     private long addTimeShift(long currentTime) {
@@ -247,8 +555,19 @@ public class ThrottleStreamProcessor extends StreamProcessor implements Scheduli
     public CompiledCondition compileCondition(Expression expression, MatchingMetaInfoHolder matchingMetaInfoHolder,
             SiddhiAppContext siddhiAppContext, List<VariableExpressionExecutor> list, Map<String, Table> map,
             String s) {
+        // The events are held by the partitions, hence the operator is built for an empty chunk of the same kind and
+        // find() hands it the chunk of each partition in turn.
         return OperatorParser
-                .constructOperator(this.expiredEventChunk, expression, matchingMetaInfoHolder, siddhiAppContext, list,
-                        map, this.queryName);
+                .constructOperator(new ComplexEventChunk<StreamEvent>(true), expression, matchingMetaInfoHolder,
+                        siddhiAppContext, list, map, this.queryName);
+    }
+
+    /**
+     * Events of the current window which belong to one group of throttle keys.
+     */
+    private static class WindowPartition {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ComplexEventChunk<StreamEvent> expiredEventChunk = new ComplexEventChunk<StreamEvent>(true);
+        private KeyCounterTable counters;
     }
 }
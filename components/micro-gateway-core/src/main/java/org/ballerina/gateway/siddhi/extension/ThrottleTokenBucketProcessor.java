@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerina.gateway.throttle.ThrottleStateCheckpointer;
+import org.ballerina.gateway.throttle.ThrottleStateParticipant;
+import org.ballerina.gateway.throttle.ThrottleStateSnapshot;
+import org.ballerinalang.siddhi.annotation.Example;
+import org.ballerinalang.siddhi.annotation.Extension;
+import org.ballerinalang.siddhi.annotation.Parameter;
+import org.ballerinalang.siddhi.annotation.util.DataType;
+import org.ballerinalang.siddhi.core.config.SiddhiAppContext;
+import org.ballerinalang.siddhi.core.event.ComplexEvent;
+import org.ballerinalang.siddhi.core.event.ComplexEventChunk;
+import org.ballerinalang.siddhi.core.event.stream.StreamEvent;
+import org.ballerinalang.siddhi.core.event.stream.StreamEventCloner;
+import org.ballerinalang.siddhi.core.event.stream.populater.ComplexEventPopulater;
+import org.ballerinalang.siddhi.core.executor.ConstantExpressionExecutor;
+import org.ballerinalang.siddhi.core.executor.ExpressionExecutor;
+import org.ballerinalang.siddhi.core.query.processor.Processor;
+import org.ballerinalang.siddhi.core.query.processor.stream.StreamProcessor;
+import org.ballerinalang.siddhi.core.util.config.ConfigReader;
+import org.ballerinalang.siddhi.query.api.definition.AbstractDefinition;
+import org.ballerinalang.siddhi.query.api.definition.Attribute;
+import org.ballerinalang.siddhi.query.api.exception.SiddhiAppValidationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Smooth rate limiting with a {@link TokenBucket} per query.
+ * <p/>
+ * Unlike throttler:timeBatch, which lets a client send twice its limit across a window boundary, the token bucket
+ * spreads the limit evenly over the unit time and admits at most burst requests back to back. Only one timestamp is
+ * kept per throttle key. Each event is emitted with isThrottled and with the expiryTimeStamp from which the key is
+ * admitted again.
+ * <p/>
+ * Usage:
+ * throttler:tokenBucket(unitTime, limit, burst, throttleKey)
+ * <p/>
+ * Example on usage:
+ * from eligibilityStream[isEligible == true]#throttler:tokenBucket(1 min, 1000, 50, throttleKey)
+ * select throttleKey, isThrottled, expiryTimeStamp
+ * insert into resultStream;
+ */
+@Extension(name = "tokenBucket", namespace = "throttler", description = "A token bucket (GCRA) rate limiter which "
+        + "admits the limit evenly spread over the unit time, with bursts of up to the given size.", parameters = {
+        @Parameter(name = "unit.time", description = "The period the limit applies to.", type = { DataType.INT,
+                DataType.LONG, DataType.TIME }),
+        @Parameter(name = "limit", description = "The number of requests admitted per unit time.", type = {
+                DataType.INT, DataType.LONG }),
+        @Parameter(name = "burst", description = "The number of requests which may be admitted back to back.",
+                type = { DataType.INT, DataType.LONG }),
+        @Parameter(name = "throttle.key", description = "The attribute the requests are limited on.", type = {
+                DataType.STRING }) }, examples = {
+        @Example(syntax = "from eligibilityStream[isEligible == true]"
+                + "#throttler:tokenBucket(1 min, 1000, 50, throttleKey)\n"
+                + "select throttleKey, isThrottled, expiryTimeStamp\n"
+                + "insert into resultStream;", description = "This will admit 1000 requests per minute of each "
+                + "throttleKey, at most 50 of them back to back.") })
+public class ThrottleTokenBucketProcessor extends StreamProcessor implements ThrottleStateParticipant {
+    private static final String IS_THROTTLED = "isThrottled";
+    private static final String EXPIRY_TIME_STAMP = "expiryTimeStamp";
+    private static final String ARRIVAL_TIMES = "arrivalTimes";
+    private TokenBucket tokenBucket;
+    private String checkpointId;
+    private ExpressionExecutor throttleKeyExecutor;
+    private SiddhiAppContext siddhiAppContext;
+
+    @Override
+    protected List<Attribute> init(AbstractDefinition abstractDefinition, ExpressionExecutor[] expressionExecutors,
+            ConfigReader configReader, SiddhiAppContext siddhiAppContext) {
+        this.siddhiAppContext = siddhiAppContext;
+        if (attributeExpressionExecutors.length != 4) {
+            throw new SiddhiAppValidationException("Throttle token bucket should have four parameters "
+                    + "(<int|long|time> unitTime, <int|long> limit, <int|long> burst, <string> throttleKey), but "
+                    + "found " + attributeExpressionExecutors.length + " input attributes");
+        }
+        long unitTime = getConstantLongValue(attributeExpressionExecutors[0], "1st");
+        long limit = getConstantLongValue(attributeExpressionExecutors[1], "2nd");
+        long burst = getConstantLongValue(attributeExpressionExecutors[2], "3rd");
+        if (attributeExpressionExecutors[3].getReturnType() != Attribute.Type.STRING) {
+            throw new SiddhiAppValidationException("Throttle token bucket's 4th parameter should be a string, but "
+                    + "found " + attributeExpressionExecutors[3].getReturnType());
+        }
+        try {
+            tokenBucket = new TokenBucket(unitTime, limit, burst);
+        } catch (IllegalArgumentException e) {
+            throw new SiddhiAppValidationException("Invalid throttle token bucket: " + e.getMessage());
+        }
+        checkpointId = "tokenBucket/" + unitTime + "/" + limit + "/" + burst;
+        throttleKeyExecutor = attributeExpressionExecutors[3];
+
+        List<Attribute> attributeList = new ArrayList<Attribute>();
+        attributeList.add(new Attribute(IS_THROTTLED, Attribute.Type.BOOL));
+        attributeList.add(new Attribute(EXPIRY_TIME_STAMP, Attribute.Type.LONG));
+        return attributeList;
+    }
+
+    private long getConstantLongValue(ExpressionExecutor executor, String position) {
+        if (!(executor instanceof ConstantExpressionExecutor)) {
+            throw new SiddhiAppValidationException("Throttle token bucket's " + position + " parameter needs to be "
+                    + "a constant attribute but found a dynamic attribute");
+        }
+        if (executor.getReturnType() == Attribute.Type.INT) {
+            return (Integer) ((ConstantExpressionExecutor) executor).getValue();
+        } else if (executor.getReturnType() == Attribute.Type.LONG) {
+            return (Long) ((ConstantExpressionExecutor) executor).getValue();
+        }
+        throw new SiddhiAppValidationException("Throttle token bucket's " + position + " parameter should be either "
+                + "int or long, but found " + executor.getReturnType());
+    }
+
+    @Override
+    protected void process(ComplexEventChunk<StreamEvent> complexEventChunk, Processor processor,
+            StreamEventCloner streamEventCloner, ComplexEventPopulater complexEventPopulater) {
+        long currentTime = siddhiAppContext.getTimestampGenerator().currentTime();
+        while (complexEventChunk.hasNext()) {
+            StreamEvent streamEvent = complexEventChunk.next();
+            if (streamEvent.getType() != ComplexEvent.Type.CURRENT) {
+                continue;
+            }
+            long allowedAt = tokenBucket.acquire((String) throttleKeyExecutor.execute(streamEvent), currentTime);
+            complexEventPopulater.populateComplexEvent(streamEvent,
+                    new Object[] { allowedAt != 0, allowedAt != 0 ? allowedAt : currentTime });
+        }
+        nextProcessor.process(complexEventChunk);
+    }
+
+    public void start() {
+        ThrottleStateCheckpointer.getInstance().register(this);
+    }
+
+    public void stop() {
+        ThrottleStateCheckpointer.getInstance().unregister(this);
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Long> arrivalTimes = new HashMap<String, Long>();
+        tokenBucket.snapshot().getValues().forEach(arrivalTimes::put);
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(ARRIVAL_TIMES, arrivalTimes);
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void restoreState(Map<String, Object> map) {
+        if (map.get(ARRIVAL_TIMES) instanceof Map) {
+            KeyCounterTable arrivalTimes = new KeyCounterTable();
+            for (Map.Entry<String, Long> entry : ((Map<String, Long>) map.get(ARRIVAL_TIMES)).entrySet()) {
+                arrivalTimes.put(entry.getKey(), entry.getValue());
+            }
+            tokenBucket.restore(new ThrottleStateSnapshot(ThrottleStateSnapshot.NO_EXPIRY, arrivalTimes));
+        }
+    }
+
+    @Override
+    public String getCheckpointId() {
+        return checkpointId;
+    }
+
+    @Override
+    public ThrottleStateSnapshot snapshotState() {
+        return tokenBucket.snapshot();
+    }
+
+    @Override
+    public void restoreState(ThrottleStateSnapshot snapshot) {
+        tokenBucket.restore(snapshot);
+    }
+}
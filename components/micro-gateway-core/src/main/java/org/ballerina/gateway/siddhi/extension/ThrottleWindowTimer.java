@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed wheel timer shared by the windows of throttler:timeBatch.
+ * <p/>
+ * Instead of scheduling a timer task of its own per window and per boundary, a window registers the time it expires
+ * at with this timer. A single thread advances the wheel one tick at a time and notifies all windows which expired
+ * within the tick as one batch. Registering is a lock free queue offer; expiries are moved from the queue into the
+ * bucket of their tick by the timer thread, so buckets are never shared between threads.
+ * <p/>
+ * Expiries are notified at most one tick late. The delay between the expiry time and its notification is reported as
+ * the throttle.timer.lagMillis gauge.
+ * <p/>
+ * The wheel follows the system clock, which is the time of every Siddhi app that does not run in playback mode.
+ * Windows of apps in playback mode must be notified by the Siddhi scheduler instead. The timer thread is only started
+ * once a window registers with the timer, so gateways whose apps do not use throttler:timeBatch do not run it.
+ */
+public class ThrottleWindowTimer {
+    private static final Logger log = LoggerFactory.getLogger(ThrottleWindowTimer.class);
+    private static final long TICK_DURATION = 100;
+    private static final int WHEEL_SIZE = 512;
+
+    private final long tickDuration;
+    private final List<List<Expiry>> wheel;
+    private final ConcurrentLinkedQueue<Expiry> pendingExpiries = new ConcurrentLinkedQueue<Expiry>();
+    private final List<Expiry> batch = new ArrayList<Expiry>();
+    private volatile long lag;
+    private long tick = -1;
+
+    ThrottleWindowTimer(long tickDuration, int wheelSize) {
+        this.tickDuration = tickDuration;
+        this.wheel = new ArrayList<List<Expiry>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayList<Expiry>());
+        }
+    }
+
+    public static ThrottleWindowTimer getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Notifies the listener once the given time has passed.
+     *
+     * @param expiryTime time in milliseconds the window expires at
+     * @param listener   window to be notified
+     */
+    public void notifyAt(long expiryTime, ExpiryListener listener) {
+        pendingExpiries.offer(new Expiry(expiryTime, listener));
+    }
+
+    private void start() {
+        Thread thread = new Thread(this::run, "throttle-window-timer");
+        thread.setDaemon(true);
+        thread.start();
+        GatewayMetrics.registerGauge("throttle.timer.lagMillis", () -> lag);
+        GatewayMetrics.registerGauge("throttle.timer.pending", pendingExpiries::size);
+    }
+
+    private void run() {
+        advance(System.currentTimeMillis());
+        while (true) {
+            long sleepTime = (tick + 1) * tickDuration - System.currentTimeMillis();
+            if (sleepTime > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            advance(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Advances the wheel to the tick of the given time and notifies the windows which expired until then. The first
+     * call only sets the tick the wheel starts from. Only the timer thread advances the wheel.
+     */
+    void advance(long currentTime) {
+        if (tick < 0) {
+            tick = currentTime / tickDuration;
+            return;
+        }
+        // Ticks missed by a long pause are caught up one by one, so that no bucket is skipped.
+        while (tick < currentTime / tickDuration) {
+            tick++;
+            transferPendingExpiries();
+            collectExpired(wheel.get((int) (tick % wheel.size())), batch);
+        }
+        if (!batch.isEmpty()) {
+            notifyExpired(batch, currentTime);
+            batch.clear();
+        }
+    }
+
+    private void transferPendingExpiries() {
+        Expiry expiry;
+        while ((expiry = pendingExpiries.poll()) != null) {
+            // Expiries are due at the first tick not before their time; expiries already due are placed into the
+            // current bucket, which is collected right away.
+            long expiryTick = Math.max((expiry.time + tickDuration - 1) / tickDuration, tick);
+            expiry.rounds = (expiryTick - tick) / wheel.size();
+            wheel.get((int) (expiryTick % wheel.size())).add(expiry);
+        }
+    }
+
+    private void collectExpired(List<Expiry> bucket, List<Expiry> batch) {
+        Iterator<Expiry> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Expiry expiry = iterator.next();
+            if (expiry.rounds > 0) {
+                expiry.rounds--;
+            } else {
+                iterator.remove();
+                batch.add(expiry);
+            }
+        }
+    }
+
+    private void notifyExpired(List<Expiry> batch, long currentTime) {
+        long maxLag = 0;
+        for (Expiry expiry : batch) {
+            maxLag = Math.max(maxLag, currentTime - expiry.time);
+            try {
+                expiry.listener.onExpiry(expiry.time);
+            } catch (RuntimeException e) {
+                log.error("Error while notifying the expiry of a throttle window", e);
+            }
+        }
+        lag = maxLag;
+        GatewayMetrics.counter("throttle.timer.expiries").add(batch.size());
+    }
+
+    /**
+     * Starts the shared timer on first use.
+     */
+    private static class Holder {
+        private static final ThrottleWindowTimer INSTANCE = new ThrottleWindowTimer(TICK_DURATION, WHEEL_SIZE);
+
+        static {
+            INSTANCE.start();
+        }
+    }
+
+    /**
+     * Window notified by the timer.
+     */
+    public interface ExpiryListener {
+        void onExpiry(long expiryTime);
+    }
+
+    /**
+     * Registered expiry and the number of wheel rounds left until it is due.
+     */
+    private static class Expiry {
+        private final long time;
+        private final ExpiryListener listener;
+        private long rounds;
+
+        private Expiry(long time, ExpiryListener listener) {
+            this.time = time;
+            this.listener = listener;
+        }
+    }
+}
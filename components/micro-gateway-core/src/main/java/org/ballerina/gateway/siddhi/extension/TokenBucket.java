@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerina.gateway.throttle.ThrottleStateSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket rate limiter implemented with the generic cell rate algorithm (GCRA).
+ * <p/>
+ * Instead of counting requests in tumbling windows, the limiter keeps a single timestamp per throttle key: the
+ * theoretical arrival time (TAT) of the next request when requests arrive exactly at the sustained rate. A request is
+ * admitted when it arrives no earlier than the TAT minus the burst tolerance, and then pushes the TAT one emission
+ * interval further. Requests are therefore spread evenly over the unit time, and no more than the limit plus the
+ * burst can pass within any period of unit time, regardless of window boundaries.
+ * <p/>
+ * Timestamps are kept in microseconds so that high rates keep their precision. Keys whose TAT has passed hold no
+ * state worth keeping and are swept once the tables have grown.
+ */
+public class TokenBucket {
+    private static final int MIN_SWEEP_SIZE = 1024;
+
+    private final long emissionInterval;
+    private final long burstTolerance;
+    private final BucketPartition[] partitions;
+
+    /**
+     * @param unitTimeInMilliSeconds period the limit applies to
+     * @param limit                  number of requests admitted per unit time at the sustained rate
+     * @param burst                  number of requests which may be admitted back to back
+     */
+    public TokenBucket(long unitTimeInMilliSeconds, long limit, long burst) {
+        if (unitTimeInMilliSeconds <= 0 || limit <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Unit time, limit and burst of a token bucket should be positive, but "
+                    + "found " + unitTimeInMilliSeconds + ", " + limit + " and " + burst);
+        }
+        this.emissionInterval = Math.max(1, TimeUnit.MILLISECONDS.toMicros(unitTimeInMilliSeconds) / limit);
+        this.burstTolerance = (burst - 1) * emissionInterval;
+        partitions = new BucketPartition[ThrottlePartitions.getPartitionCount()];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new BucketPartition();
+        }
+    }
+
+    /**
+     * Takes a token of the given key.
+     *
+     * @param throttleKey throttle key
+     * @param currentTime current time in milliseconds
+     * @return zero if the request is admitted, otherwise the time in milliseconds from which the key is admitted again
+     */
+    public long acquire(String throttleKey, long currentTime) {
+        long now = TimeUnit.MILLISECONDS.toMicros(currentTime);
+        BucketPartition partition = getPartition(throttleKey);
+        partition.lock.lock();
+        try {
+            long theoreticalArrivalTime = Math.max(partition.arrivalTimes.get(throttleKey), now);
+            long allowedAt = theoreticalArrivalTime - burstTolerance;
+            if (allowedAt > now) {
+                return TimeUnit.MICROSECONDS.toMillis(allowedAt + 999);
+            }
+            partition.arrivalTimes.put(throttleKey, theoreticalArrivalTime + emissionInterval);
+            if (partition.arrivalTimes.size() >= partition.sweepSize) {
+                partition.sweep(now);
+            }
+            return 0;
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the theoretical arrival times of the keys which are not idle. The snapshot never expires, as the
+     * arrival times are absolute.
+     */
+    public ThrottleStateSnapshot snapshot() {
+        KeyCounterTable arrivalTimes = new KeyCounterTable();
+        for (BucketPartition partition : partitions) {
+            partition.lock.lock();
+            try {
+                partition.arrivalTimes.forEach(arrivalTimes::put);
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+        return new ThrottleStateSnapshot(ThrottleStateSnapshot.NO_EXPIRY, arrivalTimes);
+    }
+
+    /**
+     * Restores arrival times from a snapshot, keeping the later arrival time of keys which are already known.
+     */
+    public void restore(ThrottleStateSnapshot snapshot) {
+        snapshot.getValues().forEach((throttleKey, arrivalTime) -> {
+            BucketPartition partition = getPartition(throttleKey);
+            partition.lock.lock();
+            try {
+                if (arrivalTime > partition.arrivalTimes.get(throttleKey)) {
+                    partition.arrivalTimes.put(throttleKey, arrivalTime);
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+        });
+    }
+
+    private BucketPartition getPartition(String throttleKey) {
+        int hash = throttleKey.hashCode();
+        return partitions[(hash ^ (hash >>> 16)) & (partitions.length - 1)];
+    }
+
+    /**
+     * Arrival times of one group of throttle keys.
+     */
+    private static class BucketPartition {
+        private final ReentrantLock lock = new ReentrantLock();
+        private KeyCounterTable arrivalTimes = new KeyCounterTable();
+        private int sweepSize = MIN_SWEEP_SIZE;
+
+        /**
+         * Drops the keys whose arrival time has passed. The next sweep happens once the table has doubled, so that
+         * the cost of sweeping stays proportional to the number of requests.
+         */
+        private void sweep(long now) {
+            final KeyCounterTable liveArrivalTimes = new KeyCounterTable();
+            arrivalTimes.forEach((throttleKey, arrivalTime) -> {
+                if (arrivalTime > now) {
+                    liveArrivalTimes.put(throttleKey, arrivalTime);
+                }
+            });
+            arrivalTimes = liveArrivalTimes;
+            sweepSize = Math.max(MIN_SWEEP_SIZE, liveArrivalTimes.size() * 2);
+        }
+    }
+}
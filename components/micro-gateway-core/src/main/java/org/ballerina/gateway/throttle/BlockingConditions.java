@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking conditions of the gateway, i.e. the client addresses, applications and users whose requests are rejected.
+ * <p/>
+ * The conditions are read from a file with one condition per line, either
+ * <pre>
+ * ip 192.168.0.0/16
+ * application subscriber:applicationName
+ * user username
+ * </pre>
+ * where ip takes IPv4 or IPv6 addresses with an optional prefix length. Lines starting with # are comments. The file
+ * is checked for changes periodically and the conditions are replaced as a whole, so lookups read an immutable set of
+ * conditions without locking. Address lookups walk an {@link IpPrefixTrie}, applications and users are hash lookups.
+ * <p/>
+ * Addresses in the X-Forwarded-For header can be set by the client, hence they are only used when the request comes
+ * from one of the configured trusted proxies. The client address is then the last address of the header which is not
+ * a trusted proxy itself, i.e. the one the outermost trusted proxy received the request from.
+ */
+public class BlockingConditions {
+    private static final Logger log = LoggerFactory.getLogger(BlockingConditions.class);
+    private static final BlockingConditions instance = new BlockingConditions();
+    private static final String IP_CONDITION = "ip";
+    private static final String APPLICATION_CONDITION = "application";
+    private static final String USER_CONDITION = "user";
+
+    private volatile Conditions conditions = new Conditions(new IpPrefixTrie(), Collections.emptySet(),
+            Collections.emptySet());
+    private volatile IpPrefixTrie trustedProxies = new IpPrefixTrie();
+    private ScheduledExecutorService executor;
+    private Path file;
+    private long lastModifiedTime = -1;
+
+    BlockingConditions() {
+    }
+
+    public static BlockingConditions getInstance() {
+        return instance;
+    }
+
+    /**
+     * Loads the conditions of the given file and checks it for changes at the given interval.
+     *
+     * @param file                          file the conditions are read from
+     * @param reloadIntervalInMilliSeconds  time between two checks of the file
+     * @param trustedProxies                addresses or prefixes of the proxies whose X-Forwarded-For header is used
+     */
+    public synchronized void init(Path file, long reloadIntervalInMilliSeconds, List<String> trustedProxies) {
+        if (executor != null) {
+            return;
+        }
+        setTrustedProxies(trustedProxies);
+        this.file = file;
+        reloadIfModified();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blocking-conditions-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::reloadIfModified, reloadIntervalInMilliSeconds,
+                reloadIntervalInMilliSeconds, TimeUnit.MILLISECONDS);
+        log.info("Blocking conditions are loaded from " + file + " and reloaded every "
+                + reloadIntervalInMilliSeconds + "ms");
+    }
+
+    /**
+     * Returns the address of the client of a request, which is the remote address unless the request comes from a
+     * trusted proxy.
+     *
+     * @param remoteAddress address the request was received from
+     * @param forwardedFor  addresses of the X-Forwarded-For headers of the request, separated by commas
+     */
+    public String getClientAddress(String remoteAddress, String forwardedFor) {
+        IpPrefixTrie proxies = trustedProxies;
+        if (forwardedFor == null || forwardedFor.isEmpty() || !proxies.matches(remoteAddress)) {
+            return remoteAddress;
+        }
+        String clientAddress = remoteAddress;
+        for (int end = forwardedFor.length(); end > 0; ) {
+            int start = forwardedFor.lastIndexOf(',', end - 1) + 1;
+            String address = forwardedFor.substring(start, end).trim();
+            end = start - 1;
+            if (address.isEmpty()) {
+                continue;
+            }
+            clientAddress = address;
+            if (!proxies.matches(address)) {
+                break;
+            }
+        }
+        return clientAddress;
+    }
+
+    public boolean isIpBlocked(String address) {
+        if (conditions.ipPrefixes.matches(address)) {
+            GatewayMetrics.counter("blocking.ip.rejected").increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given application, given as subscriber:applicationName, or the given user is blocked.
+     */
+    public boolean isApplicationOrUserBlocked(String application, String username) {
+        Conditions current = conditions;
+        if (current.applications.contains(application)) {
+            GatewayMetrics.counter("blocking.application.rejected").increment();
+            return true;
+        }
+        if (current.users.contains(username)) {
+            GatewayMetrics.counter("blocking.user.rejected").increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the conditions with the ones of the given lines. Invalid lines are logged and skipped.
+     */
+    void load(List<String> lines) {
+        IpPrefixTrie ipPrefixes = new IpPrefixTrie();
+        Set<String> applications = new HashSet<>();
+        Set<String> users = new HashSet<>();
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] condition = line.split("\\s+", 2);
+            try {
+                if (condition.length != 2) {
+                    throw new IllegalArgumentException("Blocking condition has no value");
+                }
+                switch (condition[0]) {
+                    case IP_CONDITION:
+                        ipPrefixes.add(condition[1]);
+                        break;
+                    case APPLICATION_CONDITION:
+                        applications.add(condition[1]);
+                        break;
+                    case USER_CONDITION:
+                        users.add(condition[1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unsupported blocking condition type " + condition[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid blocking condition '" + line + "': " + e.getMessage());
+            }
+        }
+        conditions = new Conditions(ipPrefixes, applications, users);
+    }
+
+    void setTrustedProxies(List<String> prefixes) {
+        IpPrefixTrie proxies = new IpPrefixTrie();
+        for (String prefix : prefixes) {
+            try {
+                proxies.add(prefix);
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid trusted proxy '" + prefix + "': " + e.getMessage());
+            }
+        }
+        trustedProxies = proxies;
+    }
+
+    private synchronized void reloadIfModified() {
+        try {
+            long modifiedTime = Files.exists(file) ? Files.getLastModifiedTime(file).toMillis() : 0;
+            if (modifiedTime == lastModifiedTime) {
+                return;
+            }
+            load(modifiedTime == 0 ? Collections.emptyList() : Files.readAllLines(file, StandardCharsets.UTF_8));
+            lastModifiedTime = modifiedTime;
+            log.info("Blocking conditions are reloaded from " + file);
+        } catch (IOException e) {
+            log.error("Unable to read the blocking conditions from " + file, e);
+        }
+    }
+
+    /**
+     * Immutable set of conditions, replaced as a whole on reload.
+     */
+    private static class Conditions {
+        private final IpPrefixTrie ipPrefixes;
+        private final Set<String> applications;
+        private final Set<String> users;
+
+        private Conditions(IpPrefixTrie ipPrefixes, Set<String> applications, Set<String> users) {
+            this.ipPrefixes = ipPrefixes;
+            this.applications = applications;
+            this.users = users;
+        }
+    }
+}
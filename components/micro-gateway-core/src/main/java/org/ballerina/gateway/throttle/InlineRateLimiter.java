@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.ballerina.gateway.siddhi.extension.CalendarWindow;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free fixed window rate limiter, used to take throttle decisions inline with the request.
+ * <p/>
+ * Windows are {@link CalendarWindow}s, hence they start and end at the same time as the windows the throttle policies
+ * are evaluated in, e.g. weekly windows start on Mondays and monthly windows on the first day of the month. Each key
+ * holds a single atomic long which packs the end of its current window in minutes since the epoch in the upper 32 bits
+ * and the number of requests admitted in that window in the lower 32 bits, so a decision is one compare and set. The
+ * end of the next window is only computed once the current one has elapsed. Keys whose window has elapsed are swept
+ * periodically, and the number of keys is bounded.
+ */
+public class InlineRateLimiter {
+    private static final InlineRateLimiter instance = new InlineRateLimiter(1000000);
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+    private static final long SWEEP_INTERVAL = 1000;
+    // Windows end on minute boundaries, as the smallest time unit of a policy is a minute.
+    private static final long WINDOW_END_UNIT = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<String, RateCounter> counters = new ConcurrentHashMap<>();
+    private final Map<String, CalendarWindow> windows = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private final int maxKeys;
+    private volatile long nextSweepTime;
+
+    InlineRateLimiter(int maxKeys) {
+        this.maxKeys = maxKeys;
+        GatewayMetrics.registerGauge("throttle.inline.keys", counters::size);
+    }
+
+    public static InlineRateLimiter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Admits a request of the given key if less than limit requests were admitted in the current window.
+     *
+     * @param key       throttle key
+     * @param limit     number of requests admitted per window
+     * @param unitTime  number of time units in one window
+     * @param timeUnit  time unit of the window, one of min, hour, day, week, month or year
+     * @return true if the request is admitted
+     */
+    public boolean tryAcquire(String key, long limit, int unitTime, String timeUnit) {
+        return tryAcquire(key, limit, unitTime, timeUnit, System.currentTimeMillis());
+    }
+
+    boolean tryAcquire(String key, long limit, int unitTime, String timeUnit, long currentTime) {
+        if (limit >= COUNT_MASK || unitTime <= 0) {
+            return true;
+        }
+        CalendarWindow window = getWindow(unitTime, timeUnit);
+        RateCounter counter = counters.get(key);
+        if (counter == null || counter.window != window) {
+            counter = new RateCounter(window, getWindowEnd(window, currentTime));
+            RateCounter existing = counters.putIfAbsent(key, counter);
+            if (existing != null && existing.window == window) {
+                counter = existing;
+            } else if (existing != null) {
+                counters.put(key, counter);
+            }
+            sweepIfRequired(currentTime);
+        }
+        while (true) {
+            long state = counter.state.get();
+            long newState;
+            if (isElapsed(state, currentTime)) {
+                newState = (getWindowEnd(window, currentTime) << 32) | 1;
+            } else if ((state & COUNT_MASK) >= limit) {
+                GatewayMetrics.counter("throttle.inline.rejected").increment();
+                return false;
+            } else {
+                newState = state + 1;
+            }
+            if (counter.state.compareAndSet(state, newState)) {
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    private CalendarWindow getWindow(int unitTime, String timeUnit) {
+        String windowKey = unitTime + timeUnit;
+        CalendarWindow window = windows.get(windowKey);
+        if (window == null) {
+            window = windows.computeIfAbsent(windowKey, k -> new CalendarWindow(unitTime, timeUnit, 0));
+        }
+        return window;
+    }
+
+    private static long getWindowEnd(CalendarWindow window, long currentTime) {
+        return window.getWindowEnd(currentTime) / WINDOW_END_UNIT;
+    }
+
+    private static boolean isElapsed(long state, long currentTime) {
+        return (state >>> 32) * WINDOW_END_UNIT <= currentTime;
+    }
+
+    private void sweepIfRequired(long currentTime) {
+        if ((currentTime < nextSweepTime && counters.size() <= maxKeys) || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<RateCounter> iterator = counters.values().iterator();
+            while (iterator.hasNext()) {
+                if (isElapsed(iterator.next().state.get(), currentTime)) {
+                    iterator.remove();
+                }
+            }
+            // Keys of the current windows are dropped as a last resort, which admits their next requests early.
+            iterator = counters.values().iterator();
+            while (counters.size() > maxKeys - (maxKeys >> 3) && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+            nextSweepTime = currentTime + SWEEP_INTERVAL;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Window end and admitted request count of a key, packed into one atomic long.
+     */
+    private static class RateCounter {
+        private final CalendarWindow window;
+        private final AtomicLong state;
+
+        private RateCounter(CalendarWindow window, long windowEnd) {
+            this.window = window;
+            this.state = new AtomicLong(windowEnd << 32);
+        }
+    }
+}
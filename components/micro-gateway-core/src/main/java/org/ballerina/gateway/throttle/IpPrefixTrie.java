@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import java.util.Arrays;
+
+/**
+ * Binary trie of IPv4 and IPv6 address prefixes.
+ * <p/>
+ * Nodes are kept in a primitive array, two child indexes per node, so a lookup walks at most one node per address bit
+ * and does not allocate for IPv4 addresses. Addresses are parsed by the trie itself rather than by
+ * {@link java.net.InetAddress}, which may resolve host names. IPv4 mapped IPv6 addresses and prefixes are treated as
+ * the IPv4 addresses and prefixes they map. The trie is not thread safe for writes; it is built once and then only
+ * read.
+ */
+public class IpPrefixTrie {
+    private static final int IPV4_BITS = 32;
+    private static final int IPV6_BITS = 128;
+
+    private final Prefixes ipv4Prefixes = new Prefixes();
+    private final Prefixes ipv6Prefixes = new Prefixes();
+
+    /**
+     * Adds an address or a prefix in CIDR notation, e.g. 192.168.0.0/16 or 2001:db8::/32.
+     *
+     * @throws IllegalArgumentException if the prefix is not a valid IPv4 or IPv6 prefix
+     */
+    public void add(String prefix) {
+        int slash = prefix.indexOf('/');
+        String address = slash == -1 ? prefix.trim() : prefix.substring(0, slash).trim();
+        long ipv4Address = parseIpv4(address, 0, address.length());
+        int maxLength = ipv4Address != -1 ? IPV4_BITS : IPV6_BITS;
+        int length = maxLength;
+        if (slash != -1) {
+            try {
+                length = Integer.parseInt(prefix.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length in " + prefix);
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("Invalid prefix length in " + prefix);
+            }
+        }
+        if (ipv4Address != -1) {
+            ipv4Prefixes.add(ipv4Address << 32, 0, length);
+            return;
+        }
+        long[] ipv6Address = parseIpv6(address);
+        if (ipv6Address == null) {
+            throw new IllegalArgumentException("Invalid IP address " + address);
+        }
+        if (isIpv4Mapped(ipv6Address) && length >= IPV6_BITS - IPV4_BITS) {
+            // Mapped addresses are looked up as IPv4 addresses.
+            ipv4Prefixes.add(ipv6Address[1] << 32, 0, length - (IPV6_BITS - IPV4_BITS));
+            return;
+        }
+        ipv6Prefixes.add(ipv6Address[0], ipv6Address[1], length);
+    }
+
+    /**
+     * Returns whether the given address falls into one of the prefixes. Addresses which cannot be parsed never match.
+     */
+    public boolean matches(String address) {
+        if (address == null) {
+            return false;
+        }
+        int start = 0;
+        int end = address.length();
+        while (start < end && address.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && address.charAt(end - 1) == ' ') {
+            end--;
+        }
+        long ipv4Address = parseIpv4(address, start, end);
+        if (ipv4Address != -1) {
+            return ipv4Prefixes.matches(ipv4Address << 32, 0, IPV4_BITS);
+        }
+        if (ipv6Prefixes.isEmpty() && ipv4Prefixes.isEmpty()) {
+            return false;
+        }
+        long[] ipv6Address = parseIpv6(address.substring(start, end));
+        if (ipv6Address == null) {
+            return false;
+        }
+        if (isIpv4Mapped(ipv6Address)) {
+            return ipv4Prefixes.matches(ipv6Address[1] << 32, 0, IPV4_BITS);
+        }
+        return ipv6Prefixes.matches(ipv6Address[0], ipv6Address[1], IPV6_BITS);
+    }
+
+    public boolean isEmpty() {
+        return ipv4Prefixes.isEmpty() && ipv6Prefixes.isEmpty();
+    }
+
+    private static boolean isIpv4Mapped(long[] ipv6Address) {
+        return ipv6Address[0] == 0 && (ipv6Address[1] >>> 32) == 0xffffL;
+    }
+
+    /**
+     * Parses the dotted IPv4 address between the given indexes.
+     *
+     * @return the address as an unsigned 32 bit value, or -1 if it is not a valid IPv4 address
+     */
+    private static long parseIpv4(String address, int start, int end) {
+        long value = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = start; i < end; i++) {
+            char c = address.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet == -1 ? c - '0' : octet * 10 + c - '0';
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet != -1 && octets < 3) {
+                value = (value << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octet == -1 || octets != 3) {
+            return -1;
+        }
+        return (value << 8) | octet;
+    }
+
+    /**
+     * Parses an IPv6 address, optionally in brackets, with a zone or with an embedded IPv4 address.
+     *
+     * @return the high and low 64 bits of the address, or null if it is not a valid IPv6 address
+     */
+    private static long[] parseIpv6(String address) {
+        int start = 0;
+        int end = address.length();
+        if (end > 1 && address.charAt(0) == '[' && address.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+        int zone = address.indexOf('%', start);
+        if (zone != -1 && zone < end) {
+            end = zone;
+        }
+        int[] groups = new int[8];
+        int groupCount = 0;
+        int compressedAt = -1;
+        int i = start;
+        if (end - start >= 2 && address.startsWith("::", start)) {
+            compressedAt = 0;
+            i += 2;
+        }
+        while (i < end) {
+            int groupEnd = address.indexOf(':', i);
+            if (groupEnd == -1 || groupEnd > end) {
+                groupEnd = end;
+            }
+            if (groupEnd == i) {
+                return null;
+            }
+            if (groupEnd == end && address.lastIndexOf('.', end - 1) >= i) {
+                long ipv4Address = parseIpv4(address, i, end);
+                if (ipv4Address == -1 || groupCount > 6) {
+                    return null;
+                }
+                groups[groupCount++] = (int) (ipv4Address >>> 16);
+                groups[groupCount++] = (int) (ipv4Address & 0xffff);
+                break;
+            }
+            if (groupEnd - i > 4 || groupCount == 8) {
+                return null;
+            }
+            int group = 0;
+            for (int j = i; j < groupEnd; j++) {
+                int digit = Character.digit(address.charAt(j), 16);
+                if (digit == -1) {
+                    return null;
+                }
+                group = (group << 4) | digit;
+            }
+            groups[groupCount++] = group;
+            i = groupEnd + 1;
+            if (groupEnd < end && i < end && address.charAt(i) == ':') {
+                if (compressedAt != -1) {
+                    return null;
+                }
+                compressedAt = groupCount;
+                i++;
+            } else if (groupEnd < end && i == end) {
+                return null;
+            }
+        }
+        if (compressedAt == -1 ? groupCount != 8 : groupCount == 8) {
+            return null;
+        }
+        if (compressedAt != -1) {
+            int shift = 8 - groupCount;
+            System.arraycopy(groups, compressedAt, groups, compressedAt + shift, groupCount - compressedAt);
+            Arrays.fill(groups, compressedAt, compressedAt + shift, 0);
+        }
+        long high = 0;
+        long low = 0;
+        for (int j = 0; j < 4; j++) {
+            high = (high << 16) | groups[j];
+            low = (low << 16) | groups[j + 4];
+        }
+        return new long[] { high, low };
+    }
+
+    /**
+     * Prefixes of one address family, left aligned in 128 bits.
+     */
+    private static class Prefixes {
+        // children of node n are at 2n and 2n + 1, zero for none as the root is never a child
+        private int[] children = new int[32];
+        private boolean[] terminal = new boolean[16];
+        private int nodeCount = 1;
+
+        private void add(long high, long low, int length) {
+            int node = 0;
+            for (int i = 0; i < length && !terminal[node]; i++) {
+                int bit = getBit(high, low, i);
+                if (children[2 * node + bit] == 0) {
+                    if (nodeCount == terminal.length) {
+                        children = Arrays.copyOf(children, children.length << 1);
+                        terminal = Arrays.copyOf(terminal, terminal.length << 1);
+                    }
+                    children[2 * node + bit] = nodeCount++;
+                }
+                node = children[2 * node + bit];
+            }
+            // Longer prefixes below this node are covered by it.
+            terminal[node] = true;
+        }
+
+        private boolean matches(long high, long low, int bits) {
+            int node = 0;
+            for (int i = 0; i < bits; i++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                node = children[2 * node + getBit(high, low, i)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return terminal[node];
+        }
+
+        private boolean isEmpty() {
+            return nodeCount == 1 && !terminal[0];
+        }
+
+        private static int getBit(long high, long low, int index) {
+            return (int) (index < 64 ? high >>> (63 - index) : low >>> (127 - index)) & 1;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sliding window rate limiter used to arrest short bursts of a subscription.
+ * <p/>
+ * Unlike the fixed windows of the throttle policies, which admit the full quota at the start of every window, the
+ * spike arrest window slides in buckets of a tenth of its length. A limit per second is therefore enforced with a
+ * resolution of 100 milliseconds, and a limit per minute with a resolution of 6 seconds. Keys which were idle for a
+ * whole window are swept periodically, and the number of keys is bounded.
+ */
+public class SpikeArrestLimiter {
+    static final int MAX_KEYS = 1000000;
+    private static final SpikeArrestLimiter instance = new SpikeArrestLimiter(MAX_KEYS);
+    private static final int BUCKET_COUNT = 10;
+    private static final String UNIT_SECOND = "sec";
+    private static final String UNIT_MINUTE = "min";
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private final Map<String, SlidingCounter> counters = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+    private final int maxKeys;
+    private volatile long nextSweepTime;
+
+    SpikeArrestLimiter(int maxKeys) {
+        this.maxKeys = maxKeys;
+        GatewayMetrics.registerGauge("throttle.spikeArrest.keys", counters::size);
+    }
+
+    public static SpikeArrestLimiter getInstance() {
+        return instance;
+    }
+
+    /**
+     * Admits a request of the given key if less than limit requests were admitted within the last second or minute.
+     *
+     * @param key   spike arrest key, usually the subscription throttle key
+     * @param limit number of requests admitted per unit
+     * @param unit  "sec" or "min", requests of other units are always admitted
+     * @return true if the request is admitted
+     */
+    public boolean tryAcquire(String key, long limit, String unit) {
+        return tryAcquire(key, limit, getWindowLength(unit), System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the length of the sliding window of the given spike arrest unit, or zero if the unit is not known.
+     */
+    static long getWindowLength(String unit) {
+        if (UNIT_SECOND.equals(unit)) {
+            return 1000;
+        } else if (UNIT_MINUTE.equals(unit)) {
+            return 60000;
+        }
+        return 0;
+    }
+
+    boolean tryAcquire(String key, long limit, long windowInMilliSeconds, long currentTime) {
+        if (limit <= 0 || windowInMilliSeconds < BUCKET_COUNT) {
+            return true;
+        }
+        SlidingCounter counter = counters.get(key);
+        if (counter == null || counter.bucketLength != windowInMilliSeconds / BUCKET_COUNT) {
+            counter = new SlidingCounter(windowInMilliSeconds / BUCKET_COUNT, currentTime);
+            SlidingCounter existing = counters.putIfAbsent(key, counter);
+            if (existing != null && existing.bucketLength == counter.bucketLength) {
+                counter = existing;
+            } else if (existing != null) {
+                counters.put(key, counter);
+            }
+            sweepIfRequired(currentTime);
+        }
+        if (counter.tryAcquire(limit, currentTime)) {
+            return true;
+        }
+        GatewayMetrics.counter("throttle.spikeArrest.rejected").increment();
+        return false;
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    private void sweepIfRequired(long currentTime) {
+        if ((currentTime < nextSweepTime && counters.size() <= maxKeys) || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<SlidingCounter> iterator = counters.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isIdle(currentTime)) {
+                    iterator.remove();
+                }
+            }
+            // Active keys are dropped as a last resort, which admits a few requests of their next burst.
+            iterator = counters.values().iterator();
+            while (counters.size() > maxKeys - (maxKeys >> 3) && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+            nextSweepTime = currentTime + SWEEP_INTERVAL;
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Request counts of a key in the buckets of its sliding window. Requests of a single key are rarely concurrent,
+     * hence the counter is guarded by its own monitor.
+     */
+    private static class SlidingCounter {
+        private final long bucketLength;
+        private final int[] counts = new int[BUCKET_COUNT];
+        private long lastBucket;
+        private long total;
+
+        private SlidingCounter(long bucketLength, long currentTime) {
+            this.bucketLength = bucketLength;
+            this.lastBucket = currentTime / bucketLength;
+        }
+
+        private synchronized boolean tryAcquire(long limit, long currentTime) {
+            long bucket = currentTime / bucketLength;
+            if (bucket - lastBucket >= BUCKET_COUNT) {
+                Arrays.fill(counts, 0);
+                total = 0;
+            } else {
+                for (long expired = lastBucket + 1; expired <= bucket; expired++) {
+                    int index = (int) (expired % BUCKET_COUNT);
+                    total -= counts[index];
+                    counts[index] = 0;
+                }
+            }
+            if (bucket > lastBucket) {
+                lastBucket = bucket;
+            }
+            if (total >= limit) {
+                return false;
+            }
+            counts[(int) (lastBucket % BUCKET_COUNT)]++;
+            total++;
+            return true;
+        }
+
+        private synchronized boolean isIdle(long currentTime) {
+            return currentTime / bucketLength - lastBucket >= BUCKET_COUNT;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent table of the throttle decisions received from the throttle policies, keyed by throttle key.
+ * <p/>
+ * A decision is stored as a single primitive long, the expiry time shifted left by one with the stop on quota flag
+ * in the lowest bit, next to its key in open addressing arrays. The table is split into segments with a lock each,
+ * and a lookup takes a read lock and probes the arrays, so it does not allocate. Decisions which have expired are
+ * swept by a background thread, which rebuilds every segment holding expired decisions into arrays sized for the
+ * decisions left, so the table shrinks back once throttling ends.
+ */
+public class ThrottleDecisionTable {
+    public static final int NOT_THROTTLED = 0;
+    public static final int THROTTLED = 1;
+    public static final int THROTTLED_STOP_ON_QUOTA = 2;
+    private static final ThrottleDecisionTable instance = new ThrottleDecisionTable(64, 1000);
+    private static final int MIN_CAPACITY = 16;
+
+    private final Segment[] segments;
+
+    ThrottleDecisionTable(int segmentCount, long sweepIntervalInMilliSeconds) {
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+        if (sweepIntervalInMilliSeconds > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "throttle-decision-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()), sweepIntervalInMilliSeconds,
+                    sweepIntervalInMilliSeconds, TimeUnit.MILLISECONDS);
+        }
+        GatewayMetrics.registerGauge("throttle.decisions.size", this::size);
+    }
+
+    public static ThrottleDecisionTable getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records that the given key is throttled until the expiry time.
+     */
+    public void put(String throttleKey, long expiryTime, boolean stopOnQuota) {
+        getSegment(throttleKey).put(throttleKey, (expiryTime << 1) | (stopOnQuota ? 1 : 0));
+    }
+
+    /**
+     * Returns the decision of the given key at the current time.
+     *
+     * @return {@link #NOT_THROTTLED}, {@link #THROTTLED} or {@link #THROTTLED_STOP_ON_QUOTA}
+     */
+    public int get(String throttleKey, long currentTime) {
+        long decision = getSegment(throttleKey).get(throttleKey);
+        if (decision == 0 || (decision >> 1) < currentTime) {
+            return NOT_THROTTLED;
+        }
+        return (decision & 1) == 1 ? THROTTLED_STOP_ON_QUOTA : THROTTLED;
+    }
+
+    /**
+     * Removes the decisions which expired before the given time.
+     */
+    void sweep(long currentTime) {
+        for (Segment segment : segments) {
+            segment.sweep(currentTime);
+        }
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    int capacity() {
+        int capacity = 0;
+        for (Segment segment : segments) {
+            capacity += segment.keys.length;
+        }
+        return capacity;
+    }
+
+    private Segment getSegment(String throttleKey) {
+        int hash = throttleKey.hashCode();
+        return segments[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % segments.length];
+    }
+
+    /**
+     * Open addressing hash table of one group of keys, at most half full.
+     */
+    private static class Segment {
+        private final StampedLock lock = new StampedLock();
+        private String[] keys = new String[MIN_CAPACITY];
+        private long[] decisions = new long[MIN_CAPACITY];
+        private volatile int size;
+
+        private long get(String key) {
+            long stamp = lock.readLock();
+            try {
+                int index = indexOf(keys, key);
+                return keys[index] == null ? 0 : decisions[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void put(String key, long decision) {
+            long stamp = lock.writeLock();
+            try {
+                int index = indexOf(keys, key);
+                if (keys[index] == null) {
+                    if ((size + 1) << 1 > keys.length) {
+                        rebuild(keys.length << 1, Long.MIN_VALUE);
+                        index = indexOf(keys, key);
+                    }
+                    keys[index] = key;
+                    size++;
+                }
+                decisions[index] = decision;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void sweep(long currentTime) {
+            long stamp = lock.writeLock();
+            try {
+                int live = 0;
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null && (decisions[i] >> 1) >= currentTime) {
+                        live++;
+                    }
+                }
+                if (live == size) {
+                    return;
+                }
+                int capacity = MIN_CAPACITY;
+                while (live << 1 > capacity) {
+                    capacity <<= 1;
+                }
+                rebuild(capacity, currentTime);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Moves the decisions which expire at or after the given time into arrays of the given capacity. Callers
+         * must hold the write lock.
+         */
+        private void rebuild(int capacity, long currentTime) {
+            String[] oldKeys = keys;
+            long[] oldDecisions = decisions;
+            String[] newKeys = new String[capacity];
+            long[] newDecisions = new long[capacity];
+            int newSize = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && (oldDecisions[i] >> 1) >= currentTime) {
+                    int index = indexOf(newKeys, oldKeys[i]);
+                    newKeys[index] = oldKeys[i];
+                    newDecisions[index] = oldDecisions[i];
+                    newSize++;
+                }
+            }
+            keys = newKeys;
+            decisions = newDecisions;
+            size = newSize;
+        }
+
+        private static int indexOf(String[] keys, String key) {
+            int mask = keys.length - 1;
+            int hash = key.hashCode();
+            int index = (hash ^ (hash >>> 16)) & mask;
+            while (keys[index] != null && !keys[index].equals(key)) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+}
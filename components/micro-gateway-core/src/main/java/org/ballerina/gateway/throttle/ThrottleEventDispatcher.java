@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands throttle events off from request threads to a fixed set of worker threads.
+ * <p/>
+ * Every worker consumes a bounded ring buffer of its own. Events are partitioned by throttle key, so the events of a
+ * key are processed in order by a single worker while different keys are processed in parallel. Publishing an event
+ * is a single compare and set on the ring buffer of its partition; the request thread never runs the throttle
+ * queries. When a ring buffer is full the event is either dropped or processed on the request thread, as configured;
+ * an event processed on the request thread may overtake queued events of its key, which only matters to counters
+ * when the partition is already saturated.
+ * Until the dispatcher is initialized events are processed on the request thread.
+ */
+public class ThrottleEventDispatcher {
+    public static final String OVERFLOW_DROP = "drop";
+    public static final String OVERFLOW_INLINE = "inline";
+    private static final Logger log = LoggerFactory.getLogger(ThrottleEventDispatcher.class);
+    private static final ThrottleEventDispatcher instance = new ThrottleEventDispatcher();
+
+    private volatile RingBuffer[] partitions;
+    private volatile boolean dropOnOverflow;
+
+    ThrottleEventDispatcher() {
+    }
+
+    public static ThrottleEventDispatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts the workers. Calling init again replaces the workers once the events already queued are processed.
+     *
+     * @param workers        number of worker threads and partitions
+     * @param bufferSize     capacity of the ring buffer of each worker, rounded up to a power of two
+     * @param overflowPolicy {@link #OVERFLOW_DROP} or {@link #OVERFLOW_INLINE}
+     */
+    public synchronized void init(int workers, int bufferSize, String overflowPolicy) {
+        if (workers <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("Workers and buffer size of the throttle event dispatcher should be "
+                    + "positive, but found " + workers + " and " + bufferSize);
+        }
+        if (!OVERFLOW_DROP.equals(overflowPolicy) && !OVERFLOW_INLINE.equals(overflowPolicy)) {
+            throw new IllegalArgumentException("Unsupported overflow policy " + overflowPolicy + ", expected "
+                    + OVERFLOW_DROP + " or " + OVERFLOW_INLINE);
+        }
+        shutdown();
+        int capacity = 1;
+        while (capacity < bufferSize) {
+            capacity <<= 1;
+        }
+        RingBuffer[] ringBuffers = new RingBuffer[workers];
+        for (int i = 0; i < workers; i++) {
+            ringBuffers[i] = new RingBuffer(capacity);
+            Thread thread = new Thread(ringBuffers[i], "throttle-event-worker-" + i);
+            thread.setDaemon(true);
+            ringBuffers[i].worker = thread;
+            thread.start();
+        }
+        dropOnOverflow = OVERFLOW_DROP.equals(overflowPolicy);
+        partitions = ringBuffers;
+        GatewayMetrics.registerGauge("throttle.dispatch.queueDepth", this::getQueueDepth);
+        log.info("Throttle event dispatcher started with " + workers + " workers of " + capacity + " events each");
+    }
+
+    /**
+     * Stops the workers after the events already queued are processed. Later events are processed on the
+     * publishing thread.
+     */
+    public synchronized void shutdown() {
+        RingBuffer[] ringBuffers = partitions;
+        if (ringBuffers == null) {
+            return;
+        }
+        partitions = null;
+        for (RingBuffer ringBuffer : ringBuffers) {
+            ringBuffer.running = false;
+            LockSupport.unpark(ringBuffer.worker);
+        }
+        for (RingBuffer ringBuffer : ringBuffers) {
+            try {
+                ringBuffer.worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Queues a task for the worker of the given partition key.
+     *
+     * @param partitionKey key whose tasks are processed in order, usually a throttle key
+     * @param task         processing of a throttle event
+     */
+    public void dispatch(String partitionKey, Runnable task) {
+        RingBuffer[] ringBuffers = partitions;
+        if (ringBuffers == null) {
+            task.run();
+            return;
+        }
+        int hash = partitionKey == null ? 0 : partitionKey.hashCode();
+        RingBuffer ringBuffer = ringBuffers[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % ringBuffers.length];
+        if (ringBuffer.offer(task)) {
+            return;
+        }
+        if (dropOnOverflow) {
+            GatewayMetrics.counter("throttle.dispatch.dropped").increment();
+        } else {
+            GatewayMetrics.counter("throttle.dispatch.overflowInline").increment();
+            task.run();
+        }
+    }
+
+    /**
+     * Returns the number of queued events over all partitions.
+     */
+    public long getQueueDepth() {
+        RingBuffer[] ringBuffers = partitions;
+        long depth = 0;
+        if (ringBuffers != null) {
+            for (RingBuffer ringBuffer : ringBuffers) {
+                depth += ringBuffer.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Bounded ring buffer with many producers and a single consumer. Producers claim a sequence by compare and set
+     * and publish the task into its slot; the consumer frees the slot before moving the head past it, so a producer
+     * which sees free capacity always finds its slot empty.
+     * <p/>
+     * An idle consumer parks until a producer publishes into the empty buffer. The consumer announces that it is
+     * waiting before it checks the slot once more, and a producer checks for a waiting consumer after publishing, so
+     * either the consumer sees the task or the producer unparks it.
+     */
+    private static class RingBuffer implements Runnable {
+        private final AtomicReferenceArray<Runnable> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head;
+        private volatile boolean running = true;
+        private volatile boolean waiting;
+        private Thread worker;
+
+        private RingBuffer(int capacity) {
+            this.slots = new AtomicReferenceArray<Runnable>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private boolean offer(Runnable task) {
+            long sequence;
+            do {
+                sequence = tail.get();
+                if (sequence - head > mask) {
+                    return false;
+                }
+            } while (!tail.compareAndSet(sequence, sequence + 1));
+            slots.set((int) sequence & mask, task);
+            if (waiting) {
+                LockSupport.unpark(worker);
+            }
+            return true;
+        }
+
+        private long size() {
+            return tail.get() - head;
+        }
+
+        @Override
+        public void run() {
+            long sequence = head;
+            while (running || sequence < tail.get()) {
+                int index = (int) sequence & mask;
+                Runnable task = slots.get(index);
+                if (task == null) {
+                    if (sequence < tail.get()) {
+                        // The sequence is claimed but its task is not published yet.
+                        Thread.yield();
+                    } else {
+                        waiting = true;
+                        if (slots.get(index) == null && running) {
+                            LockSupport.park(this);
+                        }
+                        waiting = false;
+                    }
+                    continue;
+                }
+                slots.lazySet(index, null);
+                head = ++sequence;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Error while processing a throttle event", e);
+                }
+            }
+        }
+    }
+}
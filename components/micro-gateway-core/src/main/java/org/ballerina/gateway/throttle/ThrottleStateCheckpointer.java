@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.ballerina.gateway.siddhi.extension.KeyCounterTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Periodically checkpoints the state of the registered {@link ThrottleStateParticipant}s to local memory mapped files
+ * and restores it when the gateway starts, so that restarts do not hand every consumer a fresh quota.
+ * <p/>
+ * Checkpoints are written from a single background thread, alternating between two slot files. Each slot carries a
+ * sequence number and a checksum, so a checkpoint interrupted by a crash never hides the previous one. The cost of a
+ * checkpoint depends on the number of throttle keys only, as the participants hold counters rather than events.
+ */
+public class ThrottleStateCheckpointer {
+    private static final Logger log = LoggerFactory.getLogger(ThrottleStateCheckpointer.class);
+    private static final ThrottleStateCheckpointer instance = new ThrottleStateCheckpointer();
+    private static final String SLOT_FILE_PREFIX = "throttle-state.";
+    private static final int MAGIC = 0x4D475453;
+    private static final int VERSION = 1;
+    // magic, version, sequence, timestamp, length and checksum
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 8;
+
+    private final List<ThrottleStateParticipant> participants = new CopyOnWriteArrayList<>();
+    private Map<String, ThrottleStateSnapshot> restoredStates = new HashMap<>();
+    private ScheduledExecutorService executor;
+    private CheckpointSlot[] slots;
+    private long sequence;
+
+    ThrottleStateCheckpointer() {
+    }
+
+    public static ThrottleStateCheckpointer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Loads the latest checkpoint from the given directory and starts checkpointing at the given interval.
+     *
+     * @param directory                directory the checkpoint files are kept in
+     * @param intervalInMilliSeconds   time between two checkpoints
+     */
+    public synchronized void init(Path directory, long intervalInMilliSeconds) {
+        if (executor != null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            slots = new CheckpointSlot[] { new CheckpointSlot(directory.resolve(SLOT_FILE_PREFIX + 0)),
+                    new CheckpointSlot(directory.resolve(SLOT_FILE_PREFIX + 1)) };
+            loadLatestCheckpoint();
+        } catch (IOException e) {
+            log.error("Unable to initialize the throttle state checkpoint directory " + directory, e);
+            return;
+        }
+        for (ThrottleStateParticipant participant : participants) {
+            restore(participant);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "throttle-state-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkpoint, intervalInMilliSeconds, intervalInMilliSeconds,
+                TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::checkpoint, "throttle-state-final-checkpoint"));
+        log.info("Throttle state is checkpointed to " + directory + " every " + intervalInMilliSeconds + "ms");
+    }
+
+    /**
+     * Registers a participant and restores its state if a valid checkpoint exists for it.
+     */
+    public void register(ThrottleStateParticipant participant) {
+        participants.add(participant);
+        restore(participant);
+    }
+
+    public void unregister(ThrottleStateParticipant participant) {
+        participants.remove(participant);
+    }
+
+    private synchronized void restore(ThrottleStateParticipant participant) {
+        ThrottleStateSnapshot snapshot = restoredStates.get(participant.getCheckpointId());
+        if (snapshot != null && snapshot.isValidAt(System.currentTimeMillis())) {
+            participant.restoreState(snapshot);
+            if (log.isDebugEnabled()) {
+                log.debug("Restored " + snapshot.getValues().size() + " throttle keys of "
+                        + participant.getCheckpointId());
+            }
+        }
+    }
+
+    /**
+     * Writes the state of all participants to the older of the two checkpoint slots.
+     */
+    synchronized void checkpoint() {
+        if (slots == null) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            Map<String, ThrottleStateSnapshot> snapshots = new HashMap<>();
+            for (ThrottleStateParticipant participant : participants) {
+                ThrottleStateSnapshot snapshot = participant.snapshotState();
+                ThrottleStateSnapshot existing = snapshots.get(participant.getCheckpointId());
+                snapshots.put(participant.getCheckpointId(), existing == null ? snapshot : existing.merge(snapshot));
+            }
+            byte[] data = serialize(snapshots);
+            sequence++;
+            slots[(int) (sequence % 2)].write(sequence, data);
+            // States which were not claimed by a participant until now belong to policies which are not deployed
+            restoredStates = new HashMap<>();
+            GatewayMetrics.counter("throttle.checkpoint.count").increment();
+            GatewayMetrics.counter("throttle.checkpoint.bytes").add(data.length);
+        } catch (IOException | RuntimeException e) {
+            GatewayMetrics.counter("throttle.checkpoint.failures").increment();
+            log.error("Error while checkpointing the throttle state", e);
+        } finally {
+            GatewayMetrics.counter("throttle.checkpoint.timeMicros")
+                    .add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+        }
+    }
+
+    private void loadLatestCheckpoint() throws IOException {
+        CheckpointSlot latestSlot = null;
+        for (CheckpointSlot slot : slots) {
+            if (slot.isValid() && (latestSlot == null || slot.getSequence() > latestSlot.getSequence())) {
+                latestSlot = slot;
+            }
+        }
+        if (latestSlot == null) {
+            return;
+        }
+        sequence = latestSlot.getSequence();
+        restoredStates = deserialize(latestSlot.read());
+    }
+
+    private static byte[] serialize(Map<String, ThrottleStateSnapshot> snapshots) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(snapshots.size());
+        for (Map.Entry<String, ThrottleStateSnapshot> entry : snapshots.entrySet()) {
+            ThrottleStateSnapshot snapshot = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(snapshot.getExpiryTime());
+            out.writeInt(snapshot.getValues().size());
+            final IOException[] error = new IOException[1];
+            snapshot.getValues().forEach((key, value) -> {
+                try {
+                    out.writeUTF(key);
+                    out.writeLong(value);
+                } catch (IOException e) {
+                    error[0] = e;
+                }
+            });
+            if (error[0] != null) {
+                throw error[0];
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, ThrottleStateSnapshot> deserialize(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        Map<String, ThrottleStateSnapshot> snapshots = new HashMap<>();
+        int snapshotCount = in.readInt();
+        for (int i = 0; i < snapshotCount; i++) {
+            String checkpointId = in.readUTF();
+            long expiryTime = in.readLong();
+            int valueCount = in.readInt();
+            KeyCounterTable values = new KeyCounterTable();
+            for (int j = 0; j < valueCount; j++) {
+                values.put(in.readUTF(), in.readLong());
+            }
+            snapshots.put(checkpointId, new ThrottleStateSnapshot(expiryTime, values));
+        }
+        return snapshots;
+    }
+
+    /**
+     * A checkpoint file, mapped into memory and grown whenever a checkpoint does not fit into it.
+     */
+    private static class CheckpointSlot {
+        private final Path path;
+        private MappedByteBuffer buffer;
+
+        private CheckpointSlot(Path path) throws IOException {
+            this.path = path;
+            if (Files.exists(path) && Files.size(path) >= HEADER_SIZE) {
+                map(Files.size(path));
+            }
+        }
+
+        private void map(long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        private void write(long sequence, byte[] data) throws IOException {
+            int requiredSize = HEADER_SIZE + data.length;
+            if (buffer == null || buffer.capacity() < requiredSize) {
+                // Leave room for growth so that the file is not remapped on every new key
+                map(requiredSize + (requiredSize >> 1));
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(data, 0, data.length);
+            // Invalidate the slot until the new checkpoint is completely written
+            buffer.putInt(0, 0);
+            buffer.force();
+            buffer.position(4);
+            buffer.putInt(VERSION);
+            buffer.putLong(sequence);
+            buffer.putLong(System.currentTimeMillis());
+            buffer.putInt(data.length);
+            buffer.putLong(checksum.getValue());
+            buffer.put(data);
+            buffer.force();
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+        }
+
+        private boolean isValid() {
+            if (buffer == null || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return false;
+            }
+            int length = buffer.getInt(24);
+            if (length < 0 || HEADER_SIZE + length > buffer.capacity()) {
+                return false;
+            }
+            CRC32 checksum = new CRC32();
+            checksum.update(read(), 0, length);
+            return checksum.getValue() == buffer.getLong(28);
+        }
+
+        private long getSequence() {
+            return buffer.getLong(8);
+        }
+
+        private byte[] read() {
+            byte[] data = new byte[buffer.getInt(24)];
+            buffer.position(HEADER_SIZE);
+            buffer.get(data);
+            return data;
+        }
+    }
+}
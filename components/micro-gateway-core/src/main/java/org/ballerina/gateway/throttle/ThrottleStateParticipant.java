@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+/**
+ * A throttle component whose state is periodically checkpointed by {@link ThrottleStateCheckpointer} and restored
+ * when the gateway starts.
+ */
+public interface ThrottleStateParticipant {
+
+    /**
+     * Returns the id the state is checkpointed against. The id must be stable across gateway restarts. Participants
+     * sharing an id have their snapshots merged and are all restored from the same state.
+     */
+    String getCheckpointId();
+
+    /**
+     * Returns a copy of the current state. Invoked from the checkpoint thread.
+     */
+    ThrottleStateSnapshot snapshotState();
+
+    /**
+     * Restores the state from a checkpoint which is still valid.
+     */
+    void restoreState(ThrottleStateSnapshot snapshot);
+}
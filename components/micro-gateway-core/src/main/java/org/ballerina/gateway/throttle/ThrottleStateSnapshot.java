@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.siddhi.extension.KeyCounterTable;
+
+/**
+ * Point in time copy of the state of a throttle component, as written to and read from a checkpoint.
+ * <p/>
+ * The state is a primitive value per throttle key and, for windowed components, the time at which the window the
+ * values belong to expires.
+ */
+public class ThrottleStateSnapshot {
+    public static final long NO_EXPIRY = -1;
+
+    private final long expiryTime;
+    private final KeyCounterTable values;
+
+    public ThrottleStateSnapshot(long expiryTime, KeyCounterTable values) {
+        this.expiryTime = expiryTime;
+        this.values = values;
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public KeyCounterTable getValues() {
+        return values;
+    }
+
+    /**
+     * Returns whether the snapshot still describes live state at the given time.
+     */
+    public boolean isValidAt(long currentTime) {
+        return expiryTime == NO_EXPIRY || expiryTime > currentTime;
+    }
+
+    /**
+     * Merges the given snapshot of a participant which shares the checkpoint id of this one. Values of the later
+     * window win, and within the same window the values of distinct keys are combined.
+     */
+    public ThrottleStateSnapshot merge(ThrottleStateSnapshot other) {
+        if (other.expiryTime > expiryTime) {
+            return other.merge(this);
+        }
+        if (other.expiryTime == expiryTime) {
+            other.values.forEach((key, value) -> {
+                if (value > values.get(key)) {
+                    values.put(key, value);
+                }
+            });
+        }
+        return this;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.auth;
+
+import org.ballerinalang.model.values.BString;
+import org.ballerinalang.model.values.BValue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuthenticationCacheTestCase {
+    private static final String TOKEN = "token";
+    private static final String ALLOWED_RESOURCE = "/pizzashack/1.0.0/menu:GET";
+    private static final String FORBIDDEN_RESOURCE = "/other/1.0.0/orders:GET";
+
+    private AuthenticationCache cache;
+
+    @Before
+    public void init() {
+        cache = new AuthenticationCache();
+        cache.init(1000, 100, -1, 0);
+    }
+
+    /**
+     * A token forbidden on one resource, e.g. because its application is not subscribed to the API, stays valid
+     * for the resources it was authorized for.
+     */
+    @Test
+    public void forbiddenResourceTest() {
+        BValue authorized = new BString("authorized");
+        BValue forbidden = new BString("forbidden");
+        cache.put(TOKEN, ALLOWED_RESOURCE, authorized, null, 0);
+        cache.put(TOKEN, FORBIDDEN_RESOURCE, forbidden, null, 10);
+        Assert.assertSame(authorized, cache.get(TOKEN, ALLOWED_RESOURCE, 20));
+        Assert.assertSame(forbidden, cache.get(TOKEN, FORBIDDEN_RESOURCE, 20));
+        Assert.assertNull(cache.get(TOKEN, "/pizzashack/1.0.0/order:POST", 20));
+    }
+
+    @Test
+    public void invalidTokenTest() {
+        BValue invalid = new BString("invalid");
+        cache.put(TOKEN, ALLOWED_RESOURCE, new BString("authorized"), null, 0);
+        cache.putInvalid(TOKEN, invalid, 10);
+        Assert.assertSame(invalid, cache.get(TOKEN, ALLOWED_RESOURCE, 20));
+        Assert.assertSame(invalid, cache.get(TOKEN, FORBIDDEN_RESOURCE, 20));
+        Assert.assertNull(cache.get(TOKEN, ALLOWED_RESOURCE, 1010));
+    }
+
+    @Test
+    public void refreshAheadTest() {
+        BValue authorized = new BString("authorized");
+        BValue refresh = new BString("refresh");
+        cache.init(1000, 100, 750, 0);
+        cache.put(TOKEN, ALLOWED_RESOURCE, authorized, refresh, 0);
+        Assert.assertSame(authorized, cache.get(TOKEN, ALLOWED_RESOURCE, 700));
+        Assert.assertSame(refresh, cache.get(TOKEN, ALLOWED_RESOURCE, 800));
+        Assert.assertSame(authorized, cache.get(TOKEN, ALLOWED_RESOURCE, 810));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.auth;
+
+import org.ballerinalang.model.values.BString;
+import org.ballerinalang.model.values.BValue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class KeyValidationCoalescerTestCase {
+    private static final String KEY = "token:/pizzashack/1.0.0/menu:GET";
+    // Callbacks cannot be handed null by a blocking queue, hence take overs are recorded as this value.
+    private static final BValue TAKE_OVER = new BString("takeOver");
+
+    private KeyValidationCoalescer coalescer;
+
+    @Before
+    public void init() {
+        coalescer = new KeyValidationCoalescer();
+    }
+
+    @Test
+    public void joinTest() throws InterruptedException {
+        BlockingQueue<BValue> first = new LinkedBlockingQueue<>();
+        BlockingQueue<BValue> second = new LinkedBlockingQueue<>();
+        BValue response = new BString("response");
+        Assert.assertTrue(coalescer.join(KEY, 10000, record(new LinkedBlockingQueue<>())));
+        Assert.assertFalse(coalescer.join(KEY, 10000, record(first)));
+        Assert.assertFalse(coalescer.join(KEY, 10000, record(second)));
+        Assert.assertEquals(1, coalescer.size());
+        coalescer.complete(KEY, response);
+        Assert.assertSame(response, first.poll(1, TimeUnit.SECONDS));
+        Assert.assertSame(response, second.poll(1, TimeUnit.SECONDS));
+        Assert.assertEquals(0, coalescer.size());
+        // The next caller validates the key again.
+        Assert.assertTrue(coalescer.join(KEY, 10000, record(new LinkedBlockingQueue<>())));
+    }
+
+    /**
+     * Only the first caller timing out on a validation takes it over. Callers timing out later join the validation
+     * of that caller.
+     */
+    @Test
+    public void timeoutTest() throws InterruptedException {
+        BlockingQueue<BValue> first = new LinkedBlockingQueue<>();
+        BlockingQueue<BValue> second = new LinkedBlockingQueue<>();
+        BlockingQueue<BValue> later = new LinkedBlockingQueue<>();
+        BValue response = new BString("response");
+        // The caller starting the validation never completes it.
+        Assert.assertTrue(coalescer.join(KEY, 10000, record(new LinkedBlockingQueue<>())));
+        Assert.assertFalse(coalescer.join(KEY, 50, record(first)));
+        Assert.assertFalse(coalescer.join(KEY, 300, record(second)));
+        Assert.assertSame(TAKE_OVER, first.poll(1, TimeUnit.SECONDS));
+        Assert.assertFalse(coalescer.join(KEY, 10000, record(later)));
+        // Completes the validation after the second caller timed out, but before it would time out once more.
+        Thread.sleep(400);
+        Assert.assertTrue(second.isEmpty());
+        coalescer.complete(KEY, response);
+        Assert.assertSame(response, second.poll(1, TimeUnit.SECONDS));
+        Assert.assertSame(response, later.poll(1, TimeUnit.SECONDS));
+        Assert.assertTrue(second.isEmpty());
+        Assert.assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void timeoutAfterCompletionTest() throws InterruptedException {
+        BlockingQueue<BValue> waiting = new LinkedBlockingQueue<>();
+        BValue response = new BString("response");
+        Assert.assertTrue(coalescer.join(KEY, 10000, record(new LinkedBlockingQueue<>())));
+        Assert.assertFalse(coalescer.join(KEY, 50, record(waiting)));
+        coalescer.complete(KEY, response);
+        Assert.assertSame(response, waiting.poll(1, TimeUnit.SECONDS));
+        // The timeout of a completed caller does not start a validation.
+        Thread.sleep(100);
+        Assert.assertTrue(waiting.isEmpty());
+        Assert.assertEquals(0, coalescer.size());
+    }
+
+    private static Consumer<BValue> record(BlockingQueue<BValue> responses) {
+        return response -> responses.add(response == null ? TAKE_OVER : response);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class OffHeapStoreTestCase {
+
+    /**
+     * Writing more than the maximum memory wraps the ring around, dropping the values written first while keeping
+     * the memory allocated within the maximum.
+     */
+    @Test
+    public void ringEvictionTest() {
+        OffHeapStore store = new OffHeapStore("test", 1024 * 1024);
+        byte[] value = new byte[1000];
+        for (int i = 0; i < 5000; i++) {
+            value[0] = (byte) i;
+            Assert.assertTrue(store.put("key" + i, value));
+        }
+        Assert.assertTrue(store.getAllocatedBytes() <= 1024 * 1024);
+        Assert.assertNull(store.get("key0"));
+        byte[] stored = store.get("key4999");
+        Assert.assertNotNull(stored);
+        Assert.assertEquals((byte) 4999, stored[0]);
+    }
+
+    @Test
+    public void replaceAndRemoveTest() {
+        OffHeapStore store = new OffHeapStore("test", 1024 * 1024);
+        store.put("key", "first".getBytes(StandardCharsets.UTF_8));
+        store.put("key", "second".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("second", new String(store.get("key"), StandardCharsets.UTF_8));
+        store.remove("key");
+        Assert.assertNull(store.get("key"));
+        Assert.assertFalse(store.put("large", new byte[1024 * 1024]));
+    }
+}
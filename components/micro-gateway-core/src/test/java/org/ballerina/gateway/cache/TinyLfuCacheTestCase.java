@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TinyLfuCacheTestCase {
+
+    /**
+     * Popular keys must stay cached while a stream of keys seen only once passes through a cache too small to hold
+     * both.
+     */
+    @Test
+    public void scanResistanceTest() {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>("test", 1000, 60000);
+        Random random = new Random(1);
+        int hits = 0;
+        int reads = 0;
+        long scanKey = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 500; i++) {
+                String key = "hot" + random.nextInt(500);
+                reads++;
+                if (cache.get(key, 0) != null) {
+                    hits++;
+                } else {
+                    cache.put(key, i, 0);
+                }
+            }
+            for (int i = 0; i < 2000; i++) {
+                String key = "scan" + scanKey++;
+                if (cache.get(key, 0) == null) {
+                    cache.put(key, i, 0);
+                }
+            }
+        }
+        Assert.assertTrue("Cache grew beyond its maximum size", cache.size() <= 1000);
+        Assert.assertTrue("Hit rate of the popular keys was " + hits / (double) reads, hits > reads * 0.9);
+    }
+
+    @Test
+    public void expiryTest() {
+        TinyLfuCache<String, Integer> cache = new TinyLfuCache<>("test", 10, 1000);
+        cache.put("key", 1, 0);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("key", 999));
+        Assert.assertNull(cache.get("key", 1000));
+        Assert.assertEquals(Integer.valueOf(2), cache.compute("key", previous -> previous == null ? 2 : 3, 1000));
+        Assert.assertEquals(Integer.valueOf(3), cache.compute("key", previous -> previous == null ? 2 : 3, 1500));
+    }
+}
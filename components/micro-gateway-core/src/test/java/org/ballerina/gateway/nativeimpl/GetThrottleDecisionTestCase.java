@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.nativeimpl;
+
+import org.ballerina.gateway.throttle.ThrottleDecisionTable;
+import org.ballerinalang.model.values.BInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GetThrottleDecisionTestCase {
+
+    /**
+     * Every lookup of a decision returns the same value, which callers must not be able to alter.
+     */
+    @Test
+    public void sharedDecisionTest() {
+        ThrottleDecisionTable.getInstance().put("getThrottleDecision/throttled", 2000, false);
+        ThrottleDecisionTable.getInstance().put("getThrottleDecision/stopOnQuota", 2000, true);
+
+        BInteger notThrottled = GetThrottleDecision.getDecision("getThrottleDecision/unknown", 1000);
+        BInteger throttled = GetThrottleDecision.getDecision("getThrottleDecision/throttled", 1000);
+        BInteger stopOnQuota = GetThrottleDecision.getDecision("getThrottleDecision/stopOnQuota", 1000);
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, notThrottled.intValue());
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED, throttled.intValue());
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED_STOP_ON_QUOTA, stopOnQuota.intValue());
+
+        Assert.assertSame(notThrottled, GetThrottleDecision.getDecision("getThrottleDecision/throttled", 2001));
+        Assert.assertSame(throttled, GetThrottleDecision.getDecision("getThrottleDecision/throttled", 2000));
+        Assert.assertSame(stopOnQuota, GetThrottleDecision.getDecision("getThrottleDecision/stopOnQuota", 2000));
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, notThrottled.intValue());
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED, throttled.intValue());
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED_STOP_ON_QUOTA, stopOnQuota.intValue());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+
+public class CalendarWindowTestCase {
+    // Offset of India Standard Time, which is UTC+05:30.
+    private static final long IST_START_TIME = -(5 * 60 + 30) * 60 * 1000L;
+
+    @Test
+    public void minuteWindowTest() {
+        CalendarWindow window = new CalendarWindow(1, "min", 0);
+        assertWindowEnd("2024-03-04T12:35:00Z", window, "2024-03-04T12:34:56.789Z");
+        assertWindowEnd("2024-03-04T12:36:00Z", window, "2024-03-04T12:35:00Z");
+        window = new CalendarWindow(5, "min", 0);
+        assertWindowEnd("2024-03-04T12:35:00Z", window, "2024-03-04T12:34:56.789Z");
+    }
+
+    @Test
+    public void weekWindowTest() {
+        CalendarWindow window = new CalendarWindow(1, "week", 0);
+        // 2024-03-03 was a Sunday.
+        assertWindowEnd("2024-03-04T00:00:00Z", window, "2024-03-03T23:59:59.999Z");
+        assertWindowEnd("2024-03-11T00:00:00Z", window, "2024-03-04T00:00:00Z");
+        // Weeks crossing the end of the year.
+        assertWindowEnd("2025-01-06T00:00:00Z", window, "2024-12-31T12:00:00Z");
+        assertWindowEnd("2025-01-06T00:00:00Z", window, "2025-01-05T23:59:59.999Z");
+    }
+
+    @Test
+    public void monthWindowTest() {
+        CalendarWindow window = new CalendarWindow(1, "month", 0);
+        assertWindowEnd("2024-02-01T00:00:00Z", window, "2024-01-31T23:59:59.999Z");
+        assertWindowEnd("2024-03-01T00:00:00Z", window, "2024-02-01T00:00:00Z");
+        assertWindowEnd("2025-01-01T00:00:00Z", window, "2024-12-31T23:59:59.999Z");
+        // Quarters start in January, April, July and October.
+        window = new CalendarWindow(3, "month", 0);
+        assertWindowEnd("2024-07-01T00:00:00Z", window, "2024-05-10T00:00:00Z");
+        assertWindowEnd("2024-10-01T00:00:00Z", window, "2024-07-01T00:00:00Z");
+    }
+
+    @Test
+    public void leapYearTest() {
+        CalendarWindow window = new CalendarWindow(1, "month", 0);
+        assertWindowEnd("2024-03-01T00:00:00Z", window, "2024-02-28T23:59:59.999Z");
+        assertWindowEnd("2024-03-01T00:00:00Z", window, "2024-02-29T23:59:59.999Z");
+        assertWindowEnd("2023-03-01T00:00:00Z", window, "2023-02-28T23:59:59.999Z");
+        window = new CalendarWindow(1, "day", 0);
+        assertWindowEnd("2024-03-01T00:00:00Z", window, "2024-02-29T12:00:00Z");
+        window = new CalendarWindow(1, "year", 0);
+        assertWindowEnd("2025-01-01T00:00:00Z", window, "2024-02-29T12:00:00Z");
+    }
+
+    @Test
+    public void yearWindowTest() {
+        CalendarWindow window = new CalendarWindow(1, "year", 0);
+        assertWindowEnd("2025-01-01T00:00:00Z", window, "2024-12-31T23:59:59.999Z");
+        assertWindowEnd("2026-01-01T00:00:00Z", window, "2025-01-01T00:00:00Z");
+        Assert.assertEquals(365L * 24 * 60 * 60 * 1000, window.getNominalLength());
+    }
+
+    /**
+     * Windows of a policy in another time zone end at midnight of that time zone.
+     */
+    @Test
+    public void startTimeTest() {
+        CalendarWindow window = new CalendarWindow(1, "day", IST_START_TIME);
+        assertWindowEnd("2024-03-04T18:30:00Z", window, "2024-03-04T12:00:00Z");
+        assertWindowEnd("2024-03-05T18:30:00Z", window, "2024-03-04T18:30:00Z");
+        window = new CalendarWindow(1, "month", IST_START_TIME);
+        assertWindowEnd("2024-02-29T18:30:00Z", window, "2024-02-29T18:29:59.999Z");
+        assertWindowEnd("2024-03-31T18:30:00Z", window, "2024-02-29T18:30:00Z");
+        window = new CalendarWindow(1, "week", IST_START_TIME);
+        assertWindowEnd("2024-03-03T18:30:00Z", window, "2024-03-03T18:29:59.999Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedTimeUnitTest() {
+        new CalendarWindow(1, "fortnight", 0);
+    }
+
+    private static void assertWindowEnd(String expected, CalendarWindow window, String currentTime) {
+        Assert.assertEquals(currentTime, Instant.parse(expected).toEpochMilli(),
+                window.getWindowEnd(Instant.parse(currentTime).toEpochMilli()));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerinalang.siddhi.core.SiddhiAppRuntime;
+import org.ballerinalang.siddhi.core.SiddhiManager;
+import org.ballerinalang.siddhi.core.event.Event;
+import org.ballerinalang.siddhi.core.query.output.callback.QueryCallback;
+import org.ballerinalang.siddhi.core.stream.input.InputHandler;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class EmitOnStateChangeTestCase {
+    private static final String DECISION_STREAM = "define stream decisionStream (throttleKey string, "
+            + "isThrottled bool);";
+
+    private List<Object[]> emitted;
+
+    @Before
+    public void init() {
+        emitted = new ArrayList<Object[]>();
+    }
+
+    @Test
+    public void emitOnStateChangeTest() throws InterruptedException {
+        SiddhiAppRuntime runtime = createRuntime("throttler:emitOnStateChange(throttleKey, isThrottled)");
+        InputHandler inputHandler = runtime.getInputHandler("decisionStream");
+        inputHandler.send(1000, new Object[] { "gold", false });
+        inputHandler.send(1001, new Object[] { "gold", false });
+        inputHandler.send(1002, new Object[] { "silver", false });
+        inputHandler.send(1003, new Object[] { "gold", true });
+        inputHandler.send(1004, new Object[] { "gold", true });
+        inputHandler.send(1005, new Object[] { "gold", false });
+        inputHandler.send(1006, new Object[] { "gold", false });
+        runtime.shutdown();
+        Assert.assertEquals(5, emitted.size());
+        assertEmitted(0, "gold", false);
+        assertEmitted(1, "silver", false);
+        assertEmitted(2, "gold", true);
+        assertEmitted(3, "gold", true);
+        assertEmitted(4, "gold", false);
+    }
+
+    /**
+     * The decision of a key evicted for having been idle is emitted again.
+     */
+    @Test
+    public void idleTimeTest() throws InterruptedException {
+        SiddhiAppRuntime runtime = createRuntime("throttler:emitOnStateChange(throttleKey, isThrottled, 100, 1000)");
+        InputHandler inputHandler = runtime.getInputHandler("decisionStream");
+        inputHandler.send(1000, new Object[] { "gold", false });
+        inputHandler.send(1500, new Object[] { "gold", false });
+        // The sweep runs when a new key is stored.
+        inputHandler.send(3000, new Object[] { "silver", false });
+        inputHandler.send(3001, new Object[] { "gold", false });
+        runtime.shutdown();
+        Assert.assertEquals(3, emitted.size());
+        assertEmitted(0, "gold", false);
+        assertEmitted(1, "silver", false);
+        assertEmitted(2, "gold", false);
+    }
+
+    private SiddhiAppRuntime createRuntime(String processor) {
+        String query = "@info(name = 'query1') "
+                + "from decisionStream#" + processor + " "
+                + "select throttleKey, isThrottled "
+                + "insert into alertStream ;";
+        SiddhiAppRuntime runtime = new SiddhiManager().createSiddhiAppRuntime("@app:playback " + DECISION_STREAM
+                + query);
+        runtime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        emitted.add(event.getData());
+                    }
+                }
+            }
+        });
+        runtime.start();
+        return runtime;
+    }
+
+    private void assertEmitted(int index, String throttleKey, boolean isThrottled) {
+        Assert.assertEquals(throttleKey, emitted.get(index)[0]);
+        Assert.assertEquals(isThrottled, emitted.get(index)[1]);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerinalang.siddhi.core.SiddhiAppRuntime;
+import org.ballerinalang.siddhi.core.SiddhiManager;
+import org.ballerinalang.siddhi.core.event.Event;
+import org.ballerinalang.siddhi.core.query.output.callback.QueryCallback;
+import org.ballerinalang.siddhi.core.stream.input.InputHandler;
+import org.ballerinalang.siddhi.core.util.EventPrinter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ThrottlePolicyEvaluatorTestCase {
+    private static final String REQUEST_STREAM = "define stream requestStream (messageID string, appKey string, "
+            + "appTier string, subscriptionKey string, subscriptionTier string);";
+    private Map<String, List<Boolean>> evaluatorDecisions;
+    private Map<String, List<Boolean>> windowDecisions;
+
+    @Before
+    public void init() {
+        evaluatorDecisions = new HashMap<>();
+        windowDecisions = new HashMap<>();
+    }
+
+    /**
+     * Gold and Silver share a one minute window in the evaluator. The decisions taken must match those of the query
+     * the toolkit generated for each policy before the evaluator, which counts the messages of the eligible events of
+     * a timeBatch window grouped by throttle key. Both run in playback mode so that the windows roll over at the
+     * timestamps of the events.
+     */
+    @Test
+    public void sharedWindowCountsTest() throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String query = "" + "@info(name = 'evaluator') " + "from requestStream#throttler:evaluate("
+                + "\"0,Gold,3,1,min,true;0,Silver,2,1,min,true;1,Bronze,2,1,min,false\", "
+                + "appTier, appKey, subscriptionTier, subscriptionKey) "
+                + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp "
+                + "insert into evaluatorStream ;"
+                + getPolicyQuery("gold", "appTier", "Gold", "appKey", 3)
+                + getPolicyQuery("silver", "appTier", "Silver", "appKey", 2)
+                + getPolicyQuery("bronze", "subscriptionTier", "Bronze", "subscriptionKey", 2);
+
+        SiddhiAppRuntime executionPlanRuntime = siddhiManager.createSiddhiAppRuntime("@app:playback "
+                + REQUEST_STREAM + query);
+        executionPlanRuntime.addCallback("evaluator", new DecisionCallback(evaluatorDecisions));
+        executionPlanRuntime.addCallback("gold", new DecisionCallback(windowDecisions));
+        executionPlanRuntime.addCallback("silver", new DecisionCallback(windowDecisions));
+        executionPlanRuntime.addCallback("bronze", new DecisionCallback(windowDecisions));
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("requestStream");
+        executionPlanRuntime.start();
+        // A minute boundary, so that every window in the test starts at a known time.
+        long minute = 1500000000000L;
+        inputHandler.send(minute + 1000, new Object[] { "1", "app1", "Gold", "sub1", "Bronze" });
+        inputHandler.send(minute + 2000, new Object[] { "2", "app2", "Silver", "sub2", "Bronze" });
+        inputHandler.send(minute + 3000, new Object[] { "3", "app1", "Gold", "sub1", "Bronze" });
+        inputHandler.send(minute + 4000, new Object[] { "4", "app2", "Silver", "sub2", "Unlimited" });
+        // app1 moving to the Silver tier is counted separately from its Gold requests
+        inputHandler.send(minute + 5000, new Object[] { "5", "app1", "Silver", "sub1", "Unlimited" });
+        inputHandler.send(minute + 6000, new Object[] { "6", "app1", "Gold", "sub3", "Bronze" });
+        inputHandler.send(minute + 7000, new Object[] { "7", "app3", "Unlimited", "sub3", "Bronze" });
+        // The next minute starts from zero.
+        inputHandler.send(minute + 65000, new Object[] { "8", "app1", "Gold", "sub1", "Bronze" });
+        inputHandler.send(minute + 66000, new Object[] { "9", "app2", "Silver", "sub2", "Bronze" });
+
+        Assert.assertEquals(windowDecisions, evaluatorDecisions);
+        Assert.assertEquals(Arrays.asList(false, false, false, true, false), evaluatorDecisions.get("app1"));
+        Assert.assertEquals(Arrays.asList(false, true, false), evaluatorDecisions.get("app2"));
+        Assert.assertEquals(Arrays.asList(false, true, false), evaluatorDecisions.get("sub1"));
+        Assert.assertEquals(Arrays.asList(false, false), evaluatorDecisions.get("sub2"));
+        Assert.assertEquals(Arrays.asList(false, true), evaluatorDecisions.get("sub3"));
+        Assert.assertNull("Requests of undeployed tiers should not be evaluated", evaluatorDecisions.get("app3"));
+        executionPlanRuntime.shutdown();
+    }
+
+    /**
+     * With an amount the evaluator counts bytes instead of requests, so a bandwidth policy throttles a key once the
+     * sum of its request and response sizes reaches the data amount of the policy.
+     */
+    @Test
+    public void bandwidthAmountTest() throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream sizeStream (appKey string, appTier string, requestSize long, "
+                + "responseSize long);";
+        String query = "" + "@info(name = 'evaluator') " + "from sizeStream#throttler:evaluate("
+                + "\"0,Download,1024,1,min,true\", requestSize + responseSize, appTier, appKey) "
+                + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp "
+                + "insert into evaluatorStream ;";
+
+        SiddhiAppRuntime executionPlanRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        executionPlanRuntime.addCallback("evaluator", new DecisionCallback(evaluatorDecisions));
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("sizeStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[] { "app1", "Download", 100L, 0L });
+        inputHandler.send(new Object[] { "app1", "Download", 0L, 900L });
+        inputHandler.send(new Object[] { "app2", "Download", 100L, 0L });
+        inputHandler.send(new Object[] { "app1", "Download", 0L, 24L });
+        Thread.sleep(500);
+
+        Assert.assertEquals(Arrays.asList(false, false, true), evaluatorDecisions.get("app1"));
+        Assert.assertEquals(Arrays.asList(false), evaluatorDecisions.get("app2"));
+        executionPlanRuntime.shutdown();
+    }
+
+    @Test
+    public void sketchHeavyHitterTest() throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String stream = "define stream unauthenticatedStream (clientKey string, tier string);";
+        String query = "" + "@info(name = 'evaluator') " + "from unauthenticatedStream#throttler:evaluate("
+                + "\"0,Unauthenticated,3,1,min,true,sketch:1024\", tier, clientKey) "
+                + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp "
+                + "insert into evaluatorStream ;";
+
+        SiddhiAppRuntime executionPlanRuntime = siddhiManager.createSiddhiAppRuntime(stream + query);
+        executionPlanRuntime.addCallback("evaluator", new DecisionCallback(evaluatorDecisions));
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("unauthenticatedStream");
+        executionPlanRuntime.start();
+        for (int i = 0; i < 100; i++) {
+            inputHandler.send(new Object[] { "10.0.0." + i, "Unauthenticated" });
+        }
+        for (int i = 0; i < 4; i++) {
+            inputHandler.send(new Object[] { "10.0.1.1", "Unauthenticated" });
+        }
+        Thread.sleep(500);
+
+        // Only the decisions of throttled keys are emitted.
+        Assert.assertEquals(Arrays.asList(true, true), evaluatorDecisions.get("10.0.1.1"));
+        Assert.assertEquals(1, evaluatorDecisions.size());
+        executionPlanRuntime.shutdown();
+    }
+
+    /**
+     * Returns the Siddhi equivalent of the queries policy.mustache generated for a policy before the evaluator.
+     */
+    private static String getPolicyQuery(String name, String tierAttribute, String tier, String keyAttribute,
+            int count) {
+        return "@info(name = '" + name + "Eligibility') "
+                + "from requestStream "
+                + "select messageID, (" + tierAttribute + " == '" + tier + "') as isEligible, "
+                + keyAttribute + " as throttleKey "
+                + "insert into " + name + "EligibilityStream ;"
+                + "@info(name = '" + name + "') "
+                + "from " + name + "EligibilityStream#throttler:timeBatch(1 min, 0)[isEligible == true] "
+                + "select throttleKey, count(messageID) >= " + count + " as isThrottled, expiryTimeStamp "
+                + "group by throttleKey "
+                + "insert into windowStream ;";
+    }
+
+    private static class DecisionCallback extends QueryCallback {
+        private final Map<String, List<Boolean>> decisions;
+
+        private DecisionCallback(Map<String, List<Boolean>> decisions) {
+            this.decisions = decisions;
+        }
+
+        @Override
+        public synchronized void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+            EventPrinter.print(timeStamp, inEvents, removeEvents);
+            if (inEvents != null) {
+                for (Event event : inEvents) {
+                    String throttleKey = (String) event.getData()[0];
+                    if (!decisions.containsKey(throttleKey)) {
+                        decisions.put(throttleKey, new ArrayList<Boolean>());
+                    }
+                    decisions.get(throttleKey).add((Boolean) event.getData()[1]);
+                }
+            }
+        }
+    }
+}
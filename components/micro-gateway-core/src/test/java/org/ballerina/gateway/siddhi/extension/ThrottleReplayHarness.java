@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerinalang.siddhi.core.SiddhiAppRuntime;
+import org.ballerinalang.siddhi.core.SiddhiManager;
+import org.ballerinalang.siddhi.core.event.Event;
+import org.ballerinalang.siddhi.core.query.output.callback.QueryCallback;
+import org.ballerinalang.siddhi.core.stream.input.InputHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a request trace through the throttle policies of the gateway on a virtual clock.
+ * <p/>
+ * The Siddhi app mirrors the one the toolkit generates from policy.mustache: a throttler:evaluate query over the
+ * requests, whose responses are not counted, an optional throttler:evaluate query counting the bytes of requests and
+ * responses, and throttler:emitOnStateChange over the decisions of both. The levels of the evaluator are given as the
+ * tier and throttle key attributes the template lists, as the toolkit only adds the custom key level when a
+ * subscription policy counts requests per attribute. The app runs in playback mode, so the extensions read the time
+ * from the timestamp of the event being processed and windows roll over as the trace advances, without any sleeps.
+ * The throttler:async hand-off is left out, so that the cost of the evaluation is measured on the replaying thread.
+ * <p/>
+ * Traces are either synthetic or recorded as CSV lines of timestamp,appKey,appTier,subscriptionKey,subscriptionTier,
+ * customKey,apiKey,apiTier,resourceKey,resourceTier,requestSize,responseSize. Large traces are replayed by running
+ * the main method on the test classpath, with the levels and the bandwidth policies given as system properties:
+ * <pre>
+ * ThrottleReplayHarness "0,Gold,5000,1,min,true" 10000000 100000 20000
+ * ThrottleReplayHarness "0,Gold,5000,1,min,true" trace.csv
+ * -Dlevels="appTier, appKey, subscriptionTier, subscriptionKey, subscriptionTier, customKey"
+ *     -DbandwidthPolicyTable="0,Gold,1048576,1,min,true" ThrottleReplayHarness "2,Gold,10,1,min,true" trace.csv
+ * </pre>
+ */
+public class ThrottleReplayHarness {
+    /**
+     * Levels of the application, subscription, API and resource policies.
+     */
+    public static final String LEVELS = "appTier, appKey, subscriptionTier, subscriptionKey, apiTier, apiKey, "
+            + "resourceTier, resourceKey";
+    /**
+     * Levels when subscription policies count requests per attribute, with the custom key level inserted after the
+     * subscription level.
+     */
+    public static final String CUSTOM_KEY_LEVELS = "appTier, appKey, subscriptionTier, subscriptionKey, "
+            + "subscriptionTier, customKey, apiTier, apiKey, resourceTier, resourceKey";
+    private static final int TRACE_FIELDS = 12;
+    private static final String REQUEST_STREAM = "define stream requestStream (appKey string, appTier string, "
+            + "subscriptionKey string, subscriptionTier string, customKey string, apiKey string, apiTier string, "
+            + "resourceKey string, resourceTier string, requestSize long, responseSize long);";
+    private static final String REQUEST_QUERY = "@info(name = 'evaluator') from requestStream[responseSize == 0]"
+            + "#throttler:evaluate(\"%s\", %s) "
+            + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp insert into resultStream ;";
+    private static final String BANDWIDTH_QUERY = "@info(name = 'bandwidthEvaluator') from requestStream"
+            + "#throttler:evaluate(\"%s\", requestSize + responseSize, %s) "
+            + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp insert into resultStream ;";
+    private static final String STATE_CHANGE_QUERY = "@info(name = 'stateChange') from resultStream"
+            + "#throttler:emitOnStateChange(throttleKey, isThrottled) "
+            + "select throttleKey, isThrottled, stopOnQuota, expiryTimeStamp insert into globalThrottleStream ;";
+
+    private final String policyTable;
+    private final String bandwidthPolicyTable;
+    private final String levels;
+    private boolean retainStateChanges;
+
+    /**
+     * @param policyTable policies as generated by the toolkit, with levels 0 to 3 for the application, subscription,
+     *                    API and resource tiers
+     */
+    public ThrottleReplayHarness(String policyTable) {
+        this(policyTable, "", LEVELS);
+    }
+
+    /**
+     * @param policyTable          request count policies as generated by the toolkit
+     * @param bandwidthPolicyTable bandwidth policies as generated by the toolkit, or an empty string if none are
+     *                             deployed
+     * @param levels               tier and throttle key attributes of the levels the policy tables refer to, in the
+     *                             order of the levels
+     */
+    public ThrottleReplayHarness(String policyTable, String bandwidthPolicyTable, String levels) {
+        this.policyTable = policyTable;
+        this.bandwidthPolicyTable = bandwidthPolicyTable;
+        this.levels = levels;
+    }
+
+    /**
+     * Keeps every state change in the report, rather than only counting them. Retained state changes add to the peak
+     * heap usage of the replay.
+     */
+    public ThrottleReplayHarness retainStateChanges() {
+        this.retainStateChanges = true;
+        return this;
+    }
+
+    private String getSiddhiApp() {
+        StringBuilder siddhiApp = new StringBuilder("@app:playback ").append(REQUEST_STREAM)
+                .append(String.format(REQUEST_QUERY, policyTable, levels));
+        if (!bandwidthPolicyTable.isEmpty()) {
+            siddhiApp.append(String.format(BANDWIDTH_QUERY, bandwidthPolicyTable, levels));
+        }
+        return siddhiApp.append(STATE_CHANGE_QUERY).toString();
+    }
+
+    /**
+     * Replays the trace at full speed. Events must be in timestamp order.
+     */
+    public Report replay(Iterator<TraceEvent> trace) throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        SiddhiAppRuntime runtime = siddhiManager.createSiddhiAppRuntime(getSiddhiApp());
+        Report report = new Report();
+        QueryCallback evaluatorCallback = new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        report.evaluatedDecisions++;
+                        if ((Boolean) event.getData()[1]) {
+                            report.throttledDecisions++;
+                        }
+                    }
+                }
+            }
+        };
+        runtime.addCallback("evaluator", evaluatorCallback);
+        if (!bandwidthPolicyTable.isEmpty()) {
+            runtime.addCallback("bandwidthEvaluator", evaluatorCallback);
+        }
+        runtime.addCallback("stateChange", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    report.stateChangeCount += inEvents.length;
+                    if (!retainStateChanges) {
+                        return;
+                    }
+                    for (Event event : inEvents) {
+                        report.stateChanges.add(new Decision(event.getTimestamp(), (String) event.getData()[0],
+                                (Boolean) event.getData()[1], (Long) event.getData()[3]));
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = runtime.getInputHandler("requestStream");
+        runtime.start();
+        try {
+            List<MemoryPoolMXBean> heapPools = resetHeapPeakUsage();
+            long startTime = System.nanoTime();
+            while (trace.hasNext()) {
+                TraceEvent event = trace.next();
+                inputHandler.send(event.timestamp, event.data);
+                report.events++;
+            }
+            report.elapsedNanos = System.nanoTime() - startTime;
+            for (MemoryPoolMXBean pool : heapPools) {
+                report.peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        } finally {
+            runtime.shutdown();
+        }
+        return report;
+    }
+
+    private static List<MemoryPoolMXBean> resetHeapPeakUsage() {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        return heapPools;
+    }
+
+    /**
+     * Returns a synthetic trace of requests arriving at a constant rate. The keys of the requests follow a power law,
+     * so that a few applications send most of the requests, as in production traffic. Every request carries the same
+     * tiers, and each application calls one of four resources of a single API. The trace holds requests only, without
+     * custom keys, sizes or responses.
+     *
+     * @param eventCount        number of requests
+     * @param keyCount          number of applications
+     * @param requestsPerSecond arrival rate on the virtual clock
+     * @param startTime         timestamp of the first request
+     * @param skew              1 for uniformly distributed keys, larger values concentrate requests on fewer keys
+     * @param tiers             application, subscription, API and resource tiers of the requests
+     */
+    public static Iterator<TraceEvent> syntheticTrace(long eventCount, int keyCount, int requestsPerSecond,
+            long startTime, double skew, String... tiers) {
+        Random random = new Random(eventCount ^ keyCount);
+        return new Iterator<TraceEvent>() {
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return index < eventCount;
+            }
+
+            @Override
+            public TraceEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long timestamp = startTime + index * TimeUnit.SECONDS.toMillis(1) / requestsPerSecond;
+                index++;
+                int key = (int) (keyCount * Math.pow(random.nextDouble(), skew));
+                return new TraceEvent(timestamp, new Object[] { "app" + key + ":user", tiers[0],
+                        "app" + key + ":/api:1.0", tiers[1], "", "/api:1.0", tiers[2],
+                        "/api/1.0/resource" + (key & 3), tiers[3], 0L, 0L });
+            }
+        };
+    }
+
+    /**
+     * Returns a recorded trace, read lazily from a CSV file. Empty lines and lines starting with # are skipped.
+     */
+    public static Iterator<TraceEvent> csvTrace(String path) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+        return new Iterator<TraceEvent>() {
+            private TraceEvent nextEvent = read();
+
+            @Override
+            public boolean hasNext() {
+                return nextEvent != null;
+            }
+
+            @Override
+            public TraceEvent next() {
+                if (nextEvent == null) {
+                    throw new NoSuchElementException();
+                }
+                TraceEvent event = nextEvent;
+                nextEvent = read();
+                return event;
+            }
+
+            private TraceEvent read() {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.isEmpty() || line.startsWith("#")) {
+                            continue;
+                        }
+                        String[] fields = line.split(",", -1);
+                        if (fields.length != TRACE_FIELDS) {
+                            throw new IllegalArgumentException("Expected " + TRACE_FIELDS + " fields in trace line: "
+                                    + line);
+                        }
+                        Object[] data = new Object[TRACE_FIELDS - 1];
+                        System.arraycopy(fields, 1, data, 0, TRACE_FIELDS - 3);
+                        data[TRACE_FIELDS - 3] = Long.parseLong(fields[TRACE_FIELDS - 2]);
+                        data[TRACE_FIELDS - 2] = Long.parseLong(fields[TRACE_FIELDS - 1]);
+                        return new TraceEvent(Long.parseLong(fields[0]), data);
+                    }
+                    reader.close();
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("Usage: ThrottleReplayHarness <policyTable> <traceFile>");
+            System.err.println("       ThrottleReplayHarness <policyTable> <eventCount> <keyCount> "
+                    + "<requestsPerSecond>");
+            System.exit(1);
+        }
+        Iterator<TraceEvent> trace;
+        if (args.length == 2) {
+            trace = csvTrace(args[1]);
+        } else {
+            trace = syntheticTrace(Long.parseLong(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    System.currentTimeMillis(), 2, "Gold", "Gold", "Gold", "Gold");
+        }
+        System.out.println(new ThrottleReplayHarness(args[0], System.getProperty("bandwidthPolicyTable", ""),
+                System.getProperty("levels", LEVELS)).replay(trace));
+    }
+
+    /**
+     * A request of the trace, with the attributes of the request stream in declaration order.
+     */
+    public static class TraceEvent {
+        private final long timestamp;
+        private final Object[] data;
+
+        public TraceEvent(long timestamp, Object[] data) {
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Throttle decision published to the gateway, i.e. a change of the throttle state of a key.
+     */
+    public static class Decision {
+        private final long timestamp;
+        private final String throttleKey;
+        private final boolean isThrottled;
+        private final long expiryTimeStamp;
+
+        private Decision(long timestamp, String throttleKey, boolean isThrottled, long expiryTimeStamp) {
+            this.timestamp = timestamp;
+            this.throttleKey = throttleKey;
+            this.isThrottled = isThrottled;
+            this.expiryTimeStamp = expiryTimeStamp;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getThrottleKey() {
+            return throttleKey;
+        }
+
+        public boolean isThrottled() {
+            return isThrottled;
+        }
+
+        public long getExpiryTimeStamp() {
+            return expiryTimeStamp;
+        }
+    }
+
+    /**
+     * Outcome of a replay. The heap high water mark is the sum of the peak usage of the heap memory pools while the
+     * trace was replayed, and includes the garbage not yet collected.
+     */
+    public static class Report {
+        private long events;
+        private long elapsedNanos;
+        private long peakHeapBytes;
+        private long evaluatedDecisions;
+        private long throttledDecisions;
+        private long stateChangeCount;
+        private final List<Decision> stateChanges = new ArrayList<>();
+
+        public long getEvents() {
+            return events;
+        }
+
+        public double getEventsPerSecond() {
+            return elapsedNanos == 0 ? 0 : events * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        public long getEvaluatedDecisions() {
+            return evaluatedDecisions;
+        }
+
+        public long getThrottledDecisions() {
+            return throttledDecisions;
+        }
+
+        public long getStateChangeCount() {
+            return stateChangeCount;
+        }
+
+        /**
+         * Returns the state changes if the harness retains them, otherwise an empty list.
+         */
+        public List<Decision> getStateChanges() {
+            return stateChanges;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("events=%d, eventsPerSecond=%.0f, peakHeapMB=%.1f, evaluatedDecisions=%d, "
+                    + "throttledDecisions=%d, stateChanges=%d", events, getEventsPerSecond(),
+                    peakHeapBytes / (1024.0 * 1024.0), evaluatedDecisions, throttledDecisions, stateChangeCount);
+        }
+    }
+}
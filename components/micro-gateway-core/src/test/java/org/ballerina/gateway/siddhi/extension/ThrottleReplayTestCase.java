@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ThrottleReplayTestCase {
+    private static final long START_TIME = TimeUnit.DAYS.toMillis(17800);
+
+    /**
+     * Ten minutes of requests of a single application at ten requests per second are replayed on the virtual clock.
+     * The Gold policy allows 100 requests per minute, so the application is throttled at its 100th request of every
+     * minute and released when the next minute starts.
+     */
+    @Test
+    public void minuteWindowReplayTest() throws InterruptedException {
+        ThrottleReplayHarness harness = new ThrottleReplayHarness("0,Gold,100,1,min,true").retainStateChanges();
+        ThrottleReplayHarness.Report report = harness.replay(ThrottleReplayHarness.syntheticTrace(6000, 1, 10,
+                START_TIME, 1, "Gold", "Unlimited", "Unlimited", "Unlimited"));
+
+        Assert.assertEquals(6000, report.getEvents());
+        Assert.assertEquals("Requests of undeployed tiers should not be evaluated", 6000,
+                report.getEvaluatedDecisions());
+        Assert.assertEquals(10 * 501, report.getThrottledDecisions());
+        List<ThrottleReplayHarness.Decision> stateChanges = report.getStateChanges();
+        Assert.assertEquals(20, report.getStateChangeCount());
+        Assert.assertEquals(20, stateChanges.size());
+        for (int minute = 0; minute < 10; minute++) {
+            long windowStart = START_TIME + TimeUnit.MINUTES.toMillis(minute);
+            ThrottleReplayHarness.Decision released = stateChanges.get(2 * minute);
+            ThrottleReplayHarness.Decision throttled = stateChanges.get(2 * minute + 1);
+            Assert.assertFalse(released.isThrottled());
+            Assert.assertEquals(windowStart, released.getTimestamp());
+            Assert.assertTrue(throttled.isThrottled());
+            Assert.assertEquals(windowStart + 99 * 100, throttled.getTimestamp());
+            Assert.assertEquals(windowStart + TimeUnit.MINUTES.toMillis(1), throttled.getExpiryTimeStamp());
+        }
+    }
+
+    /**
+     * A subscription policy counting requests per header is evaluated on the custom key level, which the toolkit
+     * inserts after the subscription level, and a bandwidth policy counts the bytes of requests and responses. Response
+     * events are only counted by the bandwidth policy.
+     */
+    @Test
+    public void customKeyBandwidthReplayTest() throws InterruptedException {
+        ThrottleReplayHarness harness = new ThrottleReplayHarness("1,Gold,1000,1,min,false;2,Gold,2,1,min,true",
+                "0,Gold,1000,1,min,true", ThrottleReplayHarness.CUSTOM_KEY_LEVELS).retainStateChanges();
+        List<ThrottleReplayHarness.TraceEvent> trace = new ArrayList<>();
+        trace.add(event(0, "sub1:header:a", 100, 0));
+        trace.add(event(1, "sub1:header:a", 0, 500));
+        trace.add(event(2, "sub1:header:a", 100, 0));
+        trace.add(event(3, "sub1:header:b", 100, 0));
+        trace.add(event(4, "sub1:header:b", 0, 300));
+        ThrottleReplayHarness.Report report = harness.replay(trace.iterator());
+
+        // Three requests on the subscription and custom key levels, and five events counted in bytes
+        Assert.assertEquals(5, report.getEvents());
+        Assert.assertEquals(3 * 2 + 5, report.getEvaluatedDecisions());
+        Assert.assertEquals(2, report.getThrottledDecisions());
+        Assert.assertEquals(6, report.getStateChangeCount());
+        List<String> throttledKeys = new ArrayList<>();
+        for (ThrottleReplayHarness.Decision decision : report.getStateChanges()) {
+            if (decision.isThrottled()) {
+                throttledKeys.add(decision.getThrottleKey());
+            }
+        }
+        Assert.assertEquals(2, throttledKeys.size());
+        Assert.assertTrue(throttledKeys.contains("sub1:header:a"));
+        Assert.assertTrue(throttledKeys.contains("app1"));
+    }
+
+    /**
+     * State changes are counted, but only kept when the harness is asked to retain them.
+     */
+    @Test
+    public void stateChangeCountTest() throws InterruptedException {
+        ThrottleReplayHarness.Report report = new ThrottleReplayHarness("0,Gold,100,1,min,true")
+                .replay(ThrottleReplayHarness.syntheticTrace(1200, 1, 10, START_TIME, 1, "Gold", "Unlimited",
+                        "Unlimited", "Unlimited"));
+        Assert.assertEquals(4, report.getStateChangeCount());
+        Assert.assertTrue(report.getStateChanges().isEmpty());
+    }
+
+    private static ThrottleReplayHarness.TraceEvent event(long offset, String customKey, long requestSize,
+            long responseSize) {
+        return new ThrottleReplayHarness.TraceEvent(START_TIME + offset, new Object[] { "app1", "Gold", "sub1",
+                "Gold", customKey, "/api:1.0", "Unlimited", "/api/1.0/resource", "Unlimited", requestSize,
+                responseSize });
+    }
+}
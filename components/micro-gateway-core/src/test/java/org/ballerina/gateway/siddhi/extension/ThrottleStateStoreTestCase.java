@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ThrottleStateStoreTestCase {
+
+    /**
+     * Only repeated non throttled decisions are suppressed.
+     */
+    @Test
+    public void emitTest() {
+        ThrottleStateStore store = new ThrottleStateStore(100, 60000);
+        Assert.assertTrue(store.update("key", false, 0));
+        Assert.assertFalse(store.update("key", false, 1));
+        Assert.assertTrue(store.update("key", true, 2));
+        Assert.assertTrue(store.update("key", true, 3));
+        Assert.assertTrue(store.update("key", false, 4));
+        Assert.assertFalse(store.update("key", false, 5));
+        Assert.assertTrue(store.update("other", false, 6));
+    }
+
+    /**
+     * A full store evicts the keys seen least recently, not the keys it happens to iterate first.
+     */
+    @Test
+    public void boundTest() {
+        ThrottleStateStore store = new ThrottleStateStore(100, Long.MAX_VALUE / 2);
+        for (int i = 0; i < 100; i++) {
+            store.update("key" + i, false, i);
+        }
+        for (int i = 90; i < 100; i++) {
+            store.update("key" + i, false, 200 + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            store.update("key" + i, false, 300 + i);
+        }
+        Assert.assertEquals(100, store.size());
+        store.update("new", false, 400);
+        // Trimmed to seven eighths of the limit, i.e. the 13 keys seen least recently are evicted.
+        Assert.assertEquals(88, store.size());
+        Assert.assertEquals(13, store.getEvictionCount());
+        for (int i = 10; i < 23; i++) {
+            Assert.assertFalse("key" + i, store.toMap().containsKey("key" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue("key" + i, store.toMap().containsKey("key" + i));
+        }
+        for (int i = 90; i < 100; i++) {
+            Assert.assertTrue("key" + i, store.toMap().containsKey("key" + i));
+        }
+        Assert.assertTrue(store.toMap().containsKey("new"));
+        // The decision of an evicted key is emitted again.
+        Assert.assertTrue(store.update("key10", false, 401));
+    }
+
+    @Test
+    public void idleSweepTest() {
+        ThrottleStateStore store = new ThrottleStateStore(100, 1000);
+        store.update("idle", false, 0);
+        store.update("active", false, 900);
+        store.update("active", false, 1400);
+        store.update("new", false, 1500);
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(1, store.getEvictionCount());
+        Assert.assertFalse(store.toMap().containsKey("idle"));
+        Assert.assertTrue(store.update("idle", false, 1600));
+    }
+}
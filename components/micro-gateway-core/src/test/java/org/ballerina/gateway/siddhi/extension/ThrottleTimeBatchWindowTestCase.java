@@ -28,6 +28,12 @@ import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class ThrottleTimeBatchWindowTestCase {
     private int inEventCount;
     private int removeEventCount;
@@ -118,6 +124,129 @@ public class ThrottleTimeBatchWindowTestCase {
         executionPlanRuntime.shutdown();
     }
 
+    @Test
+    public void throttleTimeWindowBatchCounterOnlyTest() throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+        String cseEventStream = "" + "define stream cseEventStream (symbol string, price float, volume int);";
+        String query = "" + "@info(name = 'query1') "
+                + "from cseEventStream#throttler:timeBatch(2 sec , 0, symbol, true) "
+                + "select symbol, eventCount, expiryTimeStamp "
+                + "insert all events into outputStream ;";
+
+        SiddhiAppRuntime executionPlanRuntime = siddhiManager.createSiddhiAppRuntime(cseEventStream + query);
+
+        executionPlanRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                EventPrinter.print(timeStamp, inEvents, removeEvents);
+                if (inEvents != null) {
+                    inEventCount = inEventCount + inEvents.length;
+                    lastCurrentEvent = inEvents[inEvents.length - 1];
+                }
+                if (removeEvents != null) {
+                    removeEventCount = removeEventCount + removeEvents.length;
+                }
+                eventArrived = true;
+            }
+
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("cseEventStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[] { "IBM", 700f, 0 });
+        inputHandler.send(new Object[] { "WSO2", 60.5f, 1 });
+        inputHandler.send(new Object[] { "IBM", 700f, 0 });
+        Assert.assertEquals(2L, lastCurrentEvent.getData()[1]);
+        Thread.sleep(4500);
+        inputHandler.send(new Object[] { "IBM", 700f, 0 });
+        Assert.assertEquals("Counter is not reset for the new batch", 1L, lastCurrentEvent.getData()[1]);
+        Assert.assertEquals(4, inEventCount);
+        Assert.assertEquals("Events should not be retained in counter only mode", 0, removeEventCount);
+        Assert.assertTrue(eventArrived);
+        executionPlanRuntime.shutdown();
+    }
+
+    /**
+     * Events of many keys sent concurrently land in different partitions. Every key keeps its own count, and the
+     * window expires the events of every partition when it rolls over.
+     */
+    @Test
+    public void throttleTimeWindowBatchPartitionedTest() throws InterruptedException {
+        final int threadCount = 4;
+        final int keysPerThread = 16;
+        final int eventsPerKey = 50;
+        // A minute boundary, so that the window of the first event ends one minute later.
+        final long windowStart = 1500000000000L;
+        final Map<String, AtomicLong> maxCounts = new ConcurrentHashMap<String, AtomicLong>();
+        final Map<String, AtomicLong> expiredCounts = new ConcurrentHashMap<String, AtomicLong>();
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String requestStream = "define stream requestStream (throttleKey string, messageID string);";
+        String query = "@info(name = 'query1') "
+                + "from requestStream#throttler:timeBatch(1 min, 0, throttleKey) "
+                + "select throttleKey, count(messageID) as requestCount, expiryTimeStamp "
+                + "group by throttleKey "
+                + "insert all events into outputStream ;";
+
+        SiddhiAppRuntime executionPlanRuntime = siddhiManager.createSiddhiAppRuntime("@app:playback "
+                + requestStream + query);
+        executionPlanRuntime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                if (inEvents != null) {
+                    for (Event event : inEvents) {
+                        AtomicLong maxCount = maxCounts.computeIfAbsent((String) event.getData()[0],
+                                key -> new AtomicLong());
+                        maxCount.accumulateAndGet((Long) event.getData()[1], Math::max);
+                    }
+                }
+                if (removeEvents != null) {
+                    for (Event event : removeEvents) {
+                        expiredCounts.computeIfAbsent((String) event.getData()[0], key -> new AtomicLong())
+                                .incrementAndGet();
+                    }
+                }
+            }
+        });
+
+        final InputHandler inputHandler = executionPlanRuntime.getInputHandler("requestStream");
+        executionPlanRuntime.start();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < eventsPerKey; j++) {
+                        for (int k = 0; k < keysPerThread; k++) {
+                            inputHandler.send(windowStart + 1000, new Object[] { "key" + thread + "-" + k,
+                                    "message" + j });
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threadCount * keysPerThread, maxCounts.size());
+        for (Map.Entry<String, AtomicLong> entry : maxCounts.entrySet()) {
+            Assert.assertEquals(entry.getKey(), eventsPerKey, entry.getValue().get());
+        }
+        Assert.assertTrue("Events should be held until the window elapses", expiredCounts.isEmpty());
+
+        inputHandler.send(windowStart + 60000, new Object[] { "next", "message" });
+        Assert.assertEquals(threadCount * keysPerThread, expiredCounts.size());
+        for (Map.Entry<String, AtomicLong> entry : expiredCounts.entrySet()) {
+            Assert.assertEquals(entry.getKey(), eventsPerKey, entry.getValue().get());
+        }
+        executionPlanRuntime.shutdown();
+    }
+
     @Ignore
     public void throttleTimeWindowBatchTest3() throws InterruptedException {
         SiddhiManager siddhiManager = new SiddhiManager();
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ThrottleWindowTimerTestCase {
+    private ThrottleWindowTimer timer;
+    private List<Long> expired;
+
+    @Before
+    public void init() {
+        // Ticks of 100 milliseconds on a wheel of eight buckets, starting at the tick of 1000
+        timer = new ThrottleWindowTimer(100, 8);
+        timer.advance(1000);
+        expired = new ArrayList<Long>();
+    }
+
+    /**
+     * Expiries a whole wheel or more away are notified after as many rounds, not when their bucket first comes up.
+     */
+    @Test
+    public void roundsTest() {
+        // Expiries are placed on the wheel at the next tick, 1100, which is eight ticks before 1900.
+        timer.notifyAt(1900, expired::add);
+        timer.notifyAt(2700, expired::add);
+        timer.advance(1800);
+        Assert.assertTrue(expired.isEmpty());
+        timer.advance(1899);
+        Assert.assertTrue(expired.isEmpty());
+        timer.advance(1900);
+        Assert.assertEquals(Arrays.asList(1900L), expired);
+        timer.advance(2699);
+        Assert.assertEquals(Arrays.asList(1900L), expired);
+        timer.advance(2700);
+        Assert.assertEquals(Arrays.asList(1900L, 2700L), expired);
+    }
+
+    /**
+     * Expiries are notified at the first tick not before their time, and expiries which are already due at the next
+     * tick.
+     */
+    @Test
+    public void dueExpiryTest() {
+        timer.notifyAt(500, expired::add);
+        timer.notifyAt(1050, expired::add);
+        timer.notifyAt(1150, expired::add);
+        timer.advance(1099);
+        Assert.assertTrue(expired.isEmpty());
+        timer.advance(1100);
+        Assert.assertEquals(Arrays.asList(500L, 1050L), expired);
+        timer.advance(1199);
+        Assert.assertEquals(Arrays.asList(500L, 1050L), expired);
+        timer.advance(1200);
+        Assert.assertEquals(Arrays.asList(500L, 1050L, 1150L), expired);
+    }
+
+    /**
+     * A pause longer than the wheel catches up every tick missed, notifying the expiries in order.
+     */
+    @Test
+    public void catchUpTest() {
+        timer.notifyAt(3400, expired::add);
+        timer.notifyAt(1200, expired::add);
+        timer.notifyAt(2000, expired::add);
+        timer.notifyAt(5100, expired::add);
+        timer.advance(5000);
+        Assert.assertEquals(Arrays.asList(1200L, 2000L, 3400L), expired);
+        timer.advance(5100);
+        Assert.assertEquals(Arrays.asList(1200L, 2000L, 3400L, 5100L), expired);
+    }
+
+    /**
+     * A failing window does not keep the other windows of the batch from being notified.
+     */
+    @Test
+    public void listenerErrorTest() {
+        timer.notifyAt(1100, expiryTime -> {
+            throw new IllegalStateException("Window failed");
+        });
+        timer.notifyAt(1100, expired::add);
+        timer.advance(1100);
+        Assert.assertEquals(Arrays.asList(1100L), expired);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.siddhi.extension;
+
+import org.ballerina.gateway.throttle.ThrottleStateSnapshot;
+import org.ballerinalang.siddhi.core.SiddhiAppRuntime;
+import org.ballerinalang.siddhi.core.SiddhiManager;
+import org.ballerinalang.siddhi.core.event.Event;
+import org.ballerinalang.siddhi.core.query.output.callback.QueryCallback;
+import org.ballerinalang.siddhi.core.stream.input.InputHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTestCase {
+
+    /**
+     * A limit which does not divide the unit time rounds the emission interval down to a microsecond, and the time a
+     * throttled key is admitted again is rounded up to the next millisecond.
+     */
+    @Test
+    public void emissionIntervalRoundingTest() {
+        // 1000000 / 3 = 333333 microseconds between requests, two of which may follow the first back to back
+        TokenBucket tokenBucket = new TokenBucket(1000, 3, 3);
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(334, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(334, tokenBucket.acquire("key", 333));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 334));
+        Assert.assertEquals(667, tokenBucket.acquire("key", 334));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 667));
+        // The rounding of the retry times does not add up, the next request is admitted a unit time after the first.
+        Assert.assertEquals(1000, tokenBucket.acquire("key", 667));
+    }
+
+    /**
+     * Rates above one request per microsecond are capped at one request per microsecond.
+     */
+    @Test
+    public void minimumEmissionIntervalTest() {
+        TokenBucket tokenBucket = new TokenBucket(1, 10000, 1000);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        }
+        Assert.assertEquals(1, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 1));
+    }
+
+    /**
+     * A retry time which falls on a millisecond is not rounded up to the next one.
+     */
+    @Test
+    public void retryTimeTest() {
+        TokenBucket tokenBucket = new TokenBucket(1000, 1, 1);
+        Assert.assertEquals(0, tokenBucket.acquire("key", 5000));
+        Assert.assertEquals(6000, tokenBucket.acquire("key", 5000));
+        Assert.assertEquals(6000, tokenBucket.acquire("key", 5999));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 6000));
+    }
+
+    /**
+     * A burst of one admits no request before its theoretical arrival time, but admits it exactly at that time.
+     */
+    @Test
+    public void burstToleranceTest() {
+        TokenBucket tokenBucket = new TokenBucket(1000, 10, 1);
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(100, tokenBucket.acquire("key", 99));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 100));
+
+        tokenBucket = new TokenBucket(1000, 10, 3);
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 0));
+        // The arrival time is 300 milliseconds out, less the two requests of burst tolerance.
+        Assert.assertEquals(100, tokenBucket.acquire("key", 0));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 100));
+        // An idle key earns its burst back, but not more.
+        Assert.assertEquals(0, tokenBucket.acquire("key", 10000));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 10000));
+        Assert.assertEquals(0, tokenBucket.acquire("key", 10000));
+        Assert.assertEquals(10100, tokenBucket.acquire("key", 10000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBurstTest() {
+        new TokenBucket(1000, 10, 0);
+    }
+
+    /**
+     * Keys whose arrival time has passed are dropped once a partition reaches its sweep size, while keys which are
+     * still limited survive the sweep.
+     */
+    @Test
+    public void sweepTest() {
+        int sweepSize = 1024 * ThrottlePartitions.getPartitionCount();
+        // One request per millisecond, so each key is idle a millisecond after its request.
+        TokenBucket tokenBucket = new TokenBucket(1000, 1000, 1);
+        for (int i = 0; i < sweepSize * 4; i++) {
+            tokenBucket.acquire("idle" + i, i);
+        }
+        Assert.assertTrue(tokenBucket.snapshot().getValues().size() < sweepSize);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toMicros(sweepSize * 4),
+                tokenBucket.snapshot().getValues().get("idle" + (sweepSize * 4 - 1)));
+
+        tokenBucket = new TokenBucket(1000, 1000, 1);
+        for (int i = 0; i < sweepSize * 4; i++) {
+            tokenBucket.acquire("live" + i, 0);
+        }
+        Assert.assertEquals(sweepSize * 4, tokenBucket.snapshot().getValues().size());
+        Assert.assertEquals(1, tokenBucket.acquire("live0", 0));
+    }
+
+    /**
+     * Restoring keeps the later of the current and the restored arrival time of a key.
+     */
+    @Test
+    public void snapshotRestoreTest() {
+        TokenBucket tokenBucket = new TokenBucket(1000, 1, 1);
+        tokenBucket.acquire("early", 1000);
+        tokenBucket.acquire("late", 1000);
+        ThrottleStateSnapshot snapshot = tokenBucket.snapshot();
+        Assert.assertEquals(ThrottleStateSnapshot.NO_EXPIRY, snapshot.getExpiryTime());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toMicros(2000), snapshot.getValues().get("early"));
+
+        TokenBucket restored = new TokenBucket(1000, 1, 1);
+        restored.acquire("late", 5000);
+        restored.restore(snapshot);
+        // "early" takes the restored arrival time, "late" keeps its own.
+        Assert.assertEquals(2000, restored.acquire("early", 1500));
+        Assert.assertEquals(6000, restored.acquire("late", 5000));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toMicros(6000), restored.snapshot().getValues().get("late"));
+    }
+
+    /**
+     * The processor emits the time from which a throttled key is admitted again as expiryTimeStamp, using the
+     * timestamps of the events in playback mode.
+     */
+    @Test
+    public void tokenBucketProcessorTest() throws InterruptedException {
+        SiddhiManager siddhiManager = new SiddhiManager();
+        String siddhiApp = "@app:playback "
+                + "define stream requestStream (throttleKey string);"
+                + "@info(name = 'query1') "
+                + "from requestStream#throttler:tokenBucket(1 sec, 2, 1, throttleKey) "
+                + "select throttleKey, isThrottled, expiryTimeStamp "
+                + "insert into resultStream ;";
+        SiddhiAppRuntime runtime = siddhiManager.createSiddhiAppRuntime(siddhiApp);
+        final List<Object[]> decisions = new ArrayList<Object[]>();
+        runtime.addCallback("query1", new QueryCallback() {
+            @Override
+            public void receive(long timeStamp, Event[] inEvents, Event[] removeEvents) {
+                for (Event event : inEvents) {
+                    decisions.add(event.getData());
+                }
+            }
+        });
+        InputHandler inputHandler = runtime.getInputHandler("requestStream");
+        runtime.start();
+        inputHandler.send(1000, new Object[] { "gold" });
+        inputHandler.send(1000, new Object[] { "gold" });
+        inputHandler.send(1000, new Object[] { "silver" });
+        inputHandler.send(1499, new Object[] { "gold" });
+        inputHandler.send(1500, new Object[] { "gold" });
+        runtime.shutdown();
+
+        Assert.assertEquals(5, decisions.size());
+        Assert.assertArrayEquals(new Object[] { "gold", false, 1000L }, decisions.get(0));
+        Assert.assertArrayEquals(new Object[] { "gold", true, 1500L }, decisions.get(1));
+        Assert.assertArrayEquals(new Object[] { "silver", false, 1000L }, decisions.get(2));
+        Assert.assertArrayEquals(new Object[] { "gold", true, 1500L }, decisions.get(3));
+        Assert.assertArrayEquals(new Object[] { "gold", false, 1500L }, decisions.get(4));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BlockingConditionsTestCase {
+    private BlockingConditions conditions;
+
+    @Before
+    public void init() {
+        conditions = new BlockingConditions();
+        conditions.load(Arrays.asList("ip 203.0.113.0/24", "application admin:blocked", "user mallory"));
+    }
+
+    /**
+     * Without trusted proxies the X-Forwarded-For header is set by the client, hence it is ignored.
+     */
+    @Test
+    public void untrustedForwardedForTest() {
+        Assert.assertEquals("203.0.113.7", conditions.getClientAddress("203.0.113.7", "198.51.100.1"));
+        Assert.assertEquals("198.51.100.1", conditions.getClientAddress("198.51.100.1", "203.0.113.7"));
+        conditions.setTrustedProxies(Collections.singletonList("10.0.0.0/8"));
+        Assert.assertEquals("203.0.113.7", conditions.getClientAddress("203.0.113.7", "198.51.100.1"));
+    }
+
+    /**
+     * Behind trusted proxies the client is the last address which is not a trusted proxy, whatever addresses the
+     * client prepended to the header.
+     */
+    @Test
+    public void trustedForwardedForTest() {
+        conditions.setTrustedProxies(Arrays.asList("10.0.0.0/8", "2001:db8::1"));
+        Assert.assertEquals("203.0.113.7", conditions.getClientAddress("10.0.0.1", "203.0.113.7"));
+        Assert.assertEquals("203.0.113.7", conditions.getClientAddress("10.0.0.1", "198.51.100.1, 203.0.113.7"));
+        Assert.assertEquals("203.0.113.7", conditions.getClientAddress("2001:db8::1",
+                "198.51.100.1,203.0.113.7, 10.1.1.1 ,10.2.2.2"));
+        Assert.assertEquals("203.0.113.7", conditions.getClientAddress("10.0.0.1", "203.0.113.7,,"));
+        Assert.assertEquals("10.1.1.1", conditions.getClientAddress("10.0.0.1", "10.1.1.1"));
+        Assert.assertEquals("10.0.0.1", conditions.getClientAddress("10.0.0.1", ""));
+        Assert.assertEquals("10.0.0.1", conditions.getClientAddress("10.0.0.1", " , "));
+    }
+
+    @Test
+    public void blockedTest() {
+        Assert.assertTrue(conditions.isIpBlocked("203.0.113.7"));
+        Assert.assertFalse(conditions.isIpBlocked("198.51.100.1"));
+        Assert.assertTrue(conditions.isApplicationOrUserBlocked("admin:blocked", "alice"));
+        Assert.assertTrue(conditions.isApplicationOrUserBlocked("admin:allowed", "mallory"));
+        Assert.assertFalse(conditions.isApplicationOrUserBlocked("admin:allowed", "alice"));
+    }
+
+    @Test
+    public void invalidConditionTest() {
+        conditions.load(Arrays.asList("# comment", "ip 203.0.113.0/33", "ip", "host example.com", "ip 198.51.100.1"));
+        Assert.assertFalse(conditions.isIpBlocked("203.0.113.7"));
+        Assert.assertTrue(conditions.isIpBlocked("198.51.100.1"));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+
+public class InlineRateLimiterTestCase {
+    private InlineRateLimiter limiter;
+
+    @Before
+    public void init() {
+        limiter = new InlineRateLimiter(1000);
+    }
+
+    @Test
+    public void minuteWindowTest() {
+        long start = time("2018-10-10T10:15:00Z");
+        Assert.assertTrue(limiter.tryAcquire("key", 2, 1, "min", start));
+        Assert.assertTrue(limiter.tryAcquire("key", 2, 1, "min", start + 30000));
+        Assert.assertFalse(limiter.tryAcquire("key", 2, 1, "min", start + 59999));
+        Assert.assertTrue(limiter.tryAcquire("other", 2, 1, "min", start + 59999));
+        Assert.assertTrue(limiter.tryAcquire("key", 2, 1, "min", start + 60000));
+    }
+
+    /**
+     * Weekly windows start on Mondays, not on the Thursday weekly windows aligned to the epoch would start on.
+     */
+    @Test
+    public void weekWindowTest() {
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "week", time("2018-10-10T12:00:00Z")));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "week", time("2018-10-11T00:00:00Z")));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "week", time("2018-10-14T23:59:59Z")));
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "week", time("2018-10-15T00:00:00Z")));
+    }
+
+    /**
+     * Monthly windows follow the calendar months rather than 30 day periods.
+     */
+    @Test
+    public void monthWindowTest() {
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "month", time("2018-01-31T23:59:00Z")));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "month", time("2018-01-31T23:59:59Z")));
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "month", time("2018-02-01T00:00:00Z")));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "month", time("2018-02-28T23:59:59Z")));
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "month", time("2018-03-01T00:00:00Z")));
+    }
+
+    @Test
+    public void yearWindowTest() {
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "year", time("2018-06-01T00:00:00Z")));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "year", time("2018-12-31T23:59:59Z")));
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "year", time("2019-01-01T00:00:00Z")));
+    }
+
+    /**
+     * A key whose policy changed to another window starts counting afresh.
+     */
+    @Test
+    public void policyChangeTest() {
+        long start = time("2018-10-10T10:15:00Z");
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "min", start));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "min", start));
+        Assert.assertTrue(limiter.tryAcquire("key", 1, 1, "hour", start));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, 1, "hour", start + 60000));
+    }
+
+    @Test
+    public void sweepTest() {
+        long start = time("2018-10-10T10:15:00Z");
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire("key" + i, 1, 1, "min", start);
+        }
+        Assert.assertEquals(100, limiter.size());
+        limiter.tryAcquire("new", 1, 1, "min", start + 60000);
+        Assert.assertEquals(1, limiter.size());
+    }
+
+    private static long time(String time) {
+        return Instant.parse(time).toEpochMilli();
+    }
+}
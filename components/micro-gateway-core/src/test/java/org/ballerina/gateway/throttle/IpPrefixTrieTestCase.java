@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IpPrefixTrieTestCase {
+
+    @Test
+    public void ipv4PrefixEdgesTest() {
+        IpPrefixTrie trie = trie("192.168.0.0/16", "10.1.2.3", "172.16.0.0/12");
+        Assert.assertTrue(trie.matches("192.168.0.0"));
+        Assert.assertTrue(trie.matches("192.168.255.255"));
+        Assert.assertFalse(trie.matches("192.167.255.255"));
+        Assert.assertFalse(trie.matches("192.169.0.0"));
+        Assert.assertTrue(trie.matches("10.1.2.3"));
+        Assert.assertFalse(trie.matches("10.1.2.2"));
+        Assert.assertFalse(trie.matches("10.1.2.4"));
+        Assert.assertTrue(trie.matches("172.16.0.0"));
+        Assert.assertTrue(trie.matches("172.31.255.255"));
+        Assert.assertFalse(trie.matches("172.32.0.0"));
+        Assert.assertTrue(trie.matches(" 192.168.1.1 "));
+    }
+
+    @Test
+    public void zeroLengthPrefixTest() {
+        IpPrefixTrie ipv4 = trie("0.0.0.0/0");
+        Assert.assertTrue(ipv4.matches("0.0.0.0"));
+        Assert.assertTrue(ipv4.matches("255.255.255.255"));
+        Assert.assertFalse(ipv4.matches("2001:db8::1"));
+        IpPrefixTrie ipv6 = trie("::/0");
+        Assert.assertTrue(ipv6.matches("::"));
+        Assert.assertTrue(ipv6.matches("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+        Assert.assertFalse(ipv6.matches("10.0.0.1"));
+    }
+
+    /**
+     * A shorter prefix added after a longer one covers the longer one, and a longer one added after it changes
+     * nothing.
+     */
+    @Test
+    public void nestedPrefixesTest() {
+        IpPrefixTrie trie = trie("10.1.0.0/16", "10.0.0.0/8", "10.2.3.0/24");
+        Assert.assertTrue(trie.matches("10.200.0.1"));
+        Assert.assertTrue(trie.matches("10.1.0.1"));
+        Assert.assertFalse(trie.matches("11.0.0.0"));
+    }
+
+    @Test
+    public void ipv6PrefixEdgesTest() {
+        IpPrefixTrie trie = trie("2001:db8::/32", "::1", "fe80::/10");
+        Assert.assertTrue(trie.matches("2001:db8::"));
+        Assert.assertTrue(trie.matches("2001:0db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+        Assert.assertFalse(trie.matches("2001:db9::"));
+        Assert.assertFalse(trie.matches("2001:db7:ffff:ffff:ffff:ffff:ffff:ffff"));
+        Assert.assertTrue(trie.matches("::1"));
+        Assert.assertTrue(trie.matches("0:0:0:0:0:0:0:1"));
+        Assert.assertTrue(trie.matches("[::1]"));
+        Assert.assertFalse(trie.matches("::"));
+        Assert.assertFalse(trie.matches("::2"));
+        Assert.assertTrue(trie.matches("FEBF::1"));
+        Assert.assertFalse(trie.matches("fec0::1"));
+    }
+
+    @Test
+    public void unspecifiedAddressTest() {
+        IpPrefixTrie trie = trie("::");
+        Assert.assertTrue(trie.matches("::"));
+        Assert.assertTrue(trie.matches("0:0:0:0:0:0:0:0"));
+        Assert.assertFalse(trie.matches("::1"));
+        Assert.assertFalse(trie.matches("0.0.0.0"));
+    }
+
+    @Test
+    public void zoneTest() {
+        IpPrefixTrie trie = trie("fe80::1");
+        Assert.assertTrue(trie.matches("fe80::1%eth0"));
+        Assert.assertTrue(trie.matches("fe80::1%1"));
+        Assert.assertTrue(trie.matches("[fe80::1%eth0]"));
+        Assert.assertFalse(trie.matches("fe80::2%eth0"));
+    }
+
+    @Test
+    public void mappedAddressTest() {
+        IpPrefixTrie trie = trie("192.168.0.0/16");
+        Assert.assertTrue(trie.matches("::ffff:192.168.1.1"));
+        Assert.assertTrue(trie.matches("::ffff:c0a8:101"));
+        Assert.assertTrue(trie.matches("0:0:0:0:0:ffff:192.168.1.1"));
+        Assert.assertFalse(trie.matches("::ffff:10.0.0.1"));
+        // IPv4 compatible and translated addresses are not IPv4 mapped addresses.
+        Assert.assertFalse(trie.matches("::192.168.1.1"));
+        Assert.assertFalse(trie.matches("::ffff:0:192.168.1.1"));
+        Assert.assertTrue(trie("::ffff:10.0.0.0/104").matches("::ffff:10.1.2.3"));
+    }
+
+    @Test
+    public void malformedAddressTest() {
+        IpPrefixTrie trie = trie("0.0.0.0/0", "::/0");
+        String[] addresses = { null, "", " ", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1.2.3.", ".1.2.3",
+                "1.2.3.-4", "a.b.c.d", "localhost", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", ":1::",
+                "1::2:", ":::", "12345::", "gggg::", "1::2:3:4:5:6:7:8", "::ffff:1.2.3", "::ffff:1.2.3.256",
+                "[::1", "::1]", "%eth0" };
+        for (String address : addresses) {
+            Assert.assertFalse("Matched " + address, trie.matches(address));
+        }
+    }
+
+    @Test
+    public void malformedPrefixTest() {
+        String[] prefixes = { "10.0.0.0/33", "10.0.0.0/-1", "10.0.0.0/", "10.0.0.0/a", "::/129", "1.2.3", "host",
+                "1::2::3" };
+        for (String prefix : prefixes) {
+            try {
+                new IpPrefixTrie().add(prefix);
+                Assert.fail("Accepted " + prefix);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void emptyTrieTest() {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        Assert.assertTrue(trie.isEmpty());
+        Assert.assertFalse(trie.matches("10.0.0.1"));
+        Assert.assertFalse(trie.matches("::1"));
+    }
+
+    private static IpPrefixTrie trie(String... prefixes) {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        for (String prefix : prefixes) {
+            trie.add(prefix);
+        }
+        return trie;
+    }
+}
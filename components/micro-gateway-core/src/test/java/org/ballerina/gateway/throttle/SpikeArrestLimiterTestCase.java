@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpikeArrestLimiterTestCase {
+    private static final long SECOND = SpikeArrestLimiter.getWindowLength("sec");
+    private static final long MINUTE = SpikeArrestLimiter.getWindowLength("min");
+
+    @Test
+    public void unitTest() {
+        Assert.assertEquals(1000, SECOND);
+        Assert.assertEquals(60000, MINUTE);
+        SpikeArrestLimiter limiter = new SpikeArrestLimiter(1000);
+        // Limits of unknown units, and limits which are not positive, are not enforced.
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire("key", 1, "hour"));
+            Assert.assertTrue(limiter.tryAcquire("key", 0, "sec"));
+        }
+        Assert.assertEquals(0, limiter.size());
+    }
+
+    /**
+     * A window slides in ten buckets, so requests leave the window a bucket at a time rather than all at once.
+     */
+    @Test
+    public void bucketRolloverTest() {
+        SpikeArrestLimiter limiter = new SpikeArrestLimiter(1000);
+        long rejected = GatewayMetrics.counter("throttle.spikeArrest.rejected").sum();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire("key", 10, SECOND, 0));
+        }
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire("key", 10, SECOND, 500));
+        }
+        Assert.assertFalse(limiter.tryAcquire("key", 10, SECOND, 999));
+        // The bucket of the requests sent at 0 leaves the window at 1000, the one of those sent at 500 stays.
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire("key", 10, SECOND, 1000));
+        }
+        Assert.assertFalse(limiter.tryAcquire("key", 10, SECOND, 1000));
+        Assert.assertFalse(limiter.tryAcquire("key", 10, SECOND, 1499));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire("key", 10, SECOND, 1500));
+        }
+        Assert.assertFalse(limiter.tryAcquire("key", 10, SECOND, 1500));
+        // A key idle for longer than the window starts over.
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire("key", 10, SECOND, 5000));
+        }
+        Assert.assertFalse(limiter.tryAcquire("key", 10, SECOND, 5000));
+        Assert.assertEquals(rejected + 5, GatewayMetrics.counter("throttle.spikeArrest.rejected").sum());
+    }
+
+    @Test
+    public void minuteWindowTest() {
+        SpikeArrestLimiter limiter = new SpikeArrestLimiter(1000);
+        Assert.assertTrue(limiter.tryAcquire("key", 2, MINUTE, 0));
+        Assert.assertTrue(limiter.tryAcquire("key", 2, MINUTE, 6000));
+        Assert.assertFalse(limiter.tryAcquire("key", 2, MINUTE, 6001));
+        Assert.assertFalse(limiter.tryAcquire("key", 2, MINUTE, 59999));
+        Assert.assertTrue(limiter.tryAcquire("key", 2, MINUTE, 60000));
+        Assert.assertFalse(limiter.tryAcquire("key", 2, MINUTE, 60000));
+        // The buckets of a minute are six seconds long.
+        Assert.assertFalse(limiter.tryAcquire("key", 2, MINUTE, 65999));
+        Assert.assertTrue(limiter.tryAcquire("key", 2, MINUTE, 66000));
+        // A key whose unit changes to seconds starts over.
+        Assert.assertTrue(limiter.tryAcquire("key", 1, SECOND, 66000));
+        Assert.assertFalse(limiter.tryAcquire("key", 1, SECOND, 66999));
+    }
+
+    /**
+     * Idle keys are swept before active keys are dropped to stay within the bound.
+     */
+    @Test
+    public void sweepTest() {
+        SpikeArrestLimiter limiter = new SpikeArrestLimiter(100);
+        // 100 millisecond windows, which are idle a window after their last request
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(limiter.tryAcquire("idle" + i, 1, 100, 0));
+        }
+        for (int i = 0; i <= 50; i++) {
+            Assert.assertTrue(limiter.tryAcquire("active" + i, 1, 100, 500));
+        }
+        Assert.assertEquals(51, limiter.size());
+        for (int i = 0; i <= 50; i++) {
+            Assert.assertFalse(limiter.tryAcquire("active" + i, 1, 100, 500));
+        }
+        // Without idle keys, active keys are dropped down to seven eighths of the bound.
+        for (int i = 0; i < 50; i++) {
+            Assert.assertTrue(limiter.tryAcquire("more" + i, 1, 100, 500));
+        }
+        Assert.assertEquals(88, limiter.size());
+    }
+
+    /**
+     * The shared limiter holds up to a million keys.
+     */
+    @Test
+    public void keyBoundTest() {
+        SpikeArrestLimiter limiter = new SpikeArrestLimiter(SpikeArrestLimiter.MAX_KEYS);
+        for (int i = 0; i < SpikeArrestLimiter.MAX_KEYS; i++) {
+            limiter.tryAcquire(Integer.toString(i), 1, SECOND, 0);
+        }
+        Assert.assertEquals(SpikeArrestLimiter.MAX_KEYS, limiter.size());
+        limiter.tryAcquire("overflow", 1, SECOND, 0);
+        Assert.assertEquals(SpikeArrestLimiter.MAX_KEYS - (SpikeArrestLimiter.MAX_KEYS >> 3), limiter.size());
+        // Once the sweep interval has passed, the next new key sweeps the keys which have been idle for a window.
+        limiter.tryAcquire("late", 1, SECOND, 2000);
+        Assert.assertEquals(1, limiter.size());
+    }
+}
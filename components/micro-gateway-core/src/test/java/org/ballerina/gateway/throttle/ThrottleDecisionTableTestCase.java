@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ThrottleDecisionTableTestCase {
+    private ThrottleDecisionTable table;
+
+    @Before
+    public void init() {
+        // Swept by the tests rather than by the background thread
+        table = new ThrottleDecisionTable(4, 0);
+    }
+
+    /**
+     * A key is throttled up to and including its expiry time, and is not swept before that time has passed.
+     */
+    @Test
+    public void expiryTest() {
+        table.put("key", 1000, false);
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED, table.get("key", 999));
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED, table.get("key", 1000));
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, table.get("key", 1001));
+        table.sweep(1000);
+        Assert.assertEquals(1, table.size());
+        table.sweep(1001);
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, table.get("key", 1000));
+    }
+
+    /**
+     * The stop on quota flag shares a long with the expiry time, and neither may change the other.
+     */
+    @Test
+    public void stopOnQuotaTest() {
+        long expiryTime = 1540000000000L;
+        table.put("key", expiryTime, true);
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED_STOP_ON_QUOTA, table.get("key", expiryTime));
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, table.get("key", expiryTime + 1));
+        table.put("key", expiryTime + 1, false);
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED, table.get("key", expiryTime + 1));
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, table.get("key", expiryTime + 2));
+        table.put("key", Long.MAX_VALUE >> 1, true);
+        Assert.assertEquals(ThrottleDecisionTable.THROTTLED_STOP_ON_QUOTA, table.get("key", Long.MAX_VALUE >> 1));
+        Assert.assertEquals(ThrottleDecisionTable.NOT_THROTTLED, table.get("other", 0));
+    }
+
+    /**
+     * A sweep shrinks the table back to the size of the decisions which are left.
+     */
+    @Test
+    public void sweepTest() {
+        int minCapacity = table.capacity();
+        for (int i = 0; i < 1000; i++) {
+            table.put("key" + i, i < 990 ? 1000 : 2000, false);
+        }
+        Assert.assertEquals(1000, table.size());
+        Assert.assertTrue(table.capacity() >= 2000);
+        table.sweep(1500);
+        Assert.assertEquals(10, table.size());
+        Assert.assertTrue(table.capacity() <= minCapacity * 2);
+        for (int i = 990; i < 1000; i++) {
+            Assert.assertEquals(ThrottleDecisionTable.THROTTLED, table.get("key" + i, 2000));
+        }
+    }
+
+    /**
+     * Decisions put while the table is being swept are never lost, whether they land before or after the sweep of
+     * their segment.
+     */
+    @Test
+    public void putDuringSweepTest() throws InterruptedException {
+        for (int i = 0; i < 10000; i++) {
+            table.put("expired" + i, 1000, false);
+        }
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread sweeper = new Thread(() -> {
+            started.countDown();
+            while (!done.get()) {
+                table.sweep(1500);
+            }
+        });
+        sweeper.start();
+        started.await();
+        for (int i = 0; i < 10000; i++) {
+            // Keys which may be swept concurrently, and keys which are new to the table
+            table.put("expired" + i, 2000, i % 2 == 0);
+            table.put("new" + i, 2000, false);
+        }
+        done.set(true);
+        sweeper.join();
+        table.sweep(1500);
+        Assert.assertEquals(20000, table.size());
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(i % 2 == 0 ? ThrottleDecisionTable.THROTTLED_STOP_ON_QUOTA
+                    : ThrottleDecisionTable.THROTTLED, table.get("expired" + i, 2000));
+            Assert.assertEquals(ThrottleDecisionTable.THROTTLED, table.get("new" + i, 2000));
+        }
+    }
+}
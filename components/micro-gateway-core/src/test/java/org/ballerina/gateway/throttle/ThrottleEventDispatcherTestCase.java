@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.metrics.GatewayMetrics;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThrottleEventDispatcherTestCase {
+    private static final String QUEUE_DEPTH = "throttle.dispatch.queueDepth";
+    private static final String DROPPED = "throttle.dispatch.dropped";
+    private static final String OVERFLOW_INLINE = "throttle.dispatch.overflowInline";
+
+    private ThrottleEventDispatcher dispatcher;
+    private CountDownLatch blocked;
+    private CountDownLatch release;
+
+    @Before
+    public void init() {
+        dispatcher = new ThrottleEventDispatcher();
+        blocked = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void cleanup() {
+        release.countDown();
+        dispatcher.shutdown();
+    }
+
+    /**
+     * The tasks of a key are run in the order they were dispatched, whichever producer threads dispatch the tasks of
+     * other keys at the same time.
+     */
+    @Test
+    public void orderingTest() throws InterruptedException {
+        final int producerCount = 8;
+        final int keysPerProducer = 16;
+        final int tasksPerKey = 200;
+        dispatcher.init(4, producerCount * keysPerProducer * tasksPerKey, ThrottleEventDispatcher.OVERFLOW_INLINE);
+        final Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < producerCount; i++) {
+            final int producer = i;
+            producers.add(new Thread(() -> {
+                for (int task = 0; task < tasksPerKey; task++) {
+                    for (int k = 0; k < keysPerProducer; k++) {
+                        String key = "key" + producer + "-" + k;
+                        final int sequence = task;
+                        // Lists are only appended to by the worker of the key.
+                        dispatcher.dispatch(key, () -> processed.computeIfAbsent(key, x -> new ArrayList<>())
+                                .add(sequence));
+                    }
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        dispatcher.shutdown();
+        Assert.assertEquals(producerCount * keysPerProducer, processed.size());
+        for (Map.Entry<String, List<Integer>> entry : processed.entrySet()) {
+            List<Integer> sequences = entry.getValue();
+            Assert.assertEquals(entry.getKey(), tasksPerKey, sequences.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                Assert.assertEquals(entry.getKey(), i, (int) sequences.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void dropOnOverflowTest() throws InterruptedException {
+        dispatcher.init(1, 2, ThrottleEventDispatcher.OVERFLOW_DROP);
+        AtomicInteger processed = new AtomicInteger();
+        blockWorker();
+        long dropped = counter(DROPPED);
+        dispatcher.dispatch("key", processed::incrementAndGet);
+        dispatcher.dispatch("key", processed::incrementAndGet);
+        Assert.assertEquals(2L, (long) GatewayMetrics.snapshot().get(QUEUE_DEPTH));
+        dispatcher.dispatch("key", processed::incrementAndGet);
+        Assert.assertEquals(dropped + 1, counter(DROPPED));
+        Assert.assertEquals(0, processed.get());
+        release.countDown();
+        dispatcher.shutdown();
+        Assert.assertEquals(2, processed.get());
+    }
+
+    @Test
+    public void inlineOnOverflowTest() throws InterruptedException {
+        dispatcher.init(1, 2, ThrottleEventDispatcher.OVERFLOW_INLINE);
+        List<Thread> threads = new ArrayList<>();
+        blockWorker();
+        long overflowInline = counter(OVERFLOW_INLINE);
+        dispatcher.dispatch("key", () -> threads.add(Thread.currentThread()));
+        dispatcher.dispatch("key", () -> threads.add(Thread.currentThread()));
+        dispatcher.dispatch("key", () -> threads.add(Thread.currentThread()));
+        Assert.assertEquals(overflowInline + 1, counter(OVERFLOW_INLINE));
+        // The overflowing task runs on the publishing thread right away, ahead of the queued ones.
+        Assert.assertEquals(1, threads.size());
+        Assert.assertSame(Thread.currentThread(), threads.get(0));
+        release.countDown();
+        dispatcher.shutdown();
+        Assert.assertEquals(3, threads.size());
+        Assert.assertNotSame(Thread.currentThread(), threads.get(1));
+    }
+
+    /**
+     * Shutting down processes the tasks already queued, and later tasks run on the publishing thread.
+     */
+    @Test
+    public void shutdownTest() throws InterruptedException {
+        dispatcher.init(2, 16, ThrottleEventDispatcher.OVERFLOW_DROP);
+        AtomicInteger processed = new AtomicInteger();
+        blockWorker();
+        for (int i = 0; i < 10; i++) {
+            dispatcher.dispatch("key", processed::incrementAndGet);
+        }
+        Thread shutdown = new Thread(dispatcher::shutdown);
+        shutdown.start();
+        release.countDown();
+        shutdown.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(shutdown.isAlive());
+        Assert.assertEquals(10, processed.get());
+        Assert.assertEquals(0, dispatcher.getQueueDepth());
+        dispatcher.dispatch("key", processed::incrementAndGet);
+        Assert.assertEquals(11, processed.get());
+    }
+
+    /**
+     * Occupies the worker of "key" until the test releases it.
+     */
+    private void blockWorker() throws InterruptedException {
+        dispatcher.dispatch("key", () -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+    }
+
+    private static long counter(String name) {
+        return GatewayMetrics.counter(name).sum();
+    }
+}
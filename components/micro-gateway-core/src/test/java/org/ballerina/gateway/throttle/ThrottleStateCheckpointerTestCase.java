@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.ballerina.gateway.throttle;
+
+import org.ballerina.gateway.siddhi.extension.KeyCounterTable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class ThrottleStateCheckpointerTestCase {
+    private static final String CHECKPOINT_ID = "subscription:Gold";
+    private static final String THROTTLE_KEY = "admin:DefaultApplication:Gold";
+    // Checkpoint 2 is written to slot 0, its predecessor to slot 1.
+    private static final String NEWEST_SLOT = "throttle-state.0";
+    // magic, version, sequence, timestamp, length and checksum precede the data
+    private static final int DATA_OFFSET = 40;
+
+    private Path directory;
+
+    @Before
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("throttle-state");
+        Participant participant = new Participant();
+        ThrottleStateCheckpointer checkpointer = new ThrottleStateCheckpointer();
+        checkpointer.register(participant);
+        checkpointer.init(directory, Long.MAX_VALUE);
+        participant.count = 10;
+        checkpointer.checkpoint();
+        participant.count = 20;
+        checkpointer.checkpoint();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void restoreTest() {
+        Assert.assertEquals(20, restore().count);
+    }
+
+    /**
+     * A slot whose data does not match its checksum, e.g. after a torn write of the memory mapped file, is skipped in
+     * favour of the older slot.
+     */
+    @Test
+    public void corruptedSlotTest() throws IOException {
+        try (RandomAccessFile slot = new RandomAccessFile(directory.resolve(NEWEST_SLOT).toFile(), "rw")) {
+            slot.seek(DATA_OFFSET);
+            int value = slot.read();
+            slot.seek(DATA_OFFSET);
+            slot.write(value ^ 0xff);
+        }
+        Assert.assertEquals(10, restore().count);
+    }
+
+    /**
+     * A checkpoint interrupted before its magic number was written back leaves the older slot in effect.
+     */
+    @Test
+    public void interruptedCheckpointTest() throws IOException {
+        try (RandomAccessFile slot = new RandomAccessFile(directory.resolve(NEWEST_SLOT).toFile(), "rw")) {
+            slot.writeInt(0);
+        }
+        Assert.assertEquals(10, restore().count);
+    }
+
+    private Participant restore() {
+        Participant participant = new Participant();
+        ThrottleStateCheckpointer checkpointer = new ThrottleStateCheckpointer();
+        checkpointer.register(participant);
+        checkpointer.init(directory, Long.MAX_VALUE);
+        return participant;
+    }
+
+    private static class Participant implements ThrottleStateParticipant {
+        private long count;
+
+        @Override
+        public String getCheckpointId() {
+            return CHECKPOINT_ID;
+        }
+
+        @Override
+        public ThrottleStateSnapshot snapshotState() {
+            KeyCounterTable values = new KeyCounterTable();
+            values.put(THROTTLE_KEY, count);
+            return new ThrottleStateSnapshot(ThrottleStateSnapshot.NO_EXPIRY, values);
+        }
+
+        @Override
+        public void restoreState(ThrottleStateSnapshot snapshot) {
+            count = snapshot.getValues().get(THROTTLE_KEY);
+        }
+    }
+}